@@ -5,6 +5,7 @@ import net.dhleong.acl.protocol.ArtemisPacket;
 import net.dhleong.acl.protocol.Protocol;
 import net.dhleong.acl.protocol.Version;
 import net.dhleong.acl.protocol.core.CoreArtemisProtocol;
+import net.dhleong.acl.vesseldata.VesselData;
 
 /**
  * Interface for objects which can connect to an Artemis server and send and
@@ -66,4 +67,18 @@ public interface ArtemisNetworkInterface {
      * is removed, with no new debugger attached.
      */
     public void attachDebugger(Debugger debugger);
+
+    /**
+     * Sets the VesselData used by the objects this interface receives to look
+     * up their vessels; null means the default VesselData. This takes effect
+     * for the objects already received, as well as those received from then
+     * on.
+     */
+    public void setVesselData(VesselData vesselData);
+
+    /**
+     * Returns the VesselData set with setVesselData(), or null if none has
+     * been set.
+     */
+    public VesselData getVesselData();
 }
\ No newline at end of file
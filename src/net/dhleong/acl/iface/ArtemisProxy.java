@@ -0,0 +1,437 @@
+package net.dhleong.acl.iface;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.dhleong.acl.enums.ConnectionType;
+import net.dhleong.acl.protocol.ArtemisPacket;
+import net.dhleong.acl.protocol.ArtemisPacketException;
+import net.dhleong.acl.protocol.Protocol;
+import net.dhleong.acl.protocol.RawPacket;
+import net.dhleong.acl.protocol.core.CoreArtemisProtocol;
+
+/**
+ * Sits between an Artemis client and an Artemis server, forwarding the
+ * packets each sends to the other. Packets are forwarded byte-for-byte,
+ * straight from the buffer they were read into, without being parsed; only
+ * packets of a type for which an Interceptor has been added are parsed and
+ * passed to it, and the Interceptor decides whether to forward, replace or
+ * drop each. New packets can be injected into either direction with
+ * sendToServer() and sendToClient().
+ *
+ * Each direction has its own thread, created by the ThreadFactory given to
+ * setThreadFactory(), which is also the thread that calls the Interceptors.
+ * When either side disconnects, or stop() is called, both connections are
+ * closed and the DisconnectEvent is fired once to listeners added with
+ * addListener().
+ */
+public class ArtemisProxy {
+	private static final int BUFFER_BYTES = 64 * 1024;
+
+	/**
+	 * Inspects, modifies or drops packets passing through an ArtemisProxy.
+	 */
+	public interface Interceptor<T extends ArtemisPacket> {
+		/**
+		 * Returns the packet to forward in place of the given one, or null to
+		 * drop it. If the given packet itself is returned, the bytes it was
+		 * parsed from are forwarded unchanged, so to forward a modified
+		 * packet, return a new one.
+		 */
+		public ArtemisPacket intercept(T pkt);
+	}
+
+	private static class Registration<T extends ArtemisPacket> {
+		private final Class<T> clazz;
+		private final Interceptor<? super T> interceptor;
+
+		private Registration(Class<T> clazz, Interceptor<? super T> interceptor) {
+			this.clazz = clazz;
+			this.interceptor = interceptor;
+		}
+
+		private ArtemisPacket apply(ArtemisPacket pkt) {
+			return clazz.isInstance(pkt) ? interceptor.intercept(clazz.cast(pkt)) : pkt;
+		}
+	}
+
+	/**
+	 * Makes PacketReader parse every packet it's given; the proxy only gives
+	 * it the packets that might be intercepted.
+	 */
+	private static class ParseAll {
+		@Listener
+		public void onPacket(ArtemisPacket pkt) {
+			// never fired
+		}
+	}
+
+	/**
+	 * Reads the packets travelling in one direction and forwards them.
+	 */
+	private class Pipe implements Runnable {
+		private final ConnectionType connType;
+		private final InputStream in;
+		private final OutputStream out;
+		private final PacketReader reader;
+		private volatile int[] interceptedTypes = new int[0];
+		private byte[] buffer = new byte[BUFFER_BYTES];
+
+		private Pipe(ConnectionType connType, Socket from, Socket to) throws IOException {
+			this.connType = connType;
+			in = from.getInputStream();
+			out = to.getOutputStream();
+			ListenerRegistry parseAll = new ListenerRegistry();
+			parseAll.register(new ParseAll());
+			reader = new PacketReader(connType, factoryRegistry, parseAll);
+		}
+
+		@Override
+		public void run() {
+			int filled = 0;
+
+			try {
+				while (true) {
+					final int count = in.read(buffer, filled, buffer.length - filled);
+
+					if (count == -1) {
+						close(DisconnectEvent.Cause.REMOTE_DISCONNECT, null);
+						return;
+					}
+
+					filled += count;
+					final int consumed = forward(filled);
+					System.arraycopy(buffer, consumed, buffer, 0, filled - consumed);
+					filled -= consumed;
+
+					// make room for a packet that's bigger than the buffer; its
+					// preamble has already been checked
+					if (filled >= PacketReader.PREAMBLE_BYTES) {
+						final int packetLength = PacketReader.readInt(buffer, 4);
+
+						if (packetLength > buffer.length) {
+							buffer = Arrays.copyOf(buffer, packetLength);
+						}
+					}
+				}
+			} catch (ArtemisPacketException ex) {
+				close(DisconnectEvent.Cause.PACKET_PARSE_EXCEPTION, ex);
+			} catch (IOException ex) {
+				close(DisconnectEvent.Cause.IO_EXCEPTION, ex);
+			} catch (RuntimeException ex) {
+				// an Interceptor failed
+				close(DisconnectEvent.Cause.LOCAL_DISCONNECT, ex);
+			}
+		}
+
+		/**
+		 * Forwards every complete packet in the first filled bytes of the
+		 * buffer, writing runs of packets which aren't intercepted in one go.
+		 * @return The number of bytes consumed
+		 */
+		private int forward(int filled) throws ArtemisPacketException, IOException {
+			final int[] intercepted = interceptedTypes;
+			int pos = 0;
+			int runStart = 0;
+
+			while (filled - pos >= PacketReader.PREAMBLE_BYTES) {
+				final int payloadLength = reader.checkPreamble(
+						PacketReader.readInt(buffer, pos),
+						PacketReader.readInt(buffer, pos + 4),
+						PacketReader.readInt(buffer, pos + 8),
+						PacketReader.readInt(buffer, pos + 12),
+						PacketReader.readInt(buffer, pos + 16)
+				);
+				final int packetLength = PacketReader.PREAMBLE_BYTES + payloadLength;
+
+				if (filled - pos < packetLength) {
+					break;
+				}
+
+				final int packetType = PacketReader.readInt(buffer, pos + 20);
+
+				if (Arrays.binarySearch(intercepted, packetType) >= 0) {
+					write(buffer, runStart, pos - runStart);
+					intercept(packetType, pos, packetLength);
+					runStart = pos + packetLength;
+				}
+
+				pos += packetLength;
+			}
+
+			write(buffer, runStart, pos - runStart);
+			return pos;
+		}
+
+		/**
+		 * Parses the packet at the given offset in the buffer, passes it to
+		 * the Interceptors and forwards the result.
+		 */
+		private void intercept(int packetType, int offset, int packetLength) throws IOException {
+			final Debugger debugger = mDebugger;
+			byte[] payload = Arrays.copyOfRange(buffer, offset + PacketReader.PREAMBLE_BYTES,
+					offset + packetLength);
+			ArtemisPacket pkt;
+
+			try {
+				pkt = reader.readPacket(packetType, payload, debugger);
+			} catch (ArtemisPacketException ex) {
+				// the proxy is transparent, so pass on what it doesn't understand
+				debugger.warn("Forwarding unparseable packet: " + ex.getMessage());
+				write(buffer, offset, packetLength);
+				return;
+			}
+
+			ArtemisPacket result = pkt;
+
+			if (!(pkt instanceof RawPacket)) {
+				for (Registration<?> registration : mInterceptors) {
+					if (result == null) {
+						break;
+					}
+
+					result = registration.apply(result);
+				}
+			}
+
+			if (result == pkt) {
+				write(buffer, offset, packetLength);
+			} else if (result != null) {
+				send(result);
+			}
+		}
+
+		/**
+		 * Encodes the given packet and writes it.
+		 */
+		private void send(ArtemisPacket pkt) throws IOException {
+			if (pkt.getConnectionType() != connType) {
+				throw new IllegalArgumentException(
+						"Can only send " + connType + " packets this way"
+				);
+			}
+
+			final Debugger debugger = mDebugger;
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			debugger.onSendPacket(pkt);
+			pkt.writeTo(new PacketWriter(baos), debugger);
+			byte[] bytes = baos.toByteArray();
+			write(bytes, 0, bytes.length);
+		}
+
+		private void write(byte[] bytes, int offset, int length) throws IOException {
+			if (length == 0) {
+				return;
+			}
+
+			synchronized (out) {
+				out.write(bytes, offset, length);
+			}
+		}
+
+		private void updateInterceptedTypes() {
+			int[] types = new int[0];
+
+			for (Registration<?> registration : mInterceptors) {
+				int[] more = factoryRegistry.getPacketTypes(connType, registration.clazz);
+				int[] merged = Arrays.copyOf(types, types.length + more.length);
+				System.arraycopy(more, 0, merged, types.length, more.length);
+				types = merged;
+			}
+
+			Arrays.sort(types);
+			interceptedTypes = types;
+		}
+	}
+
+	private final Socket mClient;
+	private final Socket mServer;
+	private final PacketFactoryRegistry factoryRegistry = new PacketFactoryRegistry();
+	private final ListenerRegistry mListeners = new ListenerRegistry();
+	private final List<Registration<?>> mInterceptors = new CopyOnWriteArrayList<Registration<?>>();
+	private final Pipe mToServer;
+	private final Pipe mToClient;
+	private final AtomicBoolean mClosed = new AtomicBoolean();
+	private ThreadFactory mThreadFactory = ConnectionThreads.platform();
+	private boolean mStarted;
+	private volatile Debugger mDebugger = new BaseDebugger();
+
+	/**
+	 * Proxies between a client which has connected to this machine and an
+	 * Artemis server, which is connected to immediately, waiting up to
+	 * timeoutMs milliseconds; 0 means "wait forever." Packets won't be
+	 * forwarded until start() is called.
+	 */
+	public ArtemisProxy(Socket client, String host, int port, int timeoutMs)
+			throws IOException {
+		this(client, connect(host, port, timeoutMs));
+	}
+
+	/**
+	 * Proxies between the given connected sockets. Packets won't be
+	 * forwarded until start() is called.
+	 */
+	public ArtemisProxy(Socket client, Socket server) throws IOException {
+		mClient = client;
+		mServer = server;
+
+		for (Socket skt : new Socket[] { client, server }) {
+			skt.setKeepAlive(true);
+			skt.setTcpNoDelay(true);
+		}
+
+		mToServer = new Pipe(ConnectionType.CLIENT, client, server);
+		mToClient = new Pipe(ConnectionType.SERVER, server, client);
+	}
+
+	private static Socket connect(String host, int port, int timeoutMs) throws IOException {
+		Socket skt = new Socket();
+
+		try {
+			skt.connect(new InetSocketAddress(host, port), timeoutMs);
+		} catch (IOException ex) {
+			skt.close();
+			throw ex;
+		}
+
+		return skt;
+	}
+
+	/**
+	 * Registers the packet types defined by the given Protocol, so that they
+	 * can be intercepted. The {@link CoreArtemisProtocol} is registered
+	 * automatically. This must be called before start().
+	 */
+	public void registerProtocol(Protocol protocol) {
+		synchronized (mInterceptors) {
+			protocol.registerPacketFactories(factoryRegistry);
+			mToServer.updateInterceptedTypes();
+			mToClient.updateInterceptedTypes();
+		}
+	}
+
+	/**
+	 * Registers an object as a listener for the DisconnectEvent. It must have
+	 * one or more qualifying methods annotated with {@link Listener}.
+	 */
+	public void addListener(Object listener) {
+		mListeners.register(listener);
+	}
+
+	/**
+	 * Adds an Interceptor for packets of the given class and its subclasses,
+	 * travelling in whichever direction packets of that class travel.
+	 * Interceptors are called in the order in which they were added, each
+	 * getting the packet returned by the one before. Packets which share a
+	 * packet type with the given class, such as other ShipActionPackets, are
+	 * parsed as well, but are still forwarded unchanged.
+	 */
+	public <T extends ArtemisPacket> void addInterceptor(Class<T> clazz,
+			Interceptor<? super T> interceptor) {
+		synchronized (mInterceptors) {
+			mInterceptors.add(new Registration<T>(clazz, interceptor));
+			mToServer.updateInterceptedTypes();
+			mToClient.updateInterceptedTypes();
+		}
+	}
+
+	/**
+	 * Sets the ThreadFactory which creates the threads that forward packets;
+	 * see {@link ThreadedArtemisNetworkInterface#setThreadFactory(ThreadFactory)}.
+	 * This must be called before start().
+	 */
+	public synchronized void setThreadFactory(ThreadFactory threadFactory) {
+		if (mStarted) {
+			throw new IllegalStateException("Already started");
+		}
+
+		mThreadFactory = threadFactory;
+	}
+
+	/**
+	 * Starts forwarding packets.
+	 */
+	public synchronized void start() {
+		if (mStarted) {
+			return;
+		}
+
+		mStarted = true;
+		mThreadFactory.newThread(mToServer).start();
+		mThreadFactory.newThread(mToClient).start();
+	}
+
+	/**
+	 * Sends a packet to the server, as though the client had sent it.
+	 */
+	public void sendToServer(ArtemisPacket pkt) throws IOException {
+		mToServer.send(pkt);
+	}
+
+	/**
+	 * Sends a packet to the client, as though the server had sent it.
+	 */
+	public void sendToClient(ArtemisPacket pkt) throws IOException {
+		mToClient.send(pkt);
+	}
+
+	/**
+	 * Returns true until either connection has been closed.
+	 */
+	public boolean isConnected() {
+		return !mClosed.get();
+	}
+
+	/**
+	 * Closes both connections.
+	 */
+	public void stop() {
+		close(DisconnectEvent.Cause.LOCAL_DISCONNECT, null);
+	}
+
+	/**
+	 * Attaches a Debugger, which is notified of the packets which are
+	 * intercepted or injected; packets forwarded without being parsed are not
+	 * reported. If debugger is null, the previous debugger, if any, is
+	 * removed.
+	 */
+	public void attachDebugger(Debugger debugger) {
+		if (debugger == null) {
+			debugger = new BaseDebugger();
+		}
+
+		mDebugger = debugger;
+	}
+
+	/**
+	 * Closes both sockets and fires a DisconnectEvent, once.
+	 */
+	private void close(DisconnectEvent.Cause cause, Exception exception) {
+		if (!mClosed.compareAndSet(false, true)) {
+			return;
+		}
+
+		try {
+			mClient.close();
+		} catch (IOException ex) {
+			// DON'T CARE
+		}
+
+		try {
+			mServer.close();
+		} catch (IOException ex) {
+			// DON'T CARE
+		}
+
+		mListeners.fire(new DisconnectEvent(cause, exception));
+	}
+}
@@ -0,0 +1,351 @@
+package net.dhleong.acl.iface;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+
+import net.dhleong.acl.enums.ConnectionType;
+import net.dhleong.acl.protocol.ArtemisPacket;
+
+/**
+ * Sends the same packets to many connections, such as the observer screens
+ * mirroring one game. Each packet passed to broadcast() is encoded once, and
+ * the same bytes are queued for every member, so the cost of a broadcast
+ * grows with the number of members only by a queue insertion each. Every
+ * member has its own bounded queue and its own thread, created by the
+ * ThreadFactory given to setThreadFactory(), which writes the queued packets
+ * to its socket; a slow member doesn't hold up the others. What happens when
+ * a member's queue is full is decided by its {@link SlowConsumerPolicy}.
+ *
+ * The group only writes to the members' sockets; reading anything they send
+ * is up to the caller.
+ */
+public class BroadcastGroup {
+	public static final int DEFAULT_MAX_QUEUED = 1024;
+
+	private static final int BUFFER_BYTES = 64 * 1024;
+
+	/**
+	 * What to do with a packet broadcast to a member whose queue is full.
+	 */
+	public enum SlowConsumerPolicy {
+		/** Drop the packet for that member */
+		DROP,
+		/** Disconnect the member */
+		DISCONNECT,
+		/**
+		 * Replace the newest queued packet which was broadcast with the same
+		 * coalesce key, keeping its place in the queue; drop the packet if
+		 * there is none. This suits packets, such as object updates, whose
+		 * latest value makes earlier ones obsolete.
+		 */
+		COALESCE
+	}
+
+	/**
+	 * An encoded packet, shared by every member's queue.
+	 */
+	private static final class Frame {
+		private final byte[] bytes;
+		private final Object key;
+
+		private Frame(byte[] bytes, Object key) {
+			this.bytes = bytes;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * A connection in a BroadcastGroup.
+	 */
+	public final class Member implements Runnable {
+		private final Socket mSkt;
+		private final OutputStream mOut;
+		private final SlowConsumerPolicy mPolicy;
+		// a ring of queued frames; the frame with sequence number n is at
+		// n % length, and those from mHead up to mTail are queued
+		private final Frame[] mRing;
+		private long mHead;
+		private long mTail;
+		// COALESCE only: the sequence number of the newest queued frame with
+		// each key
+		private final Map<Object, Long> mNewest;
+		private long mDropped;
+		private boolean mClosed;
+
+		private Member(Socket skt, SlowConsumerPolicy policy, int maxQueued) throws IOException {
+			mSkt = skt;
+			mPolicy = policy;
+			mRing = new Frame[maxQueued];
+			mNewest = policy == SlowConsumerPolicy.COALESCE ? new HashMap<Object, Long>() : null;
+			skt.setKeepAlive(true);
+			skt.setTcpNoDelay(true);
+			mOut = new BufferedOutputStream(skt.getOutputStream(), BUFFER_BYTES);
+		}
+
+		public SlowConsumerPolicy getPolicy() {
+			return mPolicy;
+		}
+
+		/**
+		 * Returns the number of packets which were dropped or coalesced
+		 * because this member's queue was full.
+		 */
+		public synchronized long getDroppedCount() {
+			return mDropped;
+		}
+
+		/**
+		 * Returns the number of packets waiting to be written.
+		 */
+		public synchronized int getQueuedCount() {
+			return (int) (mTail - mHead);
+		}
+
+		public synchronized boolean isConnected() {
+			return !mClosed;
+		}
+
+		/**
+		 * Closes the connection and removes this member from the group.
+		 */
+		public void close() {
+			synchronized (this) {
+				if (mClosed) {
+					return;
+				}
+
+				mClosed = true;
+				Arrays.fill(mRing, null);
+				mHead = mTail;
+				notifyAll();
+			}
+
+			mMembers.remove(this);
+
+			try {
+				mSkt.close();
+			} catch (IOException ex) {
+				// DON'T CARE
+			}
+		}
+
+		private void offer(Frame frame) {
+			synchronized (this) {
+				if (mClosed) {
+					return;
+				}
+
+				final int size = (int) (mTail - mHead);
+
+				if (size < mRing.length) {
+					mRing[slot(mTail)] = frame;
+
+					if (mNewest != null && frame.key != null) {
+						mNewest.put(frame.key, Long.valueOf(mTail));
+					}
+
+					mTail++;
+
+					if (size == 0) {
+						notifyAll(); // the writer only waits on an empty queue
+					}
+
+					return;
+				}
+
+				if (mPolicy != SlowConsumerPolicy.DISCONNECT) {
+					mDropped++;
+
+					if (mNewest != null && frame.key != null) {
+						// replace the newest queued frame with this key, so
+						// the last one written is always the latest
+						Long seq = mNewest.get(frame.key);
+
+						if (seq != null) {
+							mRing[slot(seq.longValue())] = frame;
+						}
+					}
+
+					return;
+				}
+			}
+
+			close();
+		}
+
+		private int slot(long seq) {
+			return (int) (seq % mRing.length);
+		}
+
+		/**
+		 * Writes queued frames until the member is closed.
+		 */
+		@Override
+		public void run() {
+			Frame[] batch = new Frame[mRing.length];
+
+			try {
+				while (true) {
+					int count = 0;
+
+					synchronized (this) {
+						while (mHead == mTail && !mClosed) {
+							wait();
+						}
+
+						if (mClosed) {
+							return;
+						}
+
+						for (; mHead < mTail; mHead++) {
+							final int slot = slot(mHead);
+							batch[count++] = mRing[slot];
+							mRing[slot] = null;
+						}
+
+						if (mNewest != null) {
+							mNewest.clear();
+						}
+					}
+
+					for (int i = 0; i < count; i++) {
+						mOut.write(batch[i].bytes);
+						batch[i] = null;
+					}
+
+					mOut.flush();
+				}
+			} catch (IOException ex) {
+				close();
+			} catch (InterruptedException ex) {
+				close();
+			}
+		}
+	}
+
+	private final ConnectionType sendType;
+	private final List<Member> mMembers = new CopyOnWriteArrayList<Member>();
+	private final ByteArrayOutputStream mEncoded = new ByteArrayOutputStream();
+	private final PacketWriter mWriter = new PacketWriter(mEncoded);
+	private ThreadFactory mThreadFactory = ConnectionThreads.platform();
+	private volatile Debugger mDebugger = new BaseDebugger();
+
+	/**
+	 * Creates a group which broadcasts packets of the given type; for
+	 * observers connected to this machine as a server, that's
+	 * ConnectionType.SERVER.
+	 */
+	public BroadcastGroup(ConnectionType sendType) {
+		this.sendType = sendType;
+	}
+
+	public ConnectionType getSendType() {
+		return sendType;
+	}
+
+	/**
+	 * Sets the ThreadFactory which creates the threads of members added from
+	 * then on; see
+	 * {@link ThreadedArtemisNetworkInterface#setThreadFactory(ThreadFactory)}.
+	 */
+	public synchronized void setThreadFactory(ThreadFactory threadFactory) {
+		mThreadFactory = threadFactory;
+	}
+
+	/**
+	 * Adds a member with the DROP policy and a queue of DEFAULT_MAX_QUEUED
+	 * packets.
+	 */
+	public Member add(Socket skt) throws IOException {
+		return add(skt, SlowConsumerPolicy.DROP, DEFAULT_MAX_QUEUED);
+	}
+
+	/**
+	 * Adds a member which will be sent every packet broadcast from now on.
+	 * @param maxQueued The number of packets which may wait to be written to
+	 *  the member before its policy applies; the queue is allocated up front
+	 */
+	public synchronized Member add(Socket skt, SlowConsumerPolicy policy, int maxQueued)
+			throws IOException {
+		if (maxQueued <= 0) {
+			throw new IllegalArgumentException("Invalid queue size: " + maxQueued);
+		}
+
+		Member member = new Member(skt, policy, maxQueued);
+		mMembers.add(member);
+		mThreadFactory.newThread(member).start();
+		return member;
+	}
+
+	/**
+	 * Returns the number of members still connected.
+	 */
+	public int getMemberCount() {
+		return mMembers.size();
+	}
+
+	/**
+	 * Broadcasts a packet which is never coalesced.
+	 */
+	public void broadcast(ArtemisPacket pkt) throws IOException {
+		broadcast(pkt, null);
+	}
+
+	/**
+	 * Encodes the packet once and queues it for every member.
+	 * @param coalesceKey For members with the COALESCE policy whose queue is
+	 *  full, the packet replaces the newest queued packet with an equal key; null
+	 *  means it is never coalesced
+	 */
+	public void broadcast(ArtemisPacket pkt, Object coalesceKey) throws IOException {
+		if (pkt.getConnectionType() != sendType) {
+			throw new IllegalArgumentException(
+					"Can only send " + sendType + " packets"
+			);
+		}
+
+		// offering inside the lock keeps concurrent broadcasts in the same
+		// order for every member
+		synchronized (mWriter) {
+			final Debugger debugger = mDebugger;
+			debugger.onSendPacket(pkt);
+			pkt.writeTo(mWriter, debugger);
+			Frame frame = new Frame(mEncoded.toByteArray(), coalesceKey);
+			mEncoded.reset();
+
+			for (Member member : mMembers) {
+				member.offer(frame);
+			}
+		}
+	}
+
+	/**
+	 * Attaches a Debugger, which is notified once of each packet broadcast.
+	 * If debugger is null, the previous debugger, if any, is removed.
+	 */
+	public void attachDebugger(Debugger debugger) {
+		if (debugger == null) {
+			debugger = new BaseDebugger();
+		}
+
+		mDebugger = debugger;
+	}
+
+	/**
+	 * Closes every member.
+	 */
+	public void shutdown() {
+		for (Member member : mMembers) {
+			member.close();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package net.dhleong.acl.iface;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+
+import net.dhleong.acl.protocol.Version;
+import net.dhleong.acl.protocol.core.setup.VersionPacket;
+import net.dhleong.acl.protocol.core.setup.WelcomePacket;
+
+/**
+ * Watches for the packets which change the state of a connection over a
+ * SocketChannel, and keeps track of whether it's connected.
+ */
+abstract class ConnectionListener {
+	private final ListenerRegistry mListeners;
+	private volatile boolean mConnected;
+
+	ConnectionListener(ListenerRegistry listeners) {
+		mListeners = listeners;
+	}
+
+	/**
+	 * Opens a SocketChannel to the given host, waiting up to timeoutMs
+	 * milliseconds for the connection to be established; 0 means "wait
+	 * forever."
+	 */
+	static SocketChannel connect(String host, int port, int timeoutMs) throws IOException {
+		SocketChannel channel = SocketChannel.open();
+
+		try {
+			channel.socket().connect(new InetSocketAddress(host, port), timeoutMs);
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+
+		return channel;
+	}
+
+	boolean isConnected() {
+		return mConnected;
+	}
+
+	void onDisconnect() {
+		mConnected = false;
+	}
+
+	/**
+	 * Closes the connection because the server's version is too old.
+	 */
+	abstract void onUnsupportedVersion();
+
+	@Listener
+	public void onPacket(WelcomePacket pkt) {
+		final boolean wasConnected = mConnected;
+		mConnected = true;
+
+		if (!wasConnected) {
+			mListeners.fire(new ConnectionSuccessEvent());
+		}
+	}
+
+	@Listener
+	public void onPacket(VersionPacket pkt) {
+		final Version version = pkt.getVersion();
+
+		if (version.lt(ArtemisNetworkInterface.MIN_VERSION)) {
+			onUnsupportedVersion();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package net.dhleong.acl.iface;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ThreadFactories for the receive and send loops of
+ * ThreadedArtemisNetworkInterface; see
+ * {@link ThreadedArtemisNetworkInterface#setThreadFactory(ThreadFactory)}.
+ *
+ * Virtual threads (Java 21 and later) make a blocking connection cost a few
+ * kilobytes of heap instead of two platform threads, so one process can
+ * hold hundreds of connections. They are looked up reflectively, so this
+ * library still builds and runs on older JDKs, where virtual() falls back to
+ * platform threads.
+ */
+public final class ConnectionThreads {
+	private static final ThreadFactory PLATFORM = new ThreadFactory() {
+		private final AtomicInteger mCount = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			return new Thread(r, "ArtemisConnection-" + mCount.incrementAndGet());
+		}
+	};
+
+	private static final ThreadFactory VIRTUAL = findVirtualFactory();
+
+	private ConnectionThreads() {
+	}
+
+	/**
+	 * Returns a factory for ordinary platform threads, which is the default.
+	 */
+	public static ThreadFactory platform() {
+		return PLATFORM;
+	}
+
+	/**
+	 * Returns a factory for virtual threads if this JDK supports them, or
+	 * for platform threads otherwise.
+	 */
+	public static ThreadFactory virtual() {
+		return VIRTUAL != null ? VIRTUAL : PLATFORM;
+	}
+
+	/**
+	 * Returns true if this JDK supports virtual threads.
+	 */
+	public static boolean isVirtualSupported() {
+		return VIRTUAL != null;
+	}
+
+	/**
+	 * Builds Thread.ofVirtual().name("ArtemisConnection-v", 1).factory(), or
+	 * returns null if that's not available.
+	 */
+	private static ThreadFactory findVirtualFactory() {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method name = builderClass.getMethod("name", String.class, long.class);
+			builder = name.invoke(builder, "ArtemisConnection-v", Long.valueOf(1));
+			Object factory = builderClass.getMethod("factory").invoke(builder);
+			return (ThreadFactory) factory;
+		} catch (Exception ex) {
+			// older JDK, or virtual threads are a disabled preview feature
+			return null;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package net.dhleong.acl.iface;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed pool of threads which do all the reading, parsing, listener
+ * dispatch and writing for any number of {@link NioArtemisNetworkInterface}s.
+ * Each thread runs its own Selector, and each interface is assigned to one of
+ * them for its whole life, so its listeners are always called on the same
+ * thread, one packet at a time, just as with ThreadedArtemisNetworkInterface.
+ * A listener that blocks stalls every connection sharing its thread, so
+ * listeners should hand slow work off to other threads.
+ *
+ * The threads are daemon threads. Call shutdown() to close every connection
+ * and stop them.
+ */
+public class EventLoopGroup {
+	private final EventLoop[] mLoops;
+	private final AtomicInteger mNext = new AtomicInteger();
+
+	/**
+	 * Creates a group with one thread per available processor.
+	 */
+	public EventLoopGroup() throws IOException {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public EventLoopGroup(int threadCount) throws IOException {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException("Invalid thread count: " + threadCount);
+		}
+
+		mLoops = new EventLoop[threadCount];
+
+		try {
+			for (int i = 0; i < threadCount; i++) {
+				mLoops[i] = new EventLoop(i);
+			}
+		} catch (IOException ex) {
+			shutdown();
+			throw ex;
+		}
+
+		for (EventLoop loop : mLoops) {
+			loop.start();
+		}
+	}
+
+	public int getThreadCount() {
+		return mLoops.length;
+	}
+
+	/**
+	 * Closes every connection, firing a DisconnectEvent for each, and stops
+	 * the threads.
+	 */
+	public void shutdown() {
+		for (EventLoop loop : mLoops) {
+			if (loop != null) {
+				loop.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Picks the thread for a new connection, round-robin.
+	 */
+	EventLoop next() {
+		final int i = mNext.getAndIncrement() & Integer.MAX_VALUE;
+		return mLoops[i % mLoops.length];
+	}
+
+	/**
+	 * One thread and its Selector. Everything that touches a connection's
+	 * channel or buffers runs on this thread; other threads hand it work
+	 * through execute().
+	 */
+	static final class EventLoop extends Thread {
+		/**
+		 * A queued task and the connection it belongs to.
+		 */
+		private static final class Task {
+			private final NioArtemisNetworkInterface owner;
+			private final Runnable runnable;
+
+			private Task(NioArtemisNetworkInterface owner, Runnable runnable) {
+				this.owner = owner;
+				this.runnable = runnable;
+			}
+		}
+
+		private final Selector mSelector;
+		private final Queue<Task> mTasks = new ConcurrentLinkedQueue<Task>();
+		private final AtomicBoolean mWakeupPending = new AtomicBoolean();
+		private volatile boolean mRunning = true;
+
+		private EventLoop(int index) throws IOException {
+			super("ArtemisEventLoop-" + index);
+			setDaemon(true);
+			mSelector = Selector.open();
+		}
+
+		Selector getSelector() {
+			return mSelector;
+		}
+
+		boolean inLoop() {
+			return Thread.currentThread() == this;
+		}
+
+		/**
+		 * Runs the task on this thread as soon as possible. Wakeups are
+		 * coalesced, so a burst of tasks costs one wakeup of the Selector. If
+		 * the task throws, the owning connection is closed.
+		 */
+		void execute(NioArtemisNetworkInterface owner, Runnable task) {
+			mTasks.offer(new Task(owner, task));
+
+			if (mWakeupPending.compareAndSet(false, true)) {
+				mSelector.wakeup();
+			}
+		}
+
+		private void shutdown() {
+			mRunning = false;
+			mSelector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (mRunning) {
+					mSelector.select();
+					mWakeupPending.set(false);
+					runTasks();
+					Iterator<SelectionKey> iter = mSelector.selectedKeys().iterator();
+
+					while (iter.hasNext()) {
+						SelectionKey key = iter.next();
+						iter.remove();
+						NioArtemisNetworkInterface net = (NioArtemisNetworkInterface) key.attachment();
+
+						try {
+							net.process(key);
+						} catch (RuntimeException ex) {
+							fail(net, ex);
+						}
+					}
+				}
+			} catch (IOException ex) {
+				// the Selector is broken; fall through and close everything
+			} catch (ClosedSelectorException ex) {
+				// likewise
+			}
+
+			runTasks();
+
+			for (SelectionKey key : mSelector.keys().toArray(new SelectionKey[0])) {
+				fail((NioArtemisNetworkInterface) key.attachment(), null);
+			}
+
+			try {
+				mSelector.close();
+			} catch (IOException ex) {
+				// DON'T CARE
+			}
+		}
+
+		private void runTasks() {
+			Task task;
+
+			while ((task = mTasks.poll()) != null) {
+				try {
+					task.runnable.run();
+				} catch (RuntimeException ex) {
+					fail(task.owner, ex);
+				}
+			}
+		}
+
+		/**
+		 * Closes a connection whose work failed, without letting a failure in
+		 * its DisconnectEvent listeners stop this thread, which other
+		 * connections share.
+		 */
+		private static void fail(NioArtemisNetworkInterface net, Exception ex) {
+			try {
+				net.close(DisconnectEvent.Cause.LOCAL_DISCONNECT, ex);
+			} catch (RuntimeException ignored) {
+				// the channel is closed before listeners are called
+			}
+		}
+	}
+}
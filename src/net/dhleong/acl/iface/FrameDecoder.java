@@ -0,0 +1,83 @@
+package net.dhleong.acl.iface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+import net.dhleong.acl.protocol.ArtemisPacket;
+import net.dhleong.acl.protocol.ArtemisPacketException;
+
+/**
+ * Splits the bytes read from a non-blocking channel into packets. The buffer
+ * grows to hold a packet bigger than it, up to PacketReader.MAX_PACKET_BYTES.
+ */
+class FrameDecoder {
+	private static final int BUFFER_BYTES = 64 * 1024;
+
+	private final PacketReader mReader;
+
+	// kept ready for reading: the unparsed bytes lie between position and limit
+	private ByteBuffer mIn = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+	FrameDecoder(PacketReader reader) {
+		mReader = reader;
+		mIn.flip();
+	}
+
+	/**
+	 * Reads what the channel has available without blocking.
+	 * @return The number of bytes read, or -1 at the end of the stream
+	 */
+	int read(ReadableByteChannel channel) throws IOException {
+		mIn.compact();
+
+		// make room for a packet that's bigger than the buffer; next() has
+		// already checked its preamble
+		if (mIn.position() >= PacketReader.PREAMBLE_BYTES) {
+			final int packetLength = mIn.getInt(4);
+
+			if (packetLength > mIn.capacity()) {
+				ByteBuffer bigger = ByteBuffer.allocate(packetLength).order(ByteOrder.LITTLE_ENDIAN);
+				mIn.flip();
+				bigger.put(mIn);
+				mIn = bigger;
+			}
+		}
+
+		try {
+			return channel.read(mIn);
+		} finally {
+			mIn.flip();
+		}
+	}
+
+	/**
+	 * Parses the next packet if all of it has been read.
+	 * @return The packet, or null if it isn't complete yet
+	 */
+	ArtemisPacket next(Debugger debugger) throws ArtemisPacketException {
+		if (mIn.remaining() < PacketReader.PREAMBLE_BYTES) {
+			return null;
+		}
+
+		final int start = mIn.position();
+		final int payloadLength = mReader.checkPreamble(
+				mIn.getInt(start),
+				mIn.getInt(start + 4),
+				mIn.getInt(start + 8),
+				mIn.getInt(start + 12),
+				mIn.getInt(start + 16)
+		);
+
+		if (mIn.remaining() < PacketReader.PREAMBLE_BYTES + payloadLength) {
+			return null;
+		}
+
+		final int packetType = mIn.getInt(start + 20);
+		byte[] payload = new byte[payloadLength];
+		mIn.position(start + PacketReader.PREAMBLE_BYTES);
+		mIn.get(payload);
+		return mReader.readPacket(packetType, payload, debugger);
+	}
+}
@@ -0,0 +1,62 @@
+package net.dhleong.acl.iface;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import net.dhleong.acl.protocol.ArtemisPacket;
+
+/**
+ * Encodes packets and writes them to a non-blocking channel, holding on to
+ * whatever the channel won't take yet.
+ */
+class FrameEncoder {
+	private static final int BUFFER_BYTES = 64 * 1024;
+
+	/**
+	 * Exposes its buffer so that writing doesn't need a copy.
+	 */
+	private static class Output extends ByteArrayOutputStream {
+		private Output() {
+			super(BUFFER_BYTES);
+		}
+
+		private ByteBuffer wrap(int offset) {
+			return ByteBuffer.wrap(buf, offset, count - offset);
+		}
+	}
+
+	private final Output mOut = new Output();
+	private final PacketWriter mWriter = new PacketWriter(mOut);
+	private int mWritten;
+
+	/**
+	 * Encodes the packet after those already pending.
+	 */
+	void encode(ArtemisPacket pkt, Debugger debugger) throws IOException {
+		debugger.onSendPacket(pkt);
+		pkt.writeTo(mWriter, debugger);
+	}
+
+	/**
+	 * Writes as much of the pending bytes as the channel will take without
+	 * blocking.
+	 * @return true if nothing remains to be written
+	 */
+	boolean write(WritableByteChannel channel) throws IOException {
+		if (mWritten < mOut.size()) {
+			ByteBuffer buf = mOut.wrap(mWritten);
+			channel.write(buf);
+			mWritten = buf.position();
+		}
+
+		if (mWritten < mOut.size()) {
+			return false;
+		}
+
+		mOut.reset();
+		mWritten = 0;
+		return true;
+	}
+}
@@ -0,0 +1,323 @@
+package net.dhleong.acl.iface;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.dhleong.acl.enums.ConnectionType;
+import net.dhleong.acl.protocol.ArtemisPacket;
+import net.dhleong.acl.protocol.ArtemisPacketException;
+import net.dhleong.acl.protocol.Protocol;
+import net.dhleong.acl.util.StringPool;
+import net.dhleong.acl.vesseldata.VesselData;
+
+/**
+ * An ArtemisNetworkInterface which uses a non-blocking SocketChannel, and
+ * leaves the reading, parsing and writing to one of the threads of an
+ * {@link EventLoopGroup}, so that many connections can share a few threads
+ * instead of each having two of its own. Otherwise it behaves like
+ * ThreadedArtemisNetworkInterface: listeners are called on the thread that
+ * received the packet, in order; send() may be called from any thread; and
+ * Debuggers are notified of the same events.
+ */
+public class NioArtemisNetworkInterface implements ArtemisNetworkInterface {
+	private final EventLoopGroup.EventLoop mLoop;
+	private final SocketChannel mChannel;
+	private final ConnectionType recvType;
+	private final ConnectionType sendType;
+	private final PacketFactoryRegistry factoryRegistry = new PacketFactoryRegistry();
+	private final ListenerRegistry mListeners = new ListenerRegistry();
+	private final PacketReader mReader;
+	private final Queue<ArtemisPacket> mQueue = new ConcurrentLinkedQueue<ArtemisPacket>();
+	private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+	private final AtomicBoolean mStarted = new AtomicBoolean();
+	private final ConnectionListener mConnection;
+	private volatile Debugger mDebugger = new BaseDebugger();
+	private volatile boolean mClosed;
+
+	// only touched by the loop thread
+	private SelectionKey mKey;
+	private final FrameDecoder mDecoder;
+	private final FrameEncoder mEncoder = new FrameEncoder();
+	private boolean mClosing;
+
+	private final Runnable mFlushTask = new Runnable() {
+		@Override
+		public void run() {
+			mFlushScheduled.set(false);
+			flush();
+		}
+	};
+
+	/**
+	 * Connects to an Artemis server, waiting forever for the connection to
+	 * be established. Packets won't be read until start() is called.
+	 */
+	public NioArtemisNetworkInterface(EventLoopGroup group, String host, int port)
+			throws IOException {
+		this(group, host, port, 0);
+	}
+
+	/**
+	 * Connects to an Artemis server, waiting up to timeoutMs milliseconds for
+	 * the connection to be established; 0 means "wait forever." Packets
+	 * won't be read until start() is called.
+	 */
+	public NioArtemisNetworkInterface(EventLoopGroup group, String host, int port,
+			int timeoutMs) throws IOException {
+		this(group, ConnectionListener.connect(host, port, timeoutMs), ConnectionType.SERVER);
+	}
+
+	/**
+	 * Creates an interface which will communicate over the given connected
+	 * SocketChannel; connType is the type of the remote machine, as for
+	 * ThreadedArtemisNetworkInterface(Socket, ConnectionType). Packets won't
+	 * be read until start() is called.
+	 */
+	public NioArtemisNetworkInterface(EventLoopGroup group, SocketChannel channel,
+			ConnectionType connType) throws IOException {
+		mLoop = group.next();
+		mChannel = channel;
+		recvType = connType;
+		sendType = connType.opposite();
+		channel.socket().setKeepAlive(true);
+		channel.socket().setTcpNoDelay(true);
+		channel.configureBlocking(false);
+		mReader = new PacketReader(recvType, factoryRegistry, mListeners);
+		mDecoder = new FrameDecoder(mReader);
+		mConnection = new ConnectionListener(mListeners) {
+			@Override
+			void onUnsupportedVersion() {
+				close(DisconnectEvent.Cause.UNSUPPORTED_SERVER_VERSION, null);
+			}
+		};
+		addListener(mConnection);
+	}
+
+	@Override
+	public ConnectionType getRecvType() {
+		return recvType;
+	}
+
+	@Override
+	public ConnectionType getSendType() {
+		return sendType;
+	}
+
+	@Override
+	public void registerProtocol(Protocol protocol) {
+		protocol.registerPacketFactories(factoryRegistry);
+	}
+
+	@Override
+	public void addListener(Object listener) {
+		mListeners.register(listener);
+	}
+
+	/**
+	 * See {@link ThreadedArtemisNetworkInterface#setParsePackets(boolean)}.
+	 */
+	public void setParsePackets(boolean parse) {
+		mReader.setParsePackets(parse);
+	}
+
+	/**
+	 * See {@link ThreadedArtemisNetworkInterface#setStringPool(StringPool)}.
+	 */
+	public void setStringPool(StringPool stringPool) {
+		mReader.setStringPool(stringPool);
+	}
+
+	@Override
+	public void start() {
+		if (!mStarted.compareAndSet(false, true)) {
+			return;
+		}
+
+		mLoop.execute(this, new Runnable() {
+			@Override
+			public void run() {
+				if (mClosed) {
+					return;
+				}
+
+				try {
+					mKey = mChannel.register(mLoop.getSelector(), SelectionKey.OP_READ,
+							NioArtemisNetworkInterface.this);
+				} catch (IOException ex) {
+					close(DisconnectEvent.Cause.IO_EXCEPTION, ex);
+					return;
+				}
+
+				flush(); // anything sent before start()
+			}
+		});
+	}
+
+	@Override
+	public boolean isConnected() {
+		return mConnection.isConnected();
+	}
+
+	@Override
+	public void send(ArtemisPacket pkt) {
+		if (pkt.getConnectionType() != sendType) {
+			throw new IllegalArgumentException(
+					"Can only send " + sendType + " packets"
+			);
+		}
+
+		mQueue.offer(pkt);
+
+		if (mStarted.get() && mFlushScheduled.compareAndSet(false, true)) {
+			mLoop.execute(this, mFlushTask);
+		}
+	}
+
+	/**
+	 * Closes the connection once the packets already sent have been written,
+	 * as far as the socket will take them without blocking.
+	 */
+	@Override
+	public void stop() {
+		if (mLoop.inLoop()) {
+			flush();
+			close(DisconnectEvent.Cause.LOCAL_DISCONNECT, null);
+			return;
+		}
+
+		mLoop.execute(this, new Runnable() {
+			@Override
+			public void run() {
+				flush();
+				close(DisconnectEvent.Cause.LOCAL_DISCONNECT, null);
+			}
+		});
+	}
+
+	@Override
+	public void attachDebugger(Debugger debugger) {
+		if (debugger == null) {
+			debugger = new BaseDebugger();
+		}
+
+		mDebugger = debugger;
+	}
+
+	@Override
+	public void setVesselData(VesselData vesselData) {
+		mReader.setVesselData(vesselData);
+	}
+
+	@Override
+	public VesselData getVesselData() {
+		return mReader.getVesselData();
+	}
+
+	/**
+	 * Handles the channel becoming readable or writable. Called on the loop
+	 * thread.
+	 */
+	void process(SelectionKey key) {
+		try {
+			if (key.isValid() && key.isReadable()) {
+				read();
+			}
+
+			if (key.isValid() && key.isWritable()) {
+				flush();
+			}
+		} catch (CancelledKeyException ex) {
+			// closed while we were working
+		} catch (RuntimeException ex) {
+			// a listener failed; don't let it take down the other connections
+			close(DisconnectEvent.Cause.LOCAL_DISCONNECT, ex);
+		}
+	}
+
+	/**
+	 * Reads what's available, then parses and fires every complete packet.
+	 */
+	private void read() {
+		int count;
+
+		try {
+			count = mDecoder.read(mChannel);
+		} catch (IOException ex) {
+			close(DisconnectEvent.Cause.IO_EXCEPTION, ex);
+			return;
+		}
+
+		if (count == -1) {
+			close(DisconnectEvent.Cause.REMOTE_DISCONNECT, null);
+			return;
+		}
+
+		try {
+			ArtemisPacket pkt;
+
+			while (!mClosing && (pkt = mDecoder.next(mDebugger)) != null) {
+				mListeners.fire(pkt);
+			}
+		} catch (ArtemisPacketException ex) {
+			close(DisconnectEvent.Cause.PACKET_PARSE_EXCEPTION, ex);
+		}
+	}
+
+	/**
+	 * Encodes the queued packets and writes as much as the channel will
+	 * take, asking to be told when it will take more.
+	 */
+	private void flush() {
+		if (mKey == null || mClosing) {
+			return;
+		}
+
+		final Debugger debugger = mDebugger;
+		ArtemisPacket pkt;
+		boolean done;
+
+		try {
+			while ((pkt = mQueue.poll()) != null) {
+				mEncoder.encode(pkt, debugger);
+			}
+
+			done = mEncoder.write(mChannel);
+		} catch (IOException ex) {
+			close(DisconnectEvent.Cause.IO_EXCEPTION, ex);
+			return;
+		}
+
+		mKey.interestOps(done ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+	}
+
+	/**
+	 * Closes the channel and fires a DisconnectEvent, once. Called on the
+	 * loop thread.
+	 */
+	void close(DisconnectEvent.Cause cause, Exception exception) {
+		if (mClosing) {
+			return;
+		}
+
+		mClosing = true;
+		mClosed = true;
+		mConnection.onDisconnect();
+
+		if (mKey != null) {
+			mKey.cancel();
+		}
+
+		try {
+			mChannel.close();
+		} catch (IOException ex) {
+			// DON'T CARE
+		}
+
+		mListeners.fire(new DisconnectEvent(cause, exception));
+	}
+}
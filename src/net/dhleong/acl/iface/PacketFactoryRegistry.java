@@ -2,6 +2,8 @@ package net.dhleong.acl.iface;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import net.dhleong.acl.enums.ConnectionType;
 import net.dhleong.acl.protocol.core.CoreArtemisProtocol;
@@ -110,4 +112,30 @@ public class PacketFactoryRegistry {
 
 		return null;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns the packet types, in ascending order, of the PacketFactories
+	 * registered under the given ConnectionType which build packets of the
+	 * given class or one of its subclasses. Other classes may share those
+	 * packet types under different subtypes.
+	 */
+	public int[] getPacketTypes(ConnectionType connType, Class<?> clazz) {
+		List<Entry> list = connType == ConnectionType.SERVER ? serverEntries : clientEntries;
+		SortedSet<Integer> types = new TreeSet<Integer>();
+
+		for (Entry entry : list) {
+			if (clazz.isAssignableFrom(entry.factory.getFactoryClass())) {
+				types.add(Integer.valueOf(entry.pktType));
+			}
+		}
+
+		int[] result = new int[types.size()];
+		int i = 0;
+
+		for (Integer type : types) {
+			result[i++] = type.intValue();
+		}
+
+		return result;
+	}
+}
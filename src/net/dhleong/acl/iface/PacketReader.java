@@ -17,19 +17,40 @@ import net.dhleong.acl.protocol.Version;
 import net.dhleong.acl.protocol.core.setup.VersionPacket;
 import net.dhleong.acl.util.BitField;
 import net.dhleong.acl.util.BoolState;
+import net.dhleong.acl.util.StringPool;
 import net.dhleong.acl.util.TextUtil;
+import net.dhleong.acl.vesseldata.VesselData;
+import net.dhleong.acl.vesseldata.VesselDataHolder;
 
 /**
  * Facilitates reading packets from an InputStream. This object may be reused to
  * read as many packets as desired from a single InputStream. Individual packet
  * classes can read their properties by using the read*() methods on this class.
+ * A PacketReader created without an InputStream parses packets whose bytes
+ * have already been framed by the caller; see
+ * {@link #readPacket(int, byte[], Debugger)}.
  * @author rjwut
  */
 public class PacketReader {
+	/**
+	 * The number of bytes in the preamble of every packet, up to and including
+	 * the packet type.
+	 */
+	public static final int PREAMBLE_BYTES = 24;
+
+	/**
+	 * The largest packet, preamble included, that will be accepted. Longer
+	 * lengths are taken to be corrupt, rather than allocating whatever the
+	 * remote machine asks for.
+	 */
+	public static final int MAX_PACKET_BYTES = 1024 * 1024;
+
 	private ConnectionType connType;
 	private InputStream in;
 	private byte[] buffer = new byte[4];
 	private boolean parse = true;
+	private StringPool stringPool;
+	private final VesselDataHolder vesselData = new VesselDataHolder();
 	private PacketFactoryRegistry factoryRegistry;
 	private ListenerRegistry listenerRegistry;
 	private Version version;
@@ -53,6 +74,17 @@ public class PacketReader {
 		this.listenerRegistry = listenerRegistry;
 	}
 
+	/**
+	 * Creates a PacketReader which parses packets framed by the caller, who
+	 * must check each preamble with checkPreamble() and pass the payload to
+	 * readPacket(int, byte[], Debugger).
+	 */
+	public PacketReader(ConnectionType connType,
+			PacketFactoryRegistry factoryRegistry,
+			ListenerRegistry listenerRegistry) {
+		this(connType, null, factoryRegistry, listenerRegistry);
+	}
+
 	/**
 	 * If set to false, all packets will be returned as UnknownPackets. This is
 	 * useful for testing purposes to easily capture packet payloads in their
@@ -63,6 +95,38 @@ public class PacketReader {
 		this.parse = parse;
 	}
 
+	/**
+	 * Sets the StringPool used to decode Strings read from packets, so that
+	 * repeated values such as object names resolve to the same String instance.
+	 * By default, this property is null, meaning that every String is decoded
+	 * individually.
+	 */
+	public void setStringPool(StringPool stringPool) {
+		this.stringPool = stringPool;
+	}
+
+	/**
+	 * Sets the VesselData that the objects read by this PacketReader use to
+	 * look up their vessels, including those it has already read. By
+	 * default, this property is null, meaning that the default VesselData is
+	 * used.
+	 */
+	public void setVesselData(VesselData vesselData) {
+		this.vesselData.set(vesselData);
+	}
+
+	public VesselData getVesselData() {
+		return vesselData.get();
+	}
+
+	/**
+	 * Returns the holder through which the objects read by this PacketReader
+	 * look up their VesselData.
+	 */
+	public VesselDataHolder getVesselDataHolder() {
+		return vesselData;
+	}
+
 	/**
 	 * Returns the server Version, or null if unknown.
 	 */
@@ -75,16 +139,45 @@ public class PacketReader {
 	 * notified.
 	 */
 	public ArtemisPacket readPacket(Debugger debugger) throws ArtemisPacketException {
-		offset = 0;
-		objectType = null;
-		objectId = 0;
-		bitField = null;
-		unknownProps = new TreeMap<String, byte[]>();
-		unknownObjectProps = new TreeMap<String, byte[]>();
-
-		// header (0xdeadbeef)
 		final int header = readIntFromStream();
+		final int len = readIntFromStream();
+		final int connectionTypeValue = readIntFromStream();
+		final int padding = readIntFromStream();
+		final int remainingBytes = readIntFromStream();
+		checkPreamble(header, len, connectionTypeValue, padding, remainingBytes);
+
+		// packet type
+		final int packetType = readIntFromStream();
+
+		// payload
+		// The preamble was 24 bytes (6 ints), so the payload size is the size
+		// of the whole packet minus 24 bytes.
+		final int remaining = len - PREAMBLE_BYTES;
+		byte[] bytes = new byte[remaining];
+
+		try {
+			int bytesRead = in.read(bytes, 0, remaining);
 
+			if (bytesRead < remaining) {
+				throw new EOFException("Stream is closed");
+			}
+		} catch (IOException ex) {
+			throw new ArtemisPacketException(ex, connType, packetType);
+		}
+
+		return readPacket(packetType, bytes, debugger);
+	}
+
+	/**
+	 * Checks the first five ints of a packet's preamble (all but the packet
+	 * type), throwing an ArtemisPacketException if they are invalid; that
+	 * includes a length shorter than the preamble or longer than
+	 * MAX_PACKET_BYTES.
+	 * @return The length of the packet's payload in bytes
+	 */
+	public int checkPreamble(int header, int len, int connectionTypeValue,
+			int padding, int remainingBytes) throws ArtemisPacketException {
+		// header (0xdeadbeef)
 		if (header != ArtemisPacket.HEADER) {
 			throw new ArtemisPacketException(
 					"Illegal packet header: " + Integer.toHexString(header)
@@ -92,16 +185,13 @@ public class PacketReader {
 		}
 
 		// packet length
-		final int len = readIntFromStream();
-
-		if (len <= 8) {
+		if (len < PREAMBLE_BYTES || len > MAX_PACKET_BYTES) {
 			throw new ArtemisPacketException(
 					"Illegal packet length: " + len
 			);
 		}
 
 		// connection type
-		final int connectionTypeValue = readIntFromStream();
 		final ConnectionType connectionType = ConnectionType.fromInt(connectionTypeValue);
 
 		if (connectionType == null) {
@@ -118,8 +208,6 @@ public class PacketReader {
 		}
 
 		// padding
-		final int padding = readIntFromStream();
-
 		if (padding != 0) {
 			throw new ArtemisPacketException(
 					"No empty padding after connection type?",
@@ -128,7 +216,6 @@ public class PacketReader {
 		}
 
 		// remaining bytes
-		final int remainingBytes = readIntFromStream();
 		final int expectedRemainingBytes = len - 20;
 
 		if (remainingBytes != expectedRemainingBytes) {
@@ -141,24 +228,23 @@ public class PacketReader {
 			);
 		}
 
-		// packet type
-		final int packetType = readIntFromStream();
-
-		// payload
-		// The preamble was 24 bytes (6 ints), so the payload size is the size
-		// of the whole packet minus 24 bytes.
-		final int remaining = len - 24;
-		payload = new byte[remaining];
-
-		try {
-			int bytesRead = in.read(payload, 0, remaining);
+		return len - PREAMBLE_BYTES;
+	}
 
-			if (bytesRead < remaining) {
-				throw new EOFException("Stream is closed");
-			}
-		} catch (IOException ex) {
-			throw new ArtemisPacketException(ex, connType, packetType);
-		}
+	/**
+	 * Parses a packet of the given type from the given payload, which must
+	 * not be modified afterwards, and returns it. The given Debugger will also
+	 * be notified.
+	 */
+	public ArtemisPacket readPacket(int packetType, byte[] payload, Debugger debugger)
+			throws ArtemisPacketException {
+		offset = 0;
+		objectType = null;
+		objectId = 0;
+		bitField = null;
+		unknownProps = new TreeMap<String, byte[]>();
+		unknownObjectProps = new TreeMap<String, byte[]>();
+		this.payload = payload;
 
 		debugger.onRecvPacketBytes(connType, packetType, payload);
 
@@ -345,23 +431,12 @@ public class PacketReader {
 	 */
 	public String readString() {
 		int charCount = readInt();
-		int byteCount = charCount * 2;
-		byte[] bytes = Arrays.copyOfRange(payload, offset, offset + byteCount - 2);
-		int i = 0;
-
-		// check for "early" null
-		for ( ; i < bytes.length; i += 2) {
-			if (bytes[i] == 0 && bytes[i + 1] == 0) {
-				break;
-			}
-		}
-
-		if (i != bytes.length) {
-			bytes = Arrays.copyOfRange(bytes, 0, i);
-		}
-
-		offset += byteCount;
-		return new String(bytes, ArtemisPacket.CHARSET);
+		int length = StringPool.length(payload, offset, Math.max(charCount - 1, 0));
+		String str = stringPool != null ?
+				stringPool.get(payload, offset, length) :
+				StringPool.decode(payload, offset, length);
+		offset += charCount * 2;
+		return str;
 	}
 
 	/**
@@ -428,16 +428,12 @@ public class PacketWriter {
 	 * Writes a String to the given ByteArrayOutputStream.
 	 */
 	private void writeString(ByteArrayOutputStream o, String str) {
-		int charCount = str.length() + 1;
-		writeInt(o, charCount);
+		final int len = str.length();
+		writeInt(o, len + 1);
 
-		try {
-			o.write(str.getBytes(ArtemisPacket.CHARSET));
-		} catch (IOException ex) {
-			// ByteArrayOutputStream doesn't actually throw IOException; it
-			// just inherits the declaration from the OutputStream class. Since
-			// it won't ever actually happen, we wrap it in a RuntimeException.
-			throw new RuntimeException(ex);
+		// encode UTF-16LE directly rather than allocating through getBytes()
+		for (int i = 0; i < len; i++) {
+			writeShort(o, str.charAt(i));
 		}
 
 		writeShort(o, 0);	// terminating null
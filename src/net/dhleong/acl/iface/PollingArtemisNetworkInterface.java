@@ -0,0 +1,281 @@
+package net.dhleong.acl.iface;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import net.dhleong.acl.enums.ConnectionType;
+import net.dhleong.acl.protocol.ArtemisPacket;
+import net.dhleong.acl.protocol.ArtemisPacketException;
+import net.dhleong.acl.protocol.Protocol;
+import net.dhleong.acl.util.StringPool;
+import net.dhleong.acl.vesseldata.VesselData;
+
+/**
+ * An ArtemisNetworkInterface with no threads of its own, for applications
+ * which run their own loop, such as a game engine or a UI. Nothing happens
+ * until the application calls poll(), which reads whatever the socket has
+ * available and calls the listeners, and flush(), which writes the packets
+ * passed to send(). Both return immediately, so a loop would typically do:
+ *
+ * <pre>
+ * while (running) {
+ *     iface.poll(100);
+ *     // update and render the world
+ *     iface.flush();
+ * }
+ * </pre>
+ *
+ * Since every listener is called on the thread which calls poll(), the world
+ * state it builds is never updated while that thread is reading it.
+ *
+ * This class is not thread-safe: apart from isConnected(), all its methods
+ * must be called from the same thread. A RuntimeException thrown by a
+ * listener propagates out of poll(); the packet that caused it is not
+ * delivered again.
+ */
+public class PollingArtemisNetworkInterface implements ArtemisNetworkInterface {
+	private final SocketChannel mChannel;
+	private final ConnectionType recvType;
+	private final ConnectionType sendType;
+	private final PacketFactoryRegistry factoryRegistry = new PacketFactoryRegistry();
+	private final ListenerRegistry mListeners = new ListenerRegistry();
+	private final PacketReader mReader;
+	private final Queue<ArtemisPacket> mQueue = new ArrayDeque<ArtemisPacket>();
+	private final ConnectionListener mConnection;
+	private final FrameDecoder mDecoder;
+	private final FrameEncoder mEncoder = new FrameEncoder();
+	private Debugger mDebugger = new BaseDebugger();
+	private boolean mClosed;
+
+	/**
+	 * Connects to an Artemis server, waiting forever for the connection to
+	 * be established.
+	 */
+	public PollingArtemisNetworkInterface(String host, int port) throws IOException {
+		this(host, port, 0);
+	}
+
+	/**
+	 * Connects to an Artemis server, waiting up to timeoutMs milliseconds for
+	 * the connection to be established; 0 means "wait forever."
+	 */
+	public PollingArtemisNetworkInterface(String host, int port, int timeoutMs)
+			throws IOException {
+		this(ConnectionListener.connect(host, port, timeoutMs), ConnectionType.SERVER);
+	}
+
+	/**
+	 * Creates an interface which will communicate over the given connected
+	 * SocketChannel; connType is the type of the remote machine, as for
+	 * ThreadedArtemisNetworkInterface(Socket, ConnectionType).
+	 */
+	public PollingArtemisNetworkInterface(SocketChannel channel, ConnectionType connType)
+			throws IOException {
+		mChannel = channel;
+		recvType = connType;
+		sendType = connType.opposite();
+		channel.socket().setKeepAlive(true);
+		channel.socket().setTcpNoDelay(true);
+		channel.configureBlocking(false);
+		mReader = new PacketReader(recvType, factoryRegistry, mListeners);
+		mDecoder = new FrameDecoder(mReader);
+		mConnection = new ConnectionListener(mListeners) {
+			@Override
+			void onUnsupportedVersion() {
+				close(DisconnectEvent.Cause.UNSUPPORTED_SERVER_VERSION, null);
+			}
+		};
+		addListener(mConnection);
+	}
+
+	@Override
+	public ConnectionType getRecvType() {
+		return recvType;
+	}
+
+	@Override
+	public ConnectionType getSendType() {
+		return sendType;
+	}
+
+	@Override
+	public void registerProtocol(Protocol protocol) {
+		protocol.registerPacketFactories(factoryRegistry);
+	}
+
+	@Override
+	public void addListener(Object listener) {
+		mListeners.register(listener);
+	}
+
+	/**
+	 * See {@link ThreadedArtemisNetworkInterface#setParsePackets(boolean)}.
+	 */
+	public void setParsePackets(boolean parse) {
+		mReader.setParsePackets(parse);
+	}
+
+	/**
+	 * See {@link ThreadedArtemisNetworkInterface#setStringPool(StringPool)}.
+	 */
+	public void setStringPool(StringPool stringPool) {
+		mReader.setStringPool(stringPool);
+	}
+
+	/**
+	 * Does nothing; packets are read by poll() and written by flush().
+	 */
+	@Override
+	public void start() {
+	}
+
+	@Override
+	public boolean isConnected() {
+		return mConnection.isConnected();
+	}
+
+	/**
+	 * Enqueues a packet to be written by the next call to flush().
+	 */
+	@Override
+	public void send(ArtemisPacket pkt) {
+		if (pkt.getConnectionType() != sendType) {
+			throw new IllegalArgumentException(
+					"Can only send " + sendType + " packets"
+			);
+		}
+
+		mQueue.offer(pkt);
+	}
+
+	/**
+	 * Writes what can be written without blocking, then closes the
+	 * connection and fires a DisconnectEvent.
+	 */
+	@Override
+	public void stop() {
+		flush();
+		close(DisconnectEvent.Cause.LOCAL_DISCONNECT, null);
+	}
+
+	@Override
+	public void attachDebugger(Debugger debugger) {
+		if (debugger == null) {
+			debugger = new BaseDebugger();
+		}
+
+		mDebugger = debugger;
+	}
+
+	@Override
+	public void setVesselData(VesselData vesselData) {
+		mReader.setVesselData(vesselData);
+	}
+
+	@Override
+	public VesselData getVesselData() {
+		return mReader.getVesselData();
+	}
+
+	/**
+	 * Reads whatever the socket has available without blocking, and parses
+	 * and fires up to maxPackets packets on the calling thread. Packets
+	 * beyond that are kept for the next call. If the connection is lost, a
+	 * DisconnectEvent is fired and later calls do nothing.
+	 * @return The number of packets fired
+	 */
+	public int poll(int maxPackets) {
+		if (maxPackets <= 0) {
+			throw new IllegalArgumentException("Invalid packet count: " + maxPackets);
+		}
+
+		int fired = 0;
+
+		try {
+			while (fired < maxPackets && !mClosed) {
+				ArtemisPacket pkt = mDecoder.next(mDebugger);
+
+				if (pkt != null) {
+					mListeners.fire(pkt);
+					fired++;
+				} else if (!fill()) {
+					break;
+				}
+			}
+		} catch (ArtemisPacketException ex) {
+			close(DisconnectEvent.Cause.PACKET_PARSE_EXCEPTION, ex);
+		}
+
+		return fired;
+	}
+
+	/**
+	 * Encodes the packets passed to send() and writes as much as the socket
+	 * will take without blocking. Whatever doesn't fit is written by later
+	 * calls.
+	 * @return true if nothing remains to be written
+	 */
+	public boolean flush() {
+		if (mClosed) {
+			return true;
+		}
+
+		final Debugger debugger = mDebugger;
+		ArtemisPacket pkt;
+
+		try {
+			while ((pkt = mQueue.poll()) != null) {
+				mEncoder.encode(pkt, debugger);
+			}
+
+			return mEncoder.write(mChannel);
+		} catch (IOException ex) {
+			close(DisconnectEvent.Cause.IO_EXCEPTION, ex);
+			return true;
+		}
+	}
+
+	/**
+	 * Reads what the socket has available without blocking.
+	 * @return true if anything was read
+	 */
+	private boolean fill() {
+		int count;
+
+		try {
+			count = mDecoder.read(mChannel);
+		} catch (IOException ex) {
+			close(DisconnectEvent.Cause.IO_EXCEPTION, ex);
+			return false;
+		}
+
+		if (count == -1) {
+			close(DisconnectEvent.Cause.REMOTE_DISCONNECT, null);
+			return false;
+		}
+
+		return count > 0;
+	}
+
+	/**
+	 * Closes the channel and fires a DisconnectEvent, once.
+	 */
+	private void close(DisconnectEvent.Cause cause, Exception exception) {
+		if (mClosed) {
+			return;
+		}
+
+		mClosed = true;
+		mConnection.onDisconnect();
+
+		try {
+			mChannel.close();
+		} catch (IOException ex) {
+			// DON'T CARE
+		}
+
+		mListeners.fire(new DisconnectEvent(cause, exception));
+	}
+}
@@ -10,6 +10,7 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
 
 import net.dhleong.acl.enums.ConnectionType;
 import net.dhleong.acl.protocol.ArtemisPacket;
@@ -18,10 +19,14 @@ import net.dhleong.acl.protocol.Protocol;
 import net.dhleong.acl.protocol.Version;
 import net.dhleong.acl.protocol.core.setup.VersionPacket;
 import net.dhleong.acl.protocol.core.setup.WelcomePacket;
+import net.dhleong.acl.util.StringPool;
+import net.dhleong.acl.vesseldata.VesselData;
 
 /**
  * Default implementation of ArtemisNetworkInterface. Kicks off a thread for
- * each stream.
+ * each stream. The threads come from a ThreadFactory, which may be set to
+ * {@link ConnectionThreads#virtual()} to run them as virtual threads on JDKs
+ * that support them.
  */
 public class ThreadedArtemisNetworkInterface implements ArtemisNetworkInterface {
     private ConnectionType recvType;
@@ -30,6 +35,8 @@ public class ThreadedArtemisNetworkInterface implements ArtemisNetworkInterface
     private ListenerRegistry mListeners = new ListenerRegistry();
     private ReceiverThread mReceiveThread;
     private SenderThread mSendThread;
+    private ThreadFactory mThreadFactory = ConnectionThreads.platform();
+    private boolean mStarted;
 
     private DisconnectEvent.Cause disconnectCause = DisconnectEvent.Cause.LOCAL_DISCONNECT;
     private Exception exception;
@@ -125,14 +132,37 @@ public class ThreadedArtemisNetworkInterface implements ArtemisNetworkInterface
     	mReceiveThread.setParsePackets(parse);
     }
 
-    @Override
-    public void start() {
-        if (!mReceiveThread.mStarted) {
-            mReceiveThread.start();
+    /**
+     * Sets the StringPool used to decode Strings in incoming packets. Object
+     * names and mesh paths repeat constantly over the course of a game, so
+     * pooling them saves garbage and lets equal names share one instance. By
+     * default, no StringPool is used.
+     */
+    public void setStringPool(StringPool stringPool) {
+    	mReceiveThread.setStringPool(stringPool);
+    }
+
+    /**
+     * Sets the ThreadFactory which creates the receive and send threads when
+     * start() is called; by default, {@link ConnectionThreads#platform()}.
+     * The threads only ever block on the socket or sleep, so
+     * {@link ConnectionThreads#virtual()} lets many connections share a few
+     * carrier threads.
+     */
+    public synchronized void setThreadFactory(ThreadFactory threadFactory) {
+        if (mStarted) {
+            throw new IllegalStateException("Already started");
         }
 
-        if (!mSendThread.mStarted) {
-            mSendThread.start();
+        mThreadFactory = threadFactory;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!mStarted) {
+            mStarted = true;
+            mThreadFactory.newThread(mReceiveThread).start();
+            mThreadFactory.newThread(mSendThread).start();
         }
     }
 
@@ -162,7 +192,7 @@ public class ThreadedArtemisNetworkInterface implements ArtemisNetworkInterface
     /**
 	 * Manages sending packets to the OutputStream.
 	 */
-	private static class SenderThread extends Thread {
+	private static class SenderThread implements Runnable {
         private final Socket mSkt;
         private final Queue<ArtemisPacket> mQueue = new ConcurrentLinkedQueue<ArtemisPacket>();
         private boolean mRunning = true;
@@ -171,7 +201,6 @@ public class ThreadedArtemisNetworkInterface implements ArtemisNetworkInterface
         private final ThreadedArtemisNetworkInterface mInterface;
         
         private boolean mConnected;
-        private boolean mStarted;
 
         public SenderThread(final ThreadedArtemisNetworkInterface net, final Socket skt) throws IOException {
             mInterface = net;
@@ -189,8 +218,6 @@ public class ThreadedArtemisNetworkInterface implements ArtemisNetworkInterface
 
         @Override
         public void run() {
-            mStarted = true;
-
             while (mRunning) {
                 try {
                     Thread.sleep(5);
@@ -271,11 +298,10 @@ public class ThreadedArtemisNetworkInterface implements ArtemisNetworkInterface
 	/**
 	 * Manages receiving packets from the InputStream.
 	 */
-    private class ReceiverThread extends Thread {
+    private class ReceiverThread implements Runnable {
         private boolean mRunning = true;
         private final ThreadedArtemisNetworkInterface mInterface;
         private PacketReader mReader;
-        private boolean mStarted;
         
         public ReceiverThread(final ThreadedArtemisNetworkInterface net, final Socket skt) throws IOException {
             mInterface = net;
@@ -288,10 +314,20 @@ public class ThreadedArtemisNetworkInterface implements ArtemisNetworkInterface
         	mReader.setParsePackets(parse);
         }
 
+        private void setStringPool(StringPool stringPool) {
+        	mReader.setStringPool(stringPool);
+        }
+
+        private void setVesselData(VesselData vesselData) {
+        	mReader.setVesselData(vesselData);
+        }
+
+        private VesselData getVesselData() {
+        	return mReader.getVesselData();
+        }
+
         @Override
         public void run() {
-            mStarted = true;
-            
             while (mRunning) {
                 try {
                     // read packet
@@ -328,6 +364,16 @@ public class ThreadedArtemisNetworkInterface implements ArtemisNetworkInterface
         }
     }
 
+	@Override
+	public void setVesselData(VesselData vesselData) {
+		mReceiveThread.setVesselData(vesselData);
+	}
+
+	@Override
+	public VesselData getVesselData() {
+		return mReceiveThread.getVesselData();
+	}
+
 	@Override
 	public void attachDebugger(Debugger debugger) {
 		if (debugger == null) {
@@ -268,6 +268,27 @@ public class EngGridUpdatePacket extends BaseArtemisPacket {
             return z;
         }
 
+        /**
+         * The X-coordinate of the grid location this DAMCON team is heading to.
+         */
+        public int getGoalX() {
+            return xGoal;
+        }
+
+        /**
+         * The Y-coordinate of the grid location this DAMCON team is heading to.
+         */
+        public int getGoalY() {
+            return yGoal;
+        }
+
+        /**
+         * The Z-coordinate of the grid location this DAMCON team is heading to.
+         */
+        public int getGoalZ() {
+            return zGoal;
+        }
+
         /**
          * The DAMCON team's progress towards their destination.
          */
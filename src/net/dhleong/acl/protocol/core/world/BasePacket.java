@@ -83,6 +83,7 @@ public class BasePacket extends BaseArtemisPacket implements ObjectUpdatingPacke
             reader.readObjectUnknown(Bit.UNK_2_6, 1);
             
             ArtemisBase base = new ArtemisBase(reader.getObjectId(), name, hullId);
+            base.setVesselDataHolder(reader.getVesselDataHolder());
             base.setIndex(index);
             base.setX(x);
             base.setY(y);
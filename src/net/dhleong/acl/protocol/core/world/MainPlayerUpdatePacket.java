@@ -157,6 +157,7 @@ public class MainPlayerUpdatePacket extends BaseArtemisPacket implements ObjectU
             		reader.getObjectId(), name, hullId, shipNumber,
             		redAlert, shields
             );
+            player.setVesselDataHolder(reader.getVesselDataHolder());
             player.setTopSpeed(topSpeed);
             player.setTurnRate(turnRate);
             player.setAutoBeams(mAutoBeams);
@@ -189,6 +189,7 @@ public class NpcUpdatePacket extends BaseArtemisPacket implements ObjectUpdating
             }
 
             ArtemisNpc obj = new ArtemisNpc(reader.getObjectId(), name, hullId);
+            obj.setVesselDataHolder(reader.getVesselDataHolder());
             obj.setScanLevel((byte) scanned);
             obj.setEnemy(enemy);
             obj.setEliteBits(elite);
@@ -1,16 +1,34 @@
 package net.dhleong.acl.util;
 
-import java.util.ArrayDeque;
-import java.util.Iterator;
-import java.util.Queue;
-
 /**
  * A 3d grid coordinate, for referencing internal systems on the Player's ship.
  * @author dhleong
  */
 public final class GridCoord implements Comparable<GridCoord> {
-    private static final int CACHE_SIZE = 50;
-    private static final Queue<GridCoord> sCache = new ArrayDeque<GridCoord>(CACHE_SIZE);
+    /**
+     * The dimensions of a ship's system grid.
+     */
+    public static final int MAX_X = 5;
+    public static final int MAX_Y = 5;
+    public static final int MAX_Z = 10;
+
+    /**
+     * The number of nodes in a ship's system grid, and therefore the size of
+     * an array indexed by {@link #getIndex()}.
+     */
+    public static final int GRID_SIZE = MAX_X * MAX_Y * MAX_Z;
+
+    private static final GridCoord[] sTable = new GridCoord[GRID_SIZE];
+
+    static {
+        for (int z = 0; z < MAX_Z; z++) {
+            for (int y = 0; y < MAX_Y; y++) {
+                for (int x = 0; x < MAX_X; x++) {
+                    sTable[getIndex(x, y, z)] = new GridCoord(x, y, z);
+                }
+            }
+        }
+    }
 
     private final int x, y, z;
 
@@ -64,41 +82,44 @@ public final class GridCoord implements Comparable<GridCoord> {
     }
 
     /**
-     * This factory method uses a very simple LRU queue to maintain a cache of
-     * GridCoords, since we will probably reuse just a handful but fairly often.
-     * This should keep our memory footprint to a minimum.
+     * Returns the GridCoord for the given coordinates. Every coordinate on the
+     * grid has a single shared instance which is created up front, so this
+     * never locks or allocates; coordinates off the grid get a new instance.
      */
     public static final GridCoord getInstance(int x, int y, int z) {
-        synchronized(sCache) {
-            Iterator<GridCoord> iter = sCache.iterator();
+        final int index = getIndex(x, y, z);
+        return index == -1 ? new GridCoord(x, y, z) : sTable[index];
+    }
 
-            while (iter.hasNext()) {
-                GridCoord c = iter.next();
+    /**
+     * Returns this coord packed into a single int in the range
+     *  [0, GRID_SIZE), suitable for indexing an array, or -1 if this coord
+     *  lies outside the grid.
+     */
+    public int getIndex() {
+        return getIndex(x, y, z);
+    }
 
-                if (c.equals(x, y, z)) {
-                    iter.remove(); // pop out so we can move it to the head
-                    sCache.offer(c);
-                    return c;
-                }
-            }
+    /**
+     * Packs the given coordinates as described by {@link #getIndex()}.
+     */
+    public static int getIndex(int x, int y, int z) {
+        if (x < 0 || x >= MAX_X || y < 0 || y >= MAX_Y || z < 0 || z >= MAX_Z) {
+            return -1;
         }
 
-        GridCoord c = new GridCoord(x, y, z);
-
-        // put it in the queue, if there's room. 
-        int size = sCache.size();
-
-        if (size >= CACHE_SIZE) {
-            synchronized(sCache) {
-                sCache.poll(); // free up space
-            }
-        }
+        return x + MAX_X * (y + MAX_Y * z);
+    }
 
-        synchronized(sCache) {
-            sCache.offer(c);
+    /**
+     * Returns the GridCoord for an index returned by {@link #getIndex()}.
+     */
+    public static GridCoord fromIndex(int index) {
+        if (index < 0 || index >= GRID_SIZE) {
+            throw new IllegalArgumentException("Invalid grid index: " + index);
         }
 
-        return c;
+        return sTable[index];
     }
 
     /**
@@ -0,0 +1,333 @@
+package net.dhleong.acl.util;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A map of int keys to object values which uses open addressing over
+ * primitive arrays, so that neither lookups nor insertions box the key. Null
+ * values are not permitted.
+ *
+ * IntMap is designed for one writer thread and any number of reader threads.
+ * Writes must not be performed concurrently, but get() and iteration may be
+ * performed from other threads at any time without locking. A slot is never
+ * reused for a different key within the same table: removed entries leave a
+ * tombstone behind, and tombstones are only reclaimed when the writer
+ * rebuilds the table and publishes the replacement. As a result, readers never
+ * see a value paired with the wrong key, and iterators never throw
+ * ConcurrentModificationException. Iteration is weakly consistent: it reflects
+ * the table as it was when the iterator was created, plus possibly some later
+ * changes.
+ */
+public class IntMap<V> {
+	private static final int MIN_CAPACITY = 16;
+	private static final Object TOMBSTONE = new Object();
+
+	/**
+	 * The values are written with lazySet() and read with get(), so a reader
+	 * which sees a value also sees every key written before it.
+	 */
+	private static final class Table {
+		private final int[] keys;
+		private final AtomicReferenceArray<Object> values;
+		private final int mask;
+
+		private Table(int capacity) {
+			keys = new int[capacity];
+			values = new AtomicReferenceArray<Object>(capacity);
+			mask = capacity - 1;
+		}
+	}
+
+	private volatile Table table;
+	private volatile int size;
+	private int used; // live entries plus tombstones
+	private final Collection<V> valuesView = new ValuesView();
+
+	public IntMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * Creates an IntMap sized to hold the given number of entries without
+	 * having to grow.
+	 */
+	public IntMap(int expectedSize) {
+		table = new Table(capacityFor(expectedSize));
+	}
+
+	/**
+	 * Returns the number of entries in this map.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if this map contains no entries; false otherwise.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the value mapped to the given key, or null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		final Table t = table;
+		final int[] keys = t.keys;
+		final AtomicReferenceArray<Object> values = t.values;
+		int i = hash(key) & t.mask;
+
+		while (true) {
+			Object value = values.get(i);
+
+			if (value == null) {
+				return null;
+			}
+
+			if (keys[i] == key && value != TOMBSTONE) {
+				return (V) value;
+			}
+
+			i = (i + 1) & t.mask;
+		}
+	}
+
+	/**
+	 * Returns true if this map contains the given key; false otherwise.
+	 */
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Maps the given key to the given value and returns the value previously
+	 * mapped to the key, or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not permitted");
+		}
+
+		Table t = table;
+		int i = hash(key) & t.mask;
+
+		while (true) {
+			Object existing = t.values.get(i);
+
+			if (existing == null) {
+				break;
+			}
+
+			if (t.keys[i] == key && existing != TOMBSTONE) {
+				t.values.lazySet(i, value);
+				return (V) existing;
+			}
+
+			i = (i + 1) & t.mask;
+		}
+
+		if ((used + 1) * 2 > t.keys.length) {
+			// rebuild, growing only if the live entries need the room
+			t = rehash(capacityFor(size + 1));
+			i = hash(key) & t.mask;
+
+			while (t.values.get(i) != null) {
+				i = (i + 1) & t.mask;
+			}
+		}
+
+		// lazySet() orders the key's store before the value's, so a reader
+		// can't find the value paired with the slot's old (zero) key
+		t.keys[i] = key;
+		t.values.lazySet(i, value);
+		used++;
+		size = size + 1;
+		return null;
+	}
+
+	/**
+	 * Removes the entry for the given key and returns its value, or null if
+	 * there was no such entry.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		final Table t = table;
+		int i = hash(key) & t.mask;
+
+		while (true) {
+			Object existing = t.values.get(i);
+
+			if (existing == null) {
+				return null;
+			}
+
+			if (t.keys[i] == key && existing != TOMBSTONE) {
+				t.values.lazySet(i, TOMBSTONE);
+				size = size - 1;
+				return (V) existing;
+			}
+
+			i = (i + 1) & t.mask;
+		}
+	}
+
+	/**
+	 * Removes all entries from this map.
+	 */
+	public void clear() {
+		table = new Table(MIN_CAPACITY);
+		used = 0;
+		size = 0;
+	}
+
+	/**
+	 * Returns a read-only view of the values in this map. The view's iterator
+	 * is weakly consistent and may be used from any thread.
+	 */
+	public Collection<V> values() {
+		return valuesView;
+	}
+
+	/**
+	 * Writes the keys in this map into the given array, which must be at
+	 * least size() long, and returns the number of keys written.
+	 */
+	public int keys(int[] dest) {
+		final Table t = table;
+		int count = 0;
+
+		for (int i = 0; i < t.values.length() && count < dest.length; i++) {
+			Object value = t.values.get(i);
+
+			if (value != null && value != TOMBSTONE) {
+				dest[count++] = t.keys[i];
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Copies all live entries into a new table of the given capacity, then
+	 * publishes it.
+	 */
+	private Table rehash(int capacity) {
+		final Table old = table;
+		final Table t = new Table(capacity);
+		int count = 0;
+
+		for (int j = 0; j < old.values.length(); j++) {
+			Object value = old.values.get(j);
+
+			if (value == null || value == TOMBSTONE) {
+				continue;
+			}
+
+			int key = old.keys[j];
+			int i = hash(key) & t.mask;
+
+			while (t.values.get(i) != null) {
+				i = (i + 1) & t.mask;
+			}
+
+			// plain ordering would do, as the volatile write of table below
+			// publishes the whole table
+			t.keys[i] = key;
+			t.values.lazySet(i, value);
+			count++;
+		}
+
+		used = count;
+		table = t;
+		return t;
+	}
+
+	/**
+	 * Returns a power-of-two table capacity that keeps the load factor at or
+	 * below 1/2 for the given number of entries.
+	 */
+	private static int capacityFor(int entries) {
+		int capacity = MIN_CAPACITY;
+
+		while (capacity < entries * 2) {
+			capacity <<= 1;
+		}
+
+		return capacity;
+	}
+
+	/**
+	 * Spreads the bits of the key; object IDs tend to differ mostly in their
+	 * low bits, but not always.
+	 */
+	private static int hash(int key) {
+		int h = key * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+
+	private class ValuesView extends AbstractCollection<V> {
+		@Override
+		public Iterator<V> iterator() {
+			return new ValueIterator(table);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	private class ValueIterator implements Iterator<V> {
+		private final AtomicReferenceArray<Object> values;
+		private int index = -1;
+		private Object next;
+
+		private ValueIterator(Table t) {
+			values = t.values;
+			advance();
+		}
+
+		private void advance() {
+			next = null;
+
+			while (++index < values.length()) {
+				Object value = values.get(index);
+
+				if (value != null && value != TOMBSTONE) {
+					next = value;
+					break;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+
+			Object value = next;
+			advance();
+			return (V) value;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
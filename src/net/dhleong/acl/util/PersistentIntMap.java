@@ -0,0 +1,340 @@
+package net.dhleong.acl.util;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable map of int keys to object values. Instead of modifying the map,
+ * with() and without() return a new map which shares all of its structure with
+ * the original except for the path to the changed entry, so a change costs
+ * O(log32 n) regardless of the size of the map, and old versions remain valid
+ * and unchanged for as long as anyone holds on to them. Because instances never
+ * change, they may be shared freely between threads. Null values are not
+ * permitted.
+ *
+ * Internally this is a hash array mapped trie: each node consumes five bits of
+ * the key and stores only the children that exist, indexed by a bitmap.
+ */
+public final class PersistentIntMap<V> {
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+	private static final Node EMPTY_NODE = new Node(0, new Object[0]);
+
+	@SuppressWarnings("rawtypes")
+	private static final PersistentIntMap EMPTY = new PersistentIntMap(EMPTY_NODE, 0);
+
+	private static final class Leaf {
+		private final int key;
+		private final Object value;
+
+		private Leaf(int key, Object value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	private static final class Node {
+		private final int bitmap;
+		private final Object[] slots; // each is a Node or a Leaf
+
+		private Node(int bitmap, Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+	}
+
+	/**
+	 * Returns an empty map.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V> PersistentIntMap<V> empty() {
+		return EMPTY;
+	}
+
+	private final Node root;
+	private final int size;
+	private Collection<V> valuesView;
+
+	private PersistentIntMap(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the number of entries in this map.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if this map contains no entries; false otherwise.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the value mapped to the given key, or null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		Node node = root;
+
+		for (int shift = 0; ; shift += BITS) {
+			final int bit = bit(key, shift);
+
+			if ((node.bitmap & bit) == 0) {
+				return null;
+			}
+
+			Object slot = node.slots[index(node.bitmap, bit)];
+
+			if (slot instanceof Leaf) {
+				Leaf leaf = (Leaf) slot;
+				return leaf.key == key ? (V) leaf.value : null;
+			}
+
+			node = (Node) slot;
+		}
+	}
+
+	/**
+	 * Returns true if this map contains the given key; false otherwise.
+	 */
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Returns a map which is identical to this one, except that the given key
+	 * is mapped to the given value.
+	 */
+	public PersistentIntMap<V> with(int key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not permitted");
+		}
+
+		boolean[] added = new boolean[1];
+		Node newRoot = with(root, 0, new Leaf(key, value), added);
+		return new PersistentIntMap<V>(newRoot, added[0] ? size + 1 : size);
+	}
+
+	/**
+	 * Returns a map which is identical to this one, except that it has no
+	 * entry for the given key. If there was no such entry, this map is
+	 * returned.
+	 */
+	public PersistentIntMap<V> without(int key) {
+		if (get(key) == null) {
+			return this;
+		}
+
+		Object newRoot = without(root, 0, key);
+
+		if (newRoot == null) {
+			return empty();
+		}
+
+		if (newRoot instanceof Leaf) {
+			Leaf leaf = (Leaf) newRoot;
+			newRoot = new Node(bit(leaf.key, 0), new Object[] { leaf });
+		}
+
+		return new PersistentIntMap<V>((Node) newRoot, size - 1);
+	}
+
+	/**
+	 * Returns a read-only view of the values in this map.
+	 */
+	public Collection<V> values() {
+		// benign race; any thread may create the view
+		Collection<V> view = valuesView;
+
+		if (view == null) {
+			view = new ValuesView();
+			valuesView = view;
+		}
+
+		return view;
+	}
+
+	private static Node with(Node node, int shift, Leaf leaf, boolean[] added) {
+		final int bit = bit(leaf.key, shift);
+		final int idx = index(node.bitmap, bit);
+
+		if ((node.bitmap & bit) == 0) {
+			Object[] slots = new Object[node.slots.length + 1];
+			System.arraycopy(node.slots, 0, slots, 0, idx);
+			slots[idx] = leaf;
+			System.arraycopy(node.slots, idx, slots, idx + 1, node.slots.length - idx);
+			added[0] = true;
+			return new Node(node.bitmap | bit, slots);
+		}
+
+		Object slot = node.slots[idx];
+		Object replacement;
+
+		if (slot instanceof Leaf) {
+			Leaf existing = (Leaf) slot;
+
+			if (existing.key == leaf.key) {
+				replacement = leaf;
+			} else {
+				replacement = merge(existing, leaf, shift + BITS);
+				added[0] = true;
+			}
+		} else {
+			replacement = with((Node) slot, shift + BITS, leaf, added);
+		}
+
+		Object[] slots = node.slots.clone();
+		slots[idx] = replacement;
+		return new Node(node.bitmap, slots);
+	}
+
+	/**
+	 * Returns a Node at the given shift which contains both of the given
+	 * leaves, whose keys differ.
+	 */
+	private static Node merge(Leaf a, Leaf b, int shift) {
+		final int bitA = bit(a.key, shift);
+		final int bitB = bit(b.key, shift);
+
+		if (bitA == bitB) {
+			return new Node(bitA, new Object[] { merge(a, b, shift + BITS) });
+		}
+
+		final int bitmap = bitA | bitB;
+		Object[] slots = index(bitmap, bitA) == 0 ?
+				new Object[] { a, b } : new Object[] { b, a };
+		return new Node(bitmap, slots);
+	}
+
+	/**
+	 * Returns the given node without the given key: a new Node, a single Leaf
+	 * if that's all that remains (so the caller can pull it up a level), or
+	 * null if nothing remains. The key must be present.
+	 */
+	private static Object without(Node node, int shift, int key) {
+		final int bit = bit(key, shift);
+		final int idx = index(node.bitmap, bit);
+		Object slot = node.slots[idx];
+		Object replacement = slot instanceof Leaf ? null :
+				without((Node) slot, shift + BITS, key);
+
+		if (replacement == null) {
+			if (node.slots.length == 1) {
+				return null;
+			}
+
+			if (node.slots.length == 2) {
+				Object other = node.slots[1 - idx];
+
+				if (other instanceof Leaf) {
+					return other;
+				}
+			}
+
+			Object[] slots = new Object[node.slots.length - 1];
+			System.arraycopy(node.slots, 0, slots, 0, idx);
+			System.arraycopy(node.slots, idx + 1, slots, idx, slots.length - idx);
+			return new Node(node.bitmap & ~bit, slots);
+		}
+
+		if (replacement instanceof Leaf && node.slots.length == 1) {
+			return replacement;
+		}
+
+		Object[] slots = node.slots.clone();
+		slots[idx] = replacement;
+		return new Node(node.bitmap, slots);
+	}
+
+	private static int bit(int key, int shift) {
+		return 1 << ((key >>> shift) & MASK);
+	}
+
+	private static int index(int bitmap, int bit) {
+		return Integer.bitCount(bitmap & (bit - 1));
+	}
+
+
+	private class ValuesView extends AbstractCollection<V> {
+		@Override
+		public Iterator<V> iterator() {
+			return new ValueIterator(root);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Walks the trie depth-first with an explicit stack; the trie is never
+	 * more than seven levels deep.
+	 */
+	private class ValueIterator implements Iterator<V> {
+		private final Node[] nodes = new Node[8];
+		private final int[] positions = new int[8];
+		private int depth;
+		private Leaf next;
+
+		private ValueIterator(Node root) {
+			nodes[0] = root;
+			advance();
+		}
+
+		private void advance() {
+			next = null;
+
+			while (depth >= 0) {
+				Node node = nodes[depth];
+				int pos = positions[depth];
+
+				if (pos == node.slots.length) {
+					depth--;
+					continue;
+				}
+
+				positions[depth] = pos + 1;
+				Object slot = node.slots[pos];
+
+				if (slot instanceof Leaf) {
+					next = (Leaf) slot;
+					return;
+				}
+
+				depth++;
+				nodes[depth] = (Node) slot;
+				positions[depth] = 0;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+
+			Object value = next.value;
+			advance();
+			return (V) value;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -1,11 +1,12 @@
 package net.dhleong.acl.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 import net.dhleong.acl.enums.ShipSystem;
@@ -15,6 +16,10 @@ import net.dhleong.acl.enums.ShipSystem;
  * by no means comprehensive--we don't keep track of pixel coordinates, for
  * example, just the "grid" coordinates--but is just enough so we can get the
  * Engineering console to be more complete.
+ *
+ * Grids are normally loaded from a ship's .snt file by {@link SntLoader}.
+ * Once loaded, a grid never changes, so one instance may be shared by any
+ * number of SystemManagers and threads.
  * @author dhleong
  */
 public class ShipSystemGrid {
@@ -36,8 +41,151 @@ public class ShipSystemGrid {
         }
     }
     
+    private static final ShipSystem[] SYSTEMS = ShipSystem.values();
+    private static final int[] NO_NEIGHBORS = new int[0];
+
     private final Map<GridCoord, GridEntry> mSystems = new HashMap<GridCoord, GridEntry>();
-    private final int[] mSystemCounts = new int[ShipSystem.values().length];
+    private final int[] mSystemCounts = new int[SYSTEMS.length];
+
+    // built by finish()
+    private final List<List<GridCoord>> mCoordsBySystem = new ArrayList<List<GridCoord>>(SYSTEMS.length);
+    private final int[][] mNeighbors = new int[GridCoord.GRID_SIZE][];
+    private final int[] mSlots = new int[GridCoord.GRID_SIZE]; // grid index -> row in mDistances
+    private int mNodeCount;
+    private short[] mDistances = new short[0]; // mNodeCount x mNodeCount, -1 if unreachable
+
+    public ShipSystemGrid() {
+        List<GridCoord> none = Collections.emptyList();
+
+        for (int i = 0; i < SYSTEMS.length; i++) {
+            mCoordsBySystem.add(none);
+        }
+
+        Arrays.fill(mNeighbors, NO_NEIGHBORS);
+        Arrays.fill(mSlots, -1);
+    }
+
+    /**
+     * Adds a node to the grid. Pass a null system for a hallway. Nodes must
+     * all be added before finish() is called.
+     */
+    void addNode(GridCoord coord, ShipSystem sys) {
+        int index = -1;
+
+        if (sys != null) {
+            index = mSystemCounts[sys.ordinal()]++;
+        }
+
+        mSystems.put(coord, new GridEntry(sys, index));
+    }
+
+    /**
+     * Precomputes the per-system coordinate lists and the adjacency of every
+     * node. A node's neighbors are the nodes directly beside it along one
+     * axis.
+     */
+    void finish() {
+        List<List<GridCoord>> coords = new ArrayList<List<GridCoord>>(SYSTEMS.length);
+
+        for (int i = 0; i < SYSTEMS.length; i++) {
+            coords.add(new ArrayList<GridCoord>(mSystemCounts[i]));
+        }
+
+        for (Map.Entry<GridCoord, GridEntry> e : mSystems.entrySet()) {
+            ShipSystem sys = e.getValue().system;
+
+            if (sys != null) {
+                coords.get(sys.ordinal()).add(e.getKey());
+            }
+        }
+
+        for (int i = 0; i < SYSTEMS.length; i++) {
+            List<GridCoord> list = coords.get(i);
+            Collections.sort(list);
+            mCoordsBySystem.set(i, Collections.unmodifiableList(list));
+        }
+
+        int[] scratch = new int[6];
+
+        for (int i = 0; i < GridCoord.GRID_SIZE; i++) {
+            GridCoord c = GridCoord.fromIndex(i);
+
+            if (!mSystems.containsKey(c)) {
+                mNeighbors[i] = NO_NEIGHBORS;
+                continue;
+            }
+
+            final int x = c.getX(), y = c.getY(), z = c.getZ();
+            int count = 0;
+            count = addNeighbor(scratch, count, x - 1, y, z);
+            count = addNeighbor(scratch, count, x + 1, y, z);
+            count = addNeighbor(scratch, count, x, y - 1, z);
+            count = addNeighbor(scratch, count, x, y + 1, z);
+            count = addNeighbor(scratch, count, x, y, z - 1);
+            count = addNeighbor(scratch, count, x, y, z + 1);
+            mNeighbors[i] = Arrays.copyOf(scratch, count);
+        }
+
+        computeDistances();
+    }
+
+    /**
+     * Finds the shortest path between every pair of nodes with a
+     * breadth-first search from each node. The grid has at most 250 nodes,
+     * so this takes well under a millisecond, and is only done once per
+     * hull.
+     */
+    private void computeDistances() {
+        int count = 0;
+
+        for (int i = 0; i < GridCoord.GRID_SIZE; i++) {
+            mSlots[i] = mSystems.containsKey(GridCoord.fromIndex(i)) ? count++ : -1;
+        }
+
+        final short[] distances = new short[count * count];
+        Arrays.fill(distances, (short) -1);
+        final int[] queue = new int[count];
+
+        for (int from = 0; from < GridCoord.GRID_SIZE; from++) {
+            final int row = mSlots[from];
+
+            if (row == -1) {
+                continue;
+            }
+
+            final int base = row * count;
+            int head = 0, tail = 0;
+            queue[tail++] = from;
+            distances[base + row] = 0;
+
+            while (head < tail) {
+                final int node = queue[head++];
+                final short next = (short) (distances[base + mSlots[node]] + 1);
+
+                for (int neighbor : mNeighbors[node]) {
+                    final int slot = base + mSlots[neighbor];
+
+                    if (distances[slot] == -1) {
+                        distances[slot] = next;
+                        queue[tail++] = neighbor;
+                    }
+                }
+            }
+        }
+
+        mNodeCount = count;
+        mDistances = distances;
+    }
+
+    private int addNeighbor(int[] dest, int count, int x, int y, int z) {
+        final int index = GridCoord.getIndex(x, y, z);
+
+        if (index != -1 && mSystems.containsKey(GridCoord.fromIndex(index))) {
+            dest[count++] = index;
+        }
+
+        return count;
+    }
 
     /**
      * Get the number of nodes we have of the given ShipSystem.
@@ -68,17 +216,44 @@ public class ShipSystemGrid {
     }
 
     /**
-     * Returns all GridCoord objects that pertain to the given ShipSystem.
+     * Returns all GridCoord objects that pertain to the given ShipSystem, as
+     * a read-only Collection.
      */
     public Collection<GridCoord> getCoordsFor(ShipSystem sys) {
-        List<GridCoord> coords = new ArrayList<GridCoord>(); 
+        return mCoordsBySystem.get(sys.ordinal());
+    }
 
-        for (Entry<GridCoord, GridEntry> e : mSystems.entrySet()) {
-            if (e.getValue().system == sys) {
-                coords.add(e.getKey());
-            }
+    /**
+     * Returns the number of nodes adjacent to the node with the given
+     * {@link GridCoord#getIndex() index}; that is, the nodes a DAMCON team
+     * can move to directly from it.
+     */
+    public int getNeighborCount(int index) {
+        return mNeighbors[index].length;
+    }
+
+    /**
+     * Returns the index of the n'th node adjacent to the node with the given
+     * index, where n is in [0, getNeighborCount(index)).
+     */
+    public int getNeighbor(int index, int n) {
+        return mNeighbors[index][n];
+    }
+
+    /**
+     * Returns the number of moves a DAMCON team needs to get from the node
+     * with the first index to the node with the second, or -1 if either node
+     * isn't in the grid or there is no path between them. This is a table
+     * lookup; the distances are computed when the grid is loaded.
+     */
+    public int getDistance(int fromIndex, int toIndex) {
+        final int from = mSlots[fromIndex];
+        final int to = mSlots[toIndex];
+
+        if (from == -1 || to == -1) {
+            return -1;
         }
 
-        return coords;
+        return mDistances[from * mNodeCount + to];
     }
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+package net.dhleong.acl.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.dhleong.acl.enums.ShipSystem;
+import net.dhleong.acl.vesseldata.Vessel;
+
+/**
+ * Reads the .snt files which describe the internal layout of player ships and
+ * builds ShipSystemGrids from them. An .snt file has one 32-byte record for
+ * each node in the grid, x-major and z-minor; each record holds the node's
+ * position in the ship model (three floats), its type (an int) and sixteen
+ * unused bytes, all little-endian. The type is a ShipSystem ordinal, or one
+ * of TYPE_HALLWAY or TYPE_EMPTY.
+ *
+ * Files are read through a memory map, and each SntLoader keeps the grids it
+ * has built, one per hull ID, so that every ship sharing a hull shares a
+ * single grid. SntLoader is safe to use from any thread.
+ */
+public class SntLoader {
+	public static final int NODE_BYTES = 32;
+	public static final int FILE_BYTES = GridCoord.GRID_SIZE * NODE_BYTES;
+
+	public static final int TYPE_HALLWAY = -1;
+	public static final int TYPE_EMPTY = -2;
+
+	private static final int TYPE_OFFSET = 12;
+	private static final ShipSystem[] SYSTEMS = ShipSystem.values();
+
+	private final File mInstallPath;
+	private final ConcurrentMap<Integer, ShipSystemGrid> mGrids =
+			new ConcurrentHashMap<Integer, ShipSystemGrid>();
+
+	/**
+	 * @param artemisInstallPath The directory where Artemis is installed;
+	 *  the paths in vesselData.xml are relative to it
+	 */
+	public SntLoader(File artemisInstallPath) {
+		mInstallPath = artemisInstallPath;
+	}
+
+	/**
+	 * Returns the grid for the given vessel's hull, reading its .snt file the
+	 * first time the hull is requested. Returns null if the vessel has no
+	 * internal layout.
+	 */
+	public ShipSystemGrid get(Vessel vessel) throws IOException {
+		Integer hullId = Integer.valueOf(vessel.getId());
+		ShipSystemGrid grid = mGrids.get(hullId);
+
+		if (grid != null) {
+			return grid;
+		}
+
+		String path = vessel.getInternalDataFile();
+
+		if (path == null) {
+			return null;
+		}
+
+		grid = load(new File(mInstallPath, path.replace('/', File.separatorChar)));
+		ShipSystemGrid existing = mGrids.putIfAbsent(hullId, grid);
+		return existing != null ? existing : grid;
+	}
+
+	/**
+	 * Forgets all the grids built so far, so that they are read again the
+	 * next time they are requested.
+	 */
+	public void clear() {
+		mGrids.clear();
+	}
+
+	/**
+	 * Reads the given .snt file.
+	 */
+	public static ShipSystemGrid load(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+
+		try {
+			FileChannel channel = in.getChannel();
+
+			if (channel.size() < FILE_BYTES) {
+				throw new IOException(file + " is too short to be an .snt file: " +
+						channel.size() + " bytes");
+			}
+
+			return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_BYTES));
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Builds a grid from .snt data, starting at the buffer's position. The
+	 * buffer's position and byte order are left unchanged.
+	 */
+	public static ShipSystemGrid parse(ByteBuffer buffer) throws IOException {
+		ByteBuffer buf = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+		if (buf.remaining() < FILE_BYTES) {
+			throw new IOException("Not enough data for an .snt file: " +
+					buf.remaining() + " bytes");
+		}
+
+		ShipSystemGrid grid = new ShipSystemGrid();
+		int offset = TYPE_OFFSET;
+
+		for (int x = 0; x < GridCoord.MAX_X; x++) {
+			for (int y = 0; y < GridCoord.MAX_Y; y++) {
+				for (int z = 0; z < GridCoord.MAX_Z; z++) {
+					int type = buf.getInt(offset);
+					offset += NODE_BYTES;
+
+					if (type == TYPE_EMPTY) {
+						continue;
+					}
+
+					if (type < TYPE_HALLWAY || type >= SYSTEMS.length) {
+						throw new IOException("Unknown node type " + type +
+								" at " + x + "," + y + "," + z);
+					}
+
+					grid.addNode(GridCoord.getInstance(x, y, z),
+							type == TYPE_HALLWAY ? null : SYSTEMS[type]);
+				}
+			}
+		}
+
+		grid.finish();
+		return grid;
+	}
+}
@@ -0,0 +1,153 @@
+package net.dhleong.acl.util;
+
+/**
+ * A bounded cache of Strings decoded from UTF-16LE byte data, such as the
+ * names of world objects. Decoding a String through a StringPool returns the
+ * identical String instance every time the same content is encountered (as
+ * long as it hasn't been evicted), so repeated names don't produce garbage and
+ * comparing them hits the identity fast path of String.equals().
+ *
+ * The pool is a direct-mapped table keyed by the content's hash code: a
+ * colliding String simply replaces the previous occupant of its slot, so the
+ * memory used by the pool never grows beyond its capacity. Strings longer than
+ * the configured maximum length (chat messages, for example) are decoded but
+ * never cached. A StringPool may be shared between threads without locking;
+ * the worst a race can cause is a cache miss.
+ */
+public class StringPool {
+	public static final int DEFAULT_CAPACITY = 1024;
+	public static final int DEFAULT_MAX_LENGTH = 64;
+
+	private final String[] table;
+	private final int mask;
+	private final int maxLength;
+
+	/**
+	 * Creates a StringPool with the default capacity and maximum String length.
+	 */
+	public StringPool() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * Creates a StringPool which can hold up to capacity Strings (rounded up
+	 * to the next power of two) of no more than maxLength characters each.
+	 */
+	public StringPool(int capacity, int maxLength) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+
+		int size = Integer.highestOneBit(capacity);
+
+		if (size < capacity) {
+			size <<= 1;
+		}
+
+		table = new String[size];
+		mask = size - 1;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Returns a String containing the charCount UTF-16LE characters found at
+	 * the indicated offset in the given byte array. If an equal String is
+	 * already in the pool, that instance is returned and nothing is allocated.
+	 */
+	public String get(byte[] bytes, int offset, int charCount) {
+		if (charCount == 0) {
+			return "";
+		}
+
+		if (charCount > maxLength) {
+			return decode(bytes, offset, charCount);
+		}
+
+		// same algorithm as String.hashCode(), so cached hashes can be reused
+		int hash = 0;
+		final int end = offset + charCount * 2;
+
+		for (int i = offset; i < end; i += 2) {
+			hash = 31 * hash + readChar(bytes, i);
+		}
+
+		final int index = (hash ^ (hash >>> 16)) & mask;
+		final String cached = table[index];
+
+		if (cached != null && cached.hashCode() == hash &&
+				matches(cached, bytes, offset, charCount)) {
+			return cached;
+		}
+
+		String str = decode(bytes, offset, charCount);
+		table[index] = str;
+		return str;
+	}
+
+	/**
+	 * Empties the pool.
+	 */
+	public void clear() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = null;
+		}
+	}
+
+	/**
+	 * Decodes charCount UTF-16LE characters found at the indicated offset in
+	 * the given byte array, without consulting any pool.
+	 */
+	public static String decode(byte[] bytes, int offset, int charCount) {
+		char[] chars = new char[charCount];
+
+		for (int i = 0; i < charCount; i++) {
+			chars[i] = readChar(bytes, offset + i * 2);
+		}
+
+		return new String(chars);
+	}
+
+	/**
+	 * Returns the number of UTF-16LE characters found at the indicated offset
+	 * in the given byte array before a null character is encountered, up to a
+	 * maximum of maxChars.
+	 */
+	public static int length(byte[] bytes, int offset, int maxChars) {
+		for (int i = 0; i < maxChars; i++) {
+			int o = offset + i * 2;
+
+			if (bytes[o] == 0 && bytes[o + 1] == 0) {
+				return i;
+			}
+		}
+
+		return maxChars;
+	}
+
+	/**
+	 * Reads a single UTF-16LE character from the indicated offset in the given
+	 * byte array.
+	 */
+	private static char readChar(byte[] bytes, int offset) {
+		return (char) (((0xff & bytes[offset + 1]) << 8) | (0xff & bytes[offset]));
+	}
+
+	/**
+	 * Returns true if the given String has exactly the content of the
+	 * indicated UTF-16LE byte range.
+	 */
+	private static boolean matches(String str, byte[] bytes, int offset,
+			int charCount) {
+		if (str.length() != charCount) {
+			return false;
+		}
+
+		for (int i = 0; i < charCount; i++) {
+			if (str.charAt(i) != readChar(bytes, offset + i * 2)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -17,9 +17,13 @@ public class Faction {
 	List<Taunt> taunts = new ArrayList<Taunt>(3);
 
 	Faction(int id, String name, String keys) {
+		this(id, name, FactionAttribute.build(keys));
+	}
+
+	Faction(int id, String name, Set<FactionAttribute> attributes) {
 		this.id = id;
 		this.name = name;
-		attributes = FactionAttribute.build(keys);
+		this.attributes = attributes;
 	}
 
 	public int getId() {
@@ -28,6 +28,7 @@ public class SAXVesselDataHandler extends DefaultHandler {
 		parsers.put("fleet_ai", new FleetAiParser());
 		parsers.put("hullRace", new HullRaceParser());
 		parsers.put("impulse_point", new ImpulsePointParser());
+		parsers.put("internal_data", new InternalDataParser());
 		parsers.put("long_desc", new LongDescParser());
 		parsers.put("maneuver_point", new ManeuverPointParser());
 		parsers.put("performance", new PerformanceParser());
@@ -153,6 +154,13 @@ public class SAXVesselDataHandler extends DefaultHandler {
 		}
 	}
 
+	private class InternalDataParser implements Parser {
+		@Override
+		public void parse(Attributes attrs) {
+			vessel.internalDataFile = attrs.getValue("file");
+		}
+	}
+
 	private class LongDescParser implements Parser {
 		@Override
 		public void parse(Attributes attrs) {
@@ -226,6 +234,7 @@ public class SAXVesselDataHandler extends DefaultHandler {
 		public void parse(Attributes attrs) {
 			Integer id = Integer.valueOf(attrs.getValue("uniqueID"));
 			vessel = new Vessel(
+					vesselData,
 					id.intValue(),
 					parseInt(attrs, "side"),
 					attrs.getValue("classname"),
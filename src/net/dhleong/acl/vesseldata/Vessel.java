@@ -1,6 +1,7 @@
 package net.dhleong.acl.vesseldata;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,6 +16,7 @@ import net.dhleong.acl.enums.VesselAttribute;
  * @author rjwut
  */
 public class Vessel {
+	private final VesselData vesselData;
 	private int id;
 	private int side;
 	private String name;
@@ -25,6 +27,7 @@ public class Vessel {
 	String glowFile;
 	String specularFile;
 	float scale;
+	String internalDataFile;
 	int pushRadius;
 	int foreShields;
 	int aftShields;
@@ -41,12 +44,21 @@ public class Vessel {
 	List<VesselPoint> enginePorts = new ArrayList<VesselPoint>();
 	List<VesselPoint> impulsePoints = new ArrayList<VesselPoint>();
 	List<VesselPoint> maneuverPoints = new ArrayList<VesselPoint>();
+	VesselTactics tactics;
 
-	Vessel(int uniqueID, int side, String className, String broadType) {
+	Vessel(VesselData vesselData, int uniqueID, int side, String className,
+			String broadType) {
+		this(vesselData, uniqueID, side, className, VesselAttribute.build(broadType));
+	}
+
+	Vessel(VesselData vesselData, int uniqueID, int side, String className,
+			Set<VesselAttribute> attributes) {
+		this.vesselData = vesselData;
 		id = uniqueID;
 		this.side = side;
 		name = className;
-		attributes = VesselAttribute.build(broadType);
+		this.attributes = attributes.isEmpty() ?
+				EnumSet.noneOf(VesselAttribute.class) : EnumSet.copyOf(attributes);
 
 		for (OrdnanceType type : OrdnanceType.values()) {
 			torpedoStorage.put(type, Integer.valueOf(0));
@@ -62,7 +74,14 @@ public class Vessel {
 	}
 
 	public Faction getFaction() {
-		return VesselData.get().getFaction(side);
+		return vesselData.getFaction(side);
+	}
+
+	/**
+	 * Returns the VesselData this vessel was loaded from.
+	 */
+	public VesselData getVesselData() {
+		return vesselData;
 	}
 
 	public String getName() {
@@ -97,6 +116,15 @@ public class Vessel {
 		return specularFile;
 	}
 
+	/**
+	 * Returns the path of this vessel's .snt file, relative to the Artemis
+	 * install directory, or null if it has no internal layout. Only player
+	 * ships have one.
+	 */
+	public String getInternalDataFile() {
+		return internalDataFile;
+	}
+
 	public float getScale() {
 		return scale;
 	}
@@ -137,6 +165,18 @@ public class Vessel {
 		return beamPorts.toArray(new BeamPort[beamPorts.size()]);
 	}
 
+	public int getBeamPortCount() {
+		return beamPorts.size();
+	}
+
+	/**
+	 * Returns the beam port with the given index, as given by
+	 * BeamFiredPacket.getBeamPortIndex(), or null if there is none.
+	 */
+	public BeamPort getBeamPort(int index) {
+		return index >= 0 && index < beamPorts.size() ? beamPorts.get(index) : null;
+	}
+
 	public VesselPoint[] getTorepedoTubes() {
 		return torpedoTubes.toArray(new VesselPoint[torpedoTubes.size()]);
 	}
@@ -149,6 +189,14 @@ public class Vessel {
 		return !torpedoTubes.isEmpty() && !torpedoStorage.isEmpty();
 	}
 
+	/**
+	 * Returns tactical figures derived from this vessel's weapon ports,
+	 * computed once when the vessel data was loaded.
+	 */
+	public VesselTactics getTactics() {
+		return tactics;
+	}
+
 	public VesselPoint[] getEnginePorts() {
 		return enginePorts.toArray(new VesselPoint[enginePorts.size()]);
 	}
@@ -5,6 +5,10 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,18 +20,76 @@ import javax.xml.parsers.SAXParserFactory;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
+import net.dhleong.acl.enums.VesselAttribute;
 import net.dhleong.acl.protocol.Version;
 
 /**
- * Contains all the information extracted from the vesselData.xml file.
+ * Contains all the information extracted from the vesselData.xml file. The
+ * static load() and get() methods manage a default instance, which is used
+ * wherever no other VesselData has been provided. A process that deals with
+ * several Artemis installs can read an instance for each with read(), or let
+ * a {@link VesselDataRegistry} manage them.
  * @author rjwut
  */
 public class VesselData {
-	private static VesselData instance;
+	private static volatile VesselData instance;
 
 	public static void load(File artemisInstallPath) throws VesselDataException {
-		File xml = new File(artemisInstallPath, "dat" + File.separatorChar + "vesselData.xml");
-		load(xml.toURI());
+		instance = read(artemisInstallPath, null);
+	}
+
+	/**
+	 * Loads the vesselData.xml file in the given Artemis install, using a
+	 * binary image of it kept in the given cache directory. The image is
+	 * rebuilt whenever the XML changes. Call this at startup, so that the
+	 * first vessel lookup doesn't have to wait for the XML to be parsed.
+	 */
+	public static void load(File artemisInstallPath, File cacheDir)
+			throws VesselDataException {
+		instance = read(artemisInstallPath, cacheDir);
+	}
+
+	/**
+	 * Reads the vesselData.xml file in the given Artemis install into a new
+	 * VesselData, without affecting the default instance. If cacheDir is not
+	 * null, a binary image is used as described in load(File, File).
+	 */
+	public static VesselData read(File artemisInstallPath, File cacheDir)
+			throws VesselDataException {
+		File xml = getXmlFile(artemisInstallPath);
+
+		if (cacheDir == null) {
+			return parse(xml.toURI());
+		}
+
+		File image = new File(cacheDir, VesselDataCompiler.IMAGE_NAME);
+		VesselData data = VesselDataCompiler.read(image, xml);
+
+		if (data == null) {
+			VesselDataCompiler.Stamp stamp = null;
+
+			try {
+				stamp = VesselDataCompiler.Stamp.of(xml);
+			} catch (IOException ex) {
+				// parse it anyway, but don't cache it
+			}
+
+			data = parse(xml.toURI());
+
+			try {
+				if (stamp != null) {
+					VesselDataCompiler.write(data, stamp, xml, image);
+				}
+			} catch (IOException ex) {
+				// the cache is only an optimization; parse again next time
+			}
+		}
+
+		return data;
+	}
+
+	static File getXmlFile(File artemisInstallPath) {
+		return new File(artemisInstallPath, "dat" + File.separatorChar + "vesselData.xml");
 	}
 
 	public static VesselData get() {
@@ -49,6 +111,10 @@ public class VesselData {
 	}
 
 	private static void load(URI uri) throws VesselDataException {
+		instance = parse(uri);
+	}
+
+	static VesselData parse(URI uri) throws VesselDataException {
 		try {
 			SAXParserFactory spf = SAXParserFactory.newInstance();
 			SAXParser saxParser = spf.newSAXParser();
@@ -56,7 +122,8 @@ public class VesselData {
 			SAXVesselDataHandler handler = new SAXVesselDataHandler();
 			xmlReader.setContentHandler(handler);
 			xmlReader.parse(uri.toString());
-			instance = handler.vesselData;
+			handler.vesselData.buildIndexes();
+			return handler.vesselData;
 		} catch (SAXException ex) {
 			throw new VesselDataException(ex);
 		} catch (ParserConfigurationException ex) {
@@ -66,10 +133,29 @@ public class VesselData {
 		}
 	}
 
+	/**
+	 * Vessel IDs below this are looked up in a dense array; higher ones, which
+	 * only odd mods would use, fall back to the map.
+	 */
+	private static final int MAX_DENSE_ID = 1 << 16;
+
+	private static final List<Vessel> NO_VESSELS = Collections.emptyList();
+
 	Version version;
 	List<Faction> factions = new ArrayList<Faction>();
 	Map<Integer, Vessel> vessels = new LinkedHashMap<Integer, Vessel>();
 
+	// built once by buildIndexes(), after which nothing changes
+	private Vessel[] byId = new Vessel[0];
+	private List<Vessel> all = NO_VESSELS;
+	private Map<String, List<Vessel>> byName = Collections.emptyMap();
+	private Map<VesselAttribute, List<Vessel>> byAttribute =
+			new EnumMap<VesselAttribute, List<Vessel>>(VesselAttribute.class);
+	private List<List<Vessel>> byFaction = Collections.emptyList();
+	private List<Map<VesselAttribute, List<Vessel>>> byFactionAttribute =
+			Collections.emptyList();
+	private Vessel[] fastestByFaction = new Vessel[0];
+
 	VesselData(String version) {
 		this.version = new Version(version);
 	}
@@ -83,6 +169,183 @@ public class VesselData {
 	}
 
 	public Vessel getVessel(int id) {
-		return vessels.get(Integer.valueOf(id));
+		if (id >= 0 && id < byId.length) {
+			return byId[id];
+		}
+
+		return id < MAX_DENSE_ID ? null : vessels.get(Integer.valueOf(id));
+	}
+
+	/**
+	 * Returns every faction, in order of ID; IDs which aren't used by any
+	 * faction hold null.
+	 */
+	public List<Faction> getFactions() {
+		return Collections.unmodifiableList(factions);
+	}
+
+	/**
+	 * Returns every vessel, in the order they appear in vesselData.xml.
+	 */
+	public List<Vessel> getVessels() {
+		return all;
+	}
+
+	/**
+	 * Returns the vessels with the given class name. Class names are only
+	 * unique within a faction; see getVessel(Faction, String).
+	 */
+	public List<Vessel> getVessels(String className) {
+		List<Vessel> list = byName.get(className);
+		return list != null ? list : NO_VESSELS;
+	}
+
+	/**
+	 * Returns the given faction's vessel with the given class name, or null
+	 * if there is none.
+	 */
+	public Vessel getVessel(Faction faction, String className) {
+		for (Vessel vessel : getVessels(className)) {
+			if (vessel.getSide() == faction.getId()) {
+				return vessel;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the vessels which have the given attribute.
+	 */
+	public List<Vessel> getVessels(VesselAttribute attribute) {
+		List<Vessel> list = byAttribute.get(attribute);
+		return list != null ? list : NO_VESSELS;
+	}
+
+	/**
+	 * Returns the vessels which belong to the given faction.
+	 */
+	public List<Vessel> getVessels(Faction faction) {
+		final int id = faction.getId();
+		return id >= 0 && id < byFaction.size() ? byFaction.get(id) : NO_VESSELS;
+	}
+
+	/**
+	 * Returns the vessels which belong to the given faction and have the
+	 * given attribute.
+	 */
+	public List<Vessel> getVessels(Faction faction, VesselAttribute attribute) {
+		final int id = faction.getId();
+
+		if (id < 0 || id >= byFactionAttribute.size()) {
+			return NO_VESSELS;
+		}
+
+		List<Vessel> list = byFactionAttribute.get(id).get(attribute);
+		return list != null ? list : NO_VESSELS;
+	}
+
+	/**
+	 * Returns the given faction's vessel with the highest top speed, or null
+	 * if the faction has no vessels.
+	 */
+	public Vessel getFastestVessel(Faction faction) {
+		final int id = faction.getId();
+		return id >= 0 && id < fastestByFaction.length ? fastestByFaction[id] : null;
+	}
+
+	/**
+	 * Builds the lookup tables used by the query methods. Called once the
+	 * factions and vessels have all been read; the VesselData must not be
+	 * modified afterwards. Every list handed out is unmodifiable and shared.
+	 */
+	void buildIndexes() {
+		int maxId = -1;
+
+		for (Vessel vessel : vessels.values()) {
+			if (vessel.getId() < MAX_DENSE_ID) {
+				maxId = Math.max(maxId, vessel.getId());
+			}
+		}
+
+		byId = new Vessel[maxId + 1];
+		Map<String, List<Vessel>> names = new HashMap<String, List<Vessel>>();
+		Map<VesselAttribute, List<Vessel>> attrs =
+				new EnumMap<VesselAttribute, List<Vessel>>(VesselAttribute.class);
+		final int factionCount = factions.size();
+		List<List<Vessel>> sides = new ArrayList<List<Vessel>>(factionCount);
+		List<Map<VesselAttribute, List<Vessel>>> sideAttrs =
+				new ArrayList<Map<VesselAttribute, List<Vessel>>>(factionCount);
+		fastestByFaction = new Vessel[factionCount];
+
+		for (int i = 0; i < factionCount; i++) {
+			sides.add(new ArrayList<Vessel>());
+			sideAttrs.add(new EnumMap<VesselAttribute, List<Vessel>>(VesselAttribute.class));
+		}
+
+		for (Vessel vessel : vessels.values()) {
+			final int id = vessel.getId();
+			vessel.tactics = new VesselTactics(vessel);
+
+			if (id >= 0 && id < byId.length) {
+				byId[id] = vessel;
+			}
+
+			add(names, vessel.getName(), vessel);
+			final int side = vessel.getSide();
+			final boolean hasFaction = side >= 0 && side < factionCount;
+
+			for (VesselAttribute attr : vessel.getAttributes()) {
+				add(attrs, attr, vessel);
+
+				if (hasFaction) {
+					add(sideAttrs.get(side), attr, vessel);
+				}
+			}
+
+			if (hasFaction) {
+				sides.get(side).add(vessel);
+				Vessel fastest = fastestByFaction[side];
+
+				if (fastest == null || vessel.getTopSpeed() > fastest.getTopSpeed()) {
+					fastestByFaction[side] = vessel;
+				}
+			}
+		}
+
+		all = freeze(new ArrayList<Vessel>(vessels.values()));
+		freezeAll(names);
+		freezeAll(attrs);
+
+		for (int i = 0; i < factionCount; i++) {
+			sides.set(i, freeze(sides.get(i)));
+			freezeAll(sideAttrs.get(i));
+		}
+
+		byName = names;
+		byAttribute = attrs;
+		byFaction = sides;
+		byFactionAttribute = sideAttrs;
+	}
+
+	private static <K> void add(Map<K, List<Vessel>> map, K key, Vessel vessel) {
+		List<Vessel> list = map.get(key);
+
+		if (list == null) {
+			list = new ArrayList<Vessel>();
+			map.put(key, list);
+		}
+
+		list.add(vessel);
+	}
+
+	private static <K> void freezeAll(Map<K, List<Vessel>> map) {
+		for (Map.Entry<K, List<Vessel>> entry : map.entrySet()) {
+			entry.setValue(freeze(entry.getValue()));
+		}
+	}
+
+	private static List<Vessel> freeze(List<Vessel> list) {
+		return Collections.unmodifiableList(Arrays.asList(list.toArray(new Vessel[list.size()])));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,468 @@
+package net.dhleong.acl.vesseldata;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import net.dhleong.acl.enums.FactionAttribute;
+import net.dhleong.acl.enums.OrdnanceType;
+import net.dhleong.acl.enums.VesselAttribute;
+
+/**
+ * Compiles vesselData.xml into a compact binary image, which loads many times
+ * faster than the XML can be parsed. An image records the size, modification
+ * time and CRC-32 of the XML it was compiled from, taken before the XML was
+ * parsed, and is only used while the XML's size and CRC-32 still match. The
+ * XML is checksummed on every load, which costs far less than parsing it, so
+ * an edit is caught even if it keeps the file's size and modification time,
+ * while a file that was merely touched doesn't force a recompile. Images are
+ * read through a memory map. Use {@link VesselData#load(File, File)} rather than this class
+ * to load vessel data with an image cache.
+ */
+public class VesselDataCompiler {
+	/**
+	 * The name of the image file that VesselData.load(File, File) keeps in
+	 * the cache directory.
+	 */
+	public static final String IMAGE_NAME = "vesselData.bin";
+
+	private static final int MAGIC = 0x41434c56; // "ACLV"
+	private static final int FORMAT = 1;
+	private static final String UTF8 = "UTF-8";
+
+	/**
+	 * Parses the given vesselData.xml file and writes its image to the given
+	 * file.
+	 */
+	public static void compile(File xml, File image) throws VesselDataException {
+		try {
+			Stamp stamp = Stamp.of(xml);
+			write(VesselData.parse(xml.toURI()), stamp, xml, image);
+		} catch (IOException ex) {
+			throw new VesselDataException(ex);
+		}
+	}
+
+	/**
+	 * The size, modification time and CRC-32 of an XML file at one moment.
+	 */
+	static final class Stamp {
+		private final long modified;
+		private final long length;
+		private final long crc;
+
+		private Stamp(long modified, long length, long crc) {
+			this.modified = modified;
+			this.length = length;
+			this.crc = crc;
+		}
+
+		/**
+		 * Stamps the given file as it is now.
+		 * @throws IOException if the file can't be read, or changes while
+		 *  it is being checksummed
+		 */
+		static Stamp of(File xml) throws IOException {
+			final long modified = xml.lastModified();
+			final long length = xml.length();
+			final long crc = checksum(xml);
+
+			if (modified != xml.lastModified() || length != xml.length()) {
+				throw new IOException(xml + " changed while it was being read");
+			}
+
+			return new Stamp(modified, length, crc);
+		}
+
+		private boolean matches(Stamp other) {
+			return modified == other.modified && length == other.length && crc == other.crc;
+		}
+	}
+
+	/**
+	 * Writes an image of the given VesselData, which was parsed from the
+	 * given XML file after the given stamp was taken. The image is written
+	 * to a temporary file which then replaces the old image, so readers
+	 * never see a partial image.
+	 * @throws IOException if the image can't be written, or the XML no
+	 *  longer matches the stamp, in which case the data may be out of date
+	 *  and no image is written
+	 */
+	static void write(VesselData data, Stamp stamp, File xml, File image)
+			throws IOException {
+		File dir = image.getAbsoluteFile().getParentFile();
+
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create " + dir);
+		}
+
+		File tmp = File.createTempFile("vesselData", ".tmp", dir);
+
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp)));
+
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT);
+				out.writeLong(stamp.modified);
+				out.writeLong(stamp.length);
+				out.writeLong(stamp.crc);
+				writeBody(out, data);
+			} finally {
+				out.close();
+			}
+
+			if (!stamp.matches(Stamp.of(xml))) {
+				throw new IOException(xml + " changed while it was being compiled");
+			}
+
+			if (!tmp.renameTo(image)) {
+				// Windows won't rename over an existing file
+				image.delete();
+
+				if (!tmp.renameTo(image)) {
+					throw new IOException("Can't replace " + image);
+				}
+			}
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Reads the given image, if it exists and was compiled from the current
+	 * contents of the given XML file.
+	 * @return The VesselData, or null if the image is missing, out of date
+	 *  or unreadable, in which case the XML should be parsed instead
+	 */
+	static VesselData read(File image, File xml) {
+		if (!image.isFile() || !xml.isFile()) {
+			return null;
+		}
+
+		try {
+			FileInputStream in = new FileInputStream(image);
+
+			try {
+				FileChannel channel = in.getChannel();
+				ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+				if (buf.getInt() != MAGIC || buf.getInt() != FORMAT) {
+					return null;
+				}
+
+				buf.getLong(); // modification time; informational only
+				final long length = buf.getLong();
+				final long crc = buf.getLong();
+
+				if (length != xml.length() || crc != checksum(xml)) {
+					return null;
+				}
+
+				return readBody(buf);
+			} finally {
+				in.close();
+			}
+		} catch (IOException ex) {
+			return null;
+		} catch (RuntimeException ex) {
+			return null; // truncated or corrupt
+		}
+	}
+
+	private static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		FileInputStream in = new FileInputStream(file);
+
+		try {
+			byte[] chunk = new byte[8192];
+			int read;
+
+			while ((read = in.read(chunk)) != -1) {
+				crc.update(chunk, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+
+		return crc.getValue();
+	}
+
+	private static void writeBody(DataOutputStream out, VesselData data)
+			throws IOException {
+		writeString(out, data.version.toString());
+		out.writeInt(data.factions.size());
+
+		for (Faction faction : data.factions) {
+			out.writeBoolean(faction != null);
+
+			if (faction == null) {
+				continue;
+			}
+
+			int attrs = 0;
+
+			for (FactionAttribute attr : FactionAttribute.values()) {
+				if (faction.is(attr)) {
+					attrs |= 1 << attr.ordinal();
+				}
+			}
+
+			out.writeInt(faction.getId());
+			writeString(out, faction.getName());
+			out.writeInt(attrs);
+			out.writeInt(faction.taunts.size());
+
+			for (Taunt taunt : faction.taunts) {
+				writeString(out, taunt.getImmunity());
+				writeString(out, taunt.getText());
+			}
+		}
+
+		out.writeInt(data.vessels.size());
+
+		for (Vessel vessel : data.vessels.values()) {
+			int attrs = 0;
+
+			for (VesselAttribute attr : VesselAttribute.values()) {
+				if (vessel.is(attr)) {
+					attrs |= 1 << attr.ordinal();
+				}
+			}
+
+			out.writeInt(vessel.getId());
+			out.writeInt(vessel.getSide());
+			writeString(out, vessel.getName());
+			out.writeInt(attrs);
+			writeString(out, vessel.description);
+			writeString(out, vessel.meshFile);
+			writeString(out, vessel.diffuseFile);
+			writeString(out, vessel.glowFile);
+			writeString(out, vessel.specularFile);
+			out.writeFloat(vessel.scale);
+			writeString(out, vessel.internalDataFile);
+			out.writeInt(vessel.pushRadius);
+			out.writeInt(vessel.foreShields);
+			out.writeInt(vessel.aftShields);
+			out.writeFloat(vessel.turnRate);
+			out.writeFloat(vessel.topSpeed);
+			out.writeFloat(vessel.efficiency);
+			out.writeInt(vessel.fleetAiCommonality);
+			out.writeInt(vessel.fighterCount);
+			out.writeFloat(vessel.production);
+
+			out.writeInt(vessel.beamPorts.size());
+
+			for (BeamPort port : vessel.beamPorts) {
+				writeWeaponPort(out, port);
+				out.writeFloat(port.arcWidth);
+			}
+
+			writePoints(out, vessel.torpedoTubes);
+			out.writeInt(vessel.torpedoStorage.size());
+
+			for (Map.Entry<OrdnanceType, Integer> entry : vessel.torpedoStorage.entrySet()) {
+				out.writeInt(entry.getKey().ordinal());
+				out.writeInt(entry.getValue().intValue());
+			}
+
+			out.writeInt(vessel.dronePorts.size());
+
+			for (WeaponPort port : vessel.dronePorts) {
+				writeWeaponPort(out, port);
+			}
+
+			writePoints(out, vessel.enginePorts);
+			writePoints(out, vessel.impulsePoints);
+			writePoints(out, vessel.maneuverPoints);
+		}
+	}
+
+	private static VesselData readBody(ByteBuffer buf) throws IOException {
+		VesselData data = new VesselData(readString(buf));
+		final FactionAttribute[] factionAttrs = FactionAttribute.values();
+		final VesselAttribute[] vesselAttrs = VesselAttribute.values();
+		final OrdnanceType[] ordnance = OrdnanceType.values();
+		final int factionCount = buf.getInt();
+
+		for (int i = 0; i < factionCount; i++) {
+			if (buf.get() == 0) {
+				data.factions.add(null);
+				continue;
+			}
+
+			final int id = buf.getInt();
+			final String name = readString(buf);
+			final int attrs = buf.getInt();
+			Set<FactionAttribute> set = EnumSet.noneOf(FactionAttribute.class);
+
+			for (FactionAttribute attr : factionAttrs) {
+				if ((attrs & (1 << attr.ordinal())) != 0) {
+					set.add(attr);
+				}
+			}
+
+			Faction faction = new Faction(id, name, set);
+			final int tauntCount = buf.getInt();
+
+			for (int j = 0; j < tauntCount; j++) {
+				faction.taunts.add(new Taunt(readString(buf), readString(buf)));
+			}
+
+			data.factions.add(faction);
+		}
+
+		final int vesselCount = buf.getInt();
+
+		for (int i = 0; i < vesselCount; i++) {
+			final int id = buf.getInt();
+			final int side = buf.getInt();
+			final String name = readString(buf);
+			final int attrs = buf.getInt();
+			Set<VesselAttribute> set = EnumSet.noneOf(VesselAttribute.class);
+
+			for (VesselAttribute attr : vesselAttrs) {
+				if ((attrs & (1 << attr.ordinal())) != 0) {
+					set.add(attr);
+				}
+			}
+
+			Vessel vessel = new Vessel(data, id, side, name, set);
+			vessel.description = readString(buf);
+			vessel.meshFile = readString(buf);
+			vessel.diffuseFile = readString(buf);
+			vessel.glowFile = readString(buf);
+			vessel.specularFile = readString(buf);
+			vessel.scale = buf.getFloat();
+			vessel.internalDataFile = readString(buf);
+			vessel.pushRadius = buf.getInt();
+			vessel.foreShields = buf.getInt();
+			vessel.aftShields = buf.getInt();
+			vessel.turnRate = buf.getFloat();
+			vessel.topSpeed = buf.getFloat();
+			vessel.efficiency = buf.getFloat();
+			vessel.fleetAiCommonality = buf.getInt();
+			vessel.fighterCount = buf.getInt();
+			vessel.production = buf.getFloat();
+
+			final int beamCount = buf.getInt();
+
+			for (int j = 0; j < beamCount; j++) {
+				BeamPort port = new BeamPort();
+				readWeaponPort(buf, port);
+				port.arcWidth = buf.getFloat();
+				vessel.beamPorts.add(port);
+			}
+
+			readPoints(buf, vessel.torpedoTubes);
+			final int storageCount = buf.getInt();
+
+			for (int j = 0; j < storageCount; j++) {
+				OrdnanceType type = ordnance[buf.getInt()];
+				vessel.torpedoStorage.put(type, Integer.valueOf(buf.getInt()));
+			}
+
+			final int droneCount = buf.getInt();
+
+			for (int j = 0; j < droneCount; j++) {
+				WeaponPort port = new WeaponPort();
+				readWeaponPort(buf, port);
+				vessel.dronePorts.add(port);
+			}
+
+			readPoints(buf, vessel.enginePorts);
+			readPoints(buf, vessel.impulsePoints);
+			readPoints(buf, vessel.maneuverPoints);
+			data.vessels.put(Integer.valueOf(id), vessel);
+		}
+
+		data.buildIndexes();
+		return data;
+	}
+
+	private static void writePoints(DataOutputStream out, List<VesselPoint> points)
+			throws IOException {
+		out.writeInt(points.size());
+
+		for (VesselPoint point : points) {
+			writePoint(out, point);
+		}
+	}
+
+	private static void writePoint(DataOutputStream out, VesselPoint point)
+			throws IOException {
+		out.writeFloat(point.x);
+		out.writeFloat(point.y);
+		out.writeFloat(point.z);
+	}
+
+	private static void writeWeaponPort(DataOutputStream out, WeaponPort port)
+			throws IOException {
+		writePoint(out, port);
+		out.writeFloat(port.damage);
+		out.writeFloat(port.cycleTime);
+		out.writeInt(port.range);
+	}
+
+	private static void readPoints(ByteBuffer buf, List<VesselPoint> points) {
+		final int count = buf.getInt();
+
+		for (int i = 0; i < count; i++) {
+			VesselPoint point = new VesselPoint();
+			readPoint(buf, point);
+			points.add(point);
+		}
+	}
+
+	private static void readPoint(ByteBuffer buf, VesselPoint point) {
+		point.x = buf.getFloat();
+		point.y = buf.getFloat();
+		point.z = buf.getFloat();
+	}
+
+	private static void readWeaponPort(ByteBuffer buf, WeaponPort port) {
+		readPoint(buf, port);
+		port.damage = buf.getFloat();
+		port.cycleTime = buf.getFloat();
+		port.range = buf.getInt();
+	}
+
+	private static void writeString(DataOutputStream out, String str)
+			throws IOException {
+		if (str == null) {
+			out.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = str.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buf) throws IOException {
+		final int length = buf.getInt();
+
+		if (length == -1) {
+			return null;
+		}
+
+		if (length < 0 || length > buf.remaining()) {
+			throw new IOException("Invalid string length: " + length);
+		}
+
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}
@@ -0,0 +1,48 @@
+package net.dhleong.acl.vesseldata;
+
+/**
+ * A replaceable reference to a VesselData. Each PacketReader owns one and
+ * hands it to the objects it reads, so that when its VesselData is replaced
+ * (for example by a VesselDataRegistry reload), the objects already received
+ * look up their vessels in the new data too.
+ */
+public class VesselDataHolder {
+	private volatile VesselData vesselData;
+
+	/**
+	 * Creates a holder for the default VesselData.
+	 */
+	public VesselDataHolder() {
+	}
+
+	/**
+	 * Creates a holder for the given VesselData; null means the default.
+	 */
+	public VesselDataHolder(VesselData vesselData) {
+		this.vesselData = vesselData;
+	}
+
+	/**
+	 * Returns the VesselData set on this holder, or null if none has been
+	 * set.
+	 */
+	public VesselData get() {
+		return vesselData;
+	}
+
+	/**
+	 * Replaces the held VesselData; null means the default.
+	 */
+	public void set(VesselData vesselData) {
+		this.vesselData = vesselData;
+	}
+
+	/**
+	 * Returns the held VesselData, or the default VesselData if none has
+	 * been set.
+	 */
+	public VesselData resolve() {
+		VesselData data = vesselData;
+		return data != null ? data : VesselData.get();
+	}
+}
@@ -0,0 +1,300 @@
+package net.dhleong.acl.vesseldata;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.dhleong.acl.iface.ArtemisNetworkInterface;
+import net.dhleong.acl.protocol.Version;
+
+/**
+ * Keeps a VesselData for each of any number of Artemis installs, so that one
+ * process can serve games running different versions or mods. Each install's
+ * data is loaded the first time it's requested, and can be bound to network
+ * interfaces, whose objects will then look up their vessels in it.
+ *
+ * Call startWatching() to have the registry check for modified
+ * vesselData.xml files in the background. A modified file is loaded in the
+ * background thread, then swapped in with a single write, so that readers
+ * see either the old data or the new, never a mix; bound interfaces are
+ * updated, along with the objects they have already received, and any
+ * OnReloadListeners are notified. A file that fails to load
+ * (for example because it is still being saved) is ignored until the next
+ * check, and the old data stays in use.
+ */
+public class VesselDataRegistry {
+	public interface OnReloadListener {
+		void onReload(File installPath, VesselData vesselData);
+	}
+
+	private static class Entry {
+		private final File installPath;
+		private final File xml;
+		private final File cacheDir;
+		private volatile VesselData data;
+		private long modified;
+		private long length;
+
+		// guarded by itself
+		private final Set<ArtemisNetworkInterface> bound =
+				Collections.newSetFromMap(new WeakHashMap<ArtemisNetworkInterface, Boolean>());
+
+		private Entry(File installPath, File cacheDir) {
+			this.installPath = installPath;
+			this.cacheDir = cacheDir;
+			xml = VesselData.getXmlFile(installPath);
+		}
+
+		/**
+		 * Loads the XML, unless it's unchanged since the last load and force
+		 * is false. Only called while holding the registry's load lock.
+		 * @return true if new data was loaded
+		 */
+		private boolean load(boolean force) throws VesselDataException {
+			final long newModified = xml.lastModified();
+			final long newLength = xml.length();
+
+			if (!force && data != null && newModified == modified && newLength == length) {
+				return false;
+			}
+
+			VesselData loaded = VesselData.read(installPath, cacheDir);
+			modified = newModified;
+			length = newLength;
+			data = loaded;
+
+			List<ArtemisNetworkInterface> ifaces;
+
+			synchronized (bound) {
+				ifaces = new ArrayList<ArtemisNetworkInterface>(bound);
+			}
+
+			for (ArtemisNetworkInterface iface : ifaces) {
+				iface.setVesselData(loaded);
+			}
+
+			return true;
+		}
+	}
+
+	private final File mCacheDir;
+	private final ConcurrentMap<File, Entry> mEntries = new ConcurrentHashMap<File, Entry>();
+	private final List<OnReloadListener> mListeners = new CopyOnWriteArrayList<OnReloadListener>();
+	private final Object mLoadLock = new Object();
+	private Thread mWatcher; // guarded by this
+
+	public VesselDataRegistry() {
+		this(null);
+	}
+
+	/**
+	 * @param cacheDir The directory in which to keep binary images of each
+	 *  install's vesselData.xml, or null to always parse the XML
+	 */
+	public VesselDataRegistry(File cacheDir) {
+		mCacheDir = cacheDir;
+	}
+
+	/**
+	 * Returns the VesselData for the given Artemis install, loading it if
+	 * necessary. The returned object is never modified; a reload replaces it
+	 * with a new one, so call this again to get the latest data.
+	 */
+	public VesselData get(File installPath) throws VesselDataException {
+		Entry entry = getEntry(installPath);
+		VesselData data = entry.data;
+
+		if (data != null) {
+			return data;
+		}
+
+		synchronized (mLoadLock) {
+			entry.load(false);
+			return entry.data;
+		}
+	}
+
+	/**
+	 * Returns the VesselData, among those already loaded, that best suits a
+	 * game of the given version: the newest one whose version is not newer
+	 * than the game's. Returns null if there is none.
+	 */
+	public VesselData get(Version version) {
+		VesselData best = null;
+
+		for (Entry entry : mEntries.values()) {
+			VesselData data = entry.data;
+
+			if (data == null || data.getVersion().gt(version)) {
+				continue;
+			}
+
+			if (best == null || data.getVersion().gt(best.getVersion())) {
+				best = data;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * Makes the given network interface use the VesselData for the given
+	 * Artemis install, now and after every reload.
+	 */
+	public void bind(ArtemisNetworkInterface iface, File installPath)
+			throws VesselDataException {
+		Entry entry = getEntry(installPath);
+
+		synchronized (mLoadLock) {
+			if (entry.data == null) {
+				entry.load(false);
+			}
+
+			synchronized (entry.bound) {
+				entry.bound.add(iface);
+			}
+
+			iface.setVesselData(entry.data);
+		}
+	}
+
+	/**
+	 * Stops updating the given network interface on reloads.
+	 */
+	public void unbind(ArtemisNetworkInterface iface) {
+		for (Entry entry : mEntries.values()) {
+			synchronized (entry.bound) {
+				entry.bound.remove(iface);
+			}
+		}
+	}
+
+	public void addOnReloadListener(OnReloadListener listener) {
+		mListeners.add(listener);
+	}
+
+	public void removeOnReloadListener(OnReloadListener listener) {
+		mListeners.remove(listener);
+	}
+
+	/**
+	 * Loads the given install's vesselData.xml again, whether or not it has
+	 * changed.
+	 */
+	public VesselData reload(File installPath) throws VesselDataException {
+		Entry entry = getEntry(installPath);
+		VesselData data;
+
+		synchronized (mLoadLock) {
+			entry.load(true);
+			data = entry.data;
+		}
+
+		fireReload(entry.installPath, data);
+		return data;
+	}
+
+	/**
+	 * Reloads every install whose vesselData.xml has changed since it was
+	 * last loaded. This is what the watcher thread calls.
+	 * @return The number of installs reloaded
+	 */
+	public int checkForChanges() {
+		int count = 0;
+
+		for (Entry entry : mEntries.values()) {
+			VesselData data;
+
+			synchronized (mLoadLock) {
+				try {
+					if (entry.data == null || !entry.load(false)) {
+						continue;
+					}
+				} catch (VesselDataException ex) {
+					continue; // keep the old data; try again next time
+				}
+
+				data = entry.data;
+			}
+
+			fireReload(entry.installPath, data);
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Starts a daemon thread which calls checkForChanges() every intervalMs
+	 * milliseconds, replacing any watcher already running.
+	 */
+	public synchronized void startWatching(final long intervalMs) {
+		if (intervalMs <= 0) {
+			throw new IllegalArgumentException("Invalid interval: " + intervalMs);
+		}
+
+		stopWatching();
+		mWatcher = new Thread("VesselDataRegistry") {
+			@Override
+			public void run() {
+				while (!isInterrupted()) {
+					try {
+						Thread.sleep(intervalMs);
+					} catch (InterruptedException ex) {
+						return;
+					}
+
+					checkForChanges();
+				}
+			}
+		};
+		mWatcher.setDaemon(true);
+		mWatcher.start();
+	}
+
+	public synchronized void stopWatching() {
+		if (mWatcher != null) {
+			mWatcher.interrupt();
+			mWatcher = null;
+		}
+	}
+
+	private Entry getEntry(File installPath) {
+		File key;
+
+		try {
+			key = installPath.getCanonicalFile();
+		} catch (IOException ex) {
+			key = installPath.getAbsoluteFile();
+		}
+
+		Entry entry = mEntries.get(key);
+
+		if (entry == null) {
+			// installs sharing one cache directory each get their own image
+			File cacheDir = mCacheDir == null ? null :
+					new File(mCacheDir, Integer.toHexString(key.getPath().hashCode()));
+			entry = new Entry(key, cacheDir);
+			Entry existing = mEntries.putIfAbsent(key, entry);
+
+			if (existing != null) {
+				entry = existing;
+			}
+		}
+
+		return entry;
+	}
+
+	private void fireReload(File installPath, VesselData data) {
+		for (OnReloadListener listener : mListeners) {
+			listener.onReload(installPath, data);
+		}
+	}
+}
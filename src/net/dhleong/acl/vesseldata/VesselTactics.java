@@ -0,0 +1,163 @@
+package net.dhleong.acl.vesseldata;
+
+import net.dhleong.acl.enums.OrdnanceType;
+
+/**
+ * Tactical figures derived from a vessel's weapon ports, computed once when
+ * the vessel data is loaded so that they can be looked up cheaply for every
+ * ship on every tick. Get one from {@link Vessel#getTactics()}.
+ *
+ * Bearings are in radians, relative to the vessel's bow, and measured the
+ * same way as atan2(x, z) in the vessel's model coordinates (where +z is
+ * forward). For a ship with heading h, a target that is dx, dz away in world
+ * coordinates is therefore at bearing atan2(dx, dz) - h. Each beam port is
+ * assumed to face directly away from the center of the model, and its arc
+ * width to be a fraction of a full circle.
+ */
+public class VesselTactics {
+	/**
+	 * The number of buckets in the bearing tables; one per degree.
+	 */
+	public static final int BEARINGS = 360;
+
+	private static final double TWO_PI = 2 * Math.PI;
+
+	private final float beamDps;
+	private final float[] dpsByBearing = new float[BEARINGS];
+	private final int[] rangeByBearing = new int[BEARINGS];
+	private final int beamRange;
+	private final int maxRange;
+	private final int tubeCount;
+	private final int torpedoCapacity;
+	private final int[] torpedoCapacityByType = new int[OrdnanceType.COUNT];
+
+	VesselTactics(Vessel vessel) {
+		float dps = 0;
+		int range = 0;
+
+		for (BeamPort port : vessel.beamPorts) {
+			final float portDps = port.cycleTime > 0 ? port.damage / port.cycleTime : 0;
+			dps += portDps;
+			range = Math.max(range, port.range);
+
+			final double center = Math.atan2(port.x, port.z);
+			final double halfArc = port.arcWidth * Math.PI;
+
+			for (int i = 0; i < BEARINGS; i++) {
+				// the middle of the bucket
+				final double bearing = (i + 0.5) * TWO_PI / BEARINGS;
+
+				if (angleBetween(bearing, center) <= halfArc) {
+					dpsByBearing[i] += portDps;
+					rangeByBearing[i] = Math.max(rangeByBearing[i], port.range);
+				}
+			}
+		}
+
+		beamDps = dps;
+		beamRange = range;
+
+		for (WeaponPort port : vessel.dronePorts) {
+			range = Math.max(range, port.range);
+		}
+
+		maxRange = range;
+		tubeCount = vessel.torpedoTubes.size();
+		int capacity = 0;
+
+		for (OrdnanceType type : OrdnanceType.values()) {
+			Integer count = vessel.torpedoStorage.get(type);
+			final int n = count != null ? count.intValue() : 0;
+			torpedoCapacityByType[type.ordinal()] = n;
+			capacity += n;
+		}
+
+		torpedoCapacity = capacity;
+	}
+
+	/**
+	 * Returns the damage per second of all beams firing continuously.
+	 */
+	public float getBeamDps() {
+		return beamDps;
+	}
+
+	/**
+	 * Returns the damage per second of the beams which can fire at the given
+	 * bearing; 0 if none can.
+	 */
+	public float getBeamDps(float bearing) {
+		return dpsByBearing[toIndex(bearing)];
+	}
+
+	/**
+	 * Returns the longest beam range at the given bearing; 0 if no beam can
+	 * fire that way.
+	 */
+	public int getBeamRange(float bearing) {
+		return rangeByBearing[toIndex(bearing)];
+	}
+
+	/**
+	 * Returns the beam damage per second that a target at the given bearing
+	 * and distance would take; 0 if it's out of every beam's arc or range.
+	 * This is only a couple of array reads, so it's cheap enough to call for
+	 * every pair of ships on every tick.
+	 */
+	public float getBeamDps(float bearing, float distance) {
+		final int i = toIndex(bearing);
+		return distance <= rangeByBearing[i] ? dpsByBearing[i] : 0;
+	}
+
+	/**
+	 * Returns true if any beam can fire at the given bearing.
+	 */
+	public boolean isCovered(float bearing) {
+		return rangeByBearing[toIndex(bearing)] > 0;
+	}
+
+	/**
+	 * Returns the longest range of any beam.
+	 */
+	public int getBeamRange() {
+		return beamRange;
+	}
+
+	/**
+	 * Returns the longest range of any beam or drone port; the distance
+	 * inside which this vessel can engage a target with something other
+	 * than torpedoes.
+	 */
+	public int getMaxRange() {
+		return maxRange;
+	}
+
+	public int getTorpedoTubeCount() {
+		return tubeCount;
+	}
+
+	/**
+	 * Returns the number of torpedoes of all types that this vessel carries
+	 * when fully stocked.
+	 */
+	public int getTorpedoCapacity() {
+		return torpedoCapacity;
+	}
+
+	public int getTorpedoCapacity(OrdnanceType type) {
+		return torpedoCapacityByType[type.ordinal()];
+	}
+
+	/**
+	 * Converts a bearing in radians to its index in the bearing tables.
+	 */
+	private static int toIndex(float bearing) {
+		int i = (int) Math.floor(bearing * (BEARINGS / TWO_PI)) % BEARINGS;
+		return i < 0 ? i + BEARINGS : i;
+	}
+
+	private static double angleBetween(double a, double b) {
+		double d = Math.abs(a - b) % TWO_PI;
+		return d > Math.PI ? TWO_PI - d : d;
+	}
+}
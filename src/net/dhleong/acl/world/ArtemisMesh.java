@@ -138,6 +138,19 @@ public class ArtemisMesh extends BaseArtemisObject {
         super.updateFrom(other);
         
         ArtemisMesh m = (ArtemisMesh) other;
+        if (m.mMesh != null) {
+            mMesh = m.mMesh;
+        }
+
+        if (m.mTex != null) {
+            mTex = m.mTex;
+        }
+
+        if (m.hasColor) {
+            mColor = m.mColor;
+            hasColor = true;
+        }
+
         if (m.mShieldsFront != Float.MIN_VALUE) {
             mShieldsFront = m.mShieldsFront;
         }
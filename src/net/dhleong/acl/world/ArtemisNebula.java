@@ -69,4 +69,18 @@ public class ArtemisNebula extends BaseArtemisObject {
             (int)(255 * b)
         );
     }
-}
\ No newline at end of file
+
+    @Override
+    public void updateFrom(ArtemisObject other) {
+        super.updateFrom(other);
+
+        if (other instanceof ArtemisNebula) {
+            ArtemisNebula nebula = (ArtemisNebula) other;
+
+            if (nebula.hasColor) {
+                mColor = nebula.mColor;
+                hasColor = true;
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.util.SortedMap;
 
 import net.dhleong.acl.vesseldata.Vessel;
 import net.dhleong.acl.vesseldata.VesselData;
+import net.dhleong.acl.vesseldata.VesselDataHolder;
 
 /**
  * Base implementation of a shielded world object.
@@ -11,6 +12,7 @@ import net.dhleong.acl.vesseldata.VesselData;
 public abstract class BaseArtemisShielded extends BaseArtemisOrientable
 		implements ArtemisShielded {
     private int mHullId = -1;
+    private VesselDataHolder mVesselData;
     private float mShieldsFront = Float.MIN_VALUE;
     private float mShieldsRear = Float.MIN_VALUE;
 
@@ -26,7 +28,29 @@ public abstract class BaseArtemisShielded extends BaseArtemisOrientable
 
     @Override
     public Vessel getVessel() {
-   		return mHullId != -1 ? VesselData.get().getVessel(mHullId) : null;
+        if (mHullId == -1) {
+            return null;
+        }
+
+        VesselDataHolder holder = mVesselData;
+        return (holder != null ? holder.resolve() : VesselData.get()).getVessel(mHullId);
+    }
+
+    /**
+     * Sets the VesselData used to look up this object's vessel; null, the
+     *  default, means the default VesselData.
+     */
+    public void setVesselData(VesselData vesselData) {
+        mVesselData = vesselData != null ? new VesselDataHolder(vesselData) : null;
+    }
+
+    /**
+     * Makes this object look up its vessel in whatever VesselData the given
+     *  holder has at the time. The PacketReader's holder is set on objects
+     *  as they are read, so replacing its VesselData reaches them all.
+     */
+    public void setVesselDataHolder(VesselDataHolder holder) {
+        mVesselData = holder;
     }
     
     @Override
@@ -61,6 +85,10 @@ public abstract class BaseArtemisShielded extends BaseArtemisOrientable
             ArtemisShielded ship = (ArtemisShielded) eng;
             int hullId = ship.getHullId();
 
+            if (((BaseArtemisShielded) eng).mVesselData != null) {
+                mVesselData = ((BaseArtemisShielded) eng).mVesselData;
+            }
+
             if (hullId != -1) {
                 mHullId = hullId;
             }
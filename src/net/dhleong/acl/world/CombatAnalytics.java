@@ -0,0 +1,345 @@
+package net.dhleong.acl.world;
+
+import java.util.Arrays;
+
+import net.dhleong.acl.enums.ShipSystem;
+import net.dhleong.acl.iface.Listener;
+import net.dhleong.acl.protocol.core.PlayerShipDamagePacket;
+import net.dhleong.acl.protocol.core.world.BeamFiredPacket;
+import net.dhleong.acl.util.IntMap;
+import net.dhleong.acl.vesseldata.BeamPort;
+import net.dhleong.acl.vesseldata.Vessel;
+
+/**
+ * Collects combat statistics for every shielded object: beams fired and
+ * taken, the damage they did, and the shield and hull damage observed in the
+ * SystemManager. Each statistic is kept both as a running total, for a
+ * debrief, and in a sliding window of fixed-size time buckets, for live
+ * rates such as DPS. Register it with the network interface and with the
+ * SystemManager it reads from:
+ *
+ * <pre>
+ * CombatAnalytics analytics = new CombatAnalytics(systemManager);
+ * iface.addListener(analytics);
+ * systemManager.addOnObjectChangeListener(analytics);
+ * </pre>
+ *
+ * Beam damage is estimated from the damage of the firing ship's beam port
+ * in the vessel data. PlayerShipDamagePackets are only sent to the damaged
+ * ship's own consoles, so they are counted against the SystemManager's
+ * default ship.
+ *
+ * Each object's statistics live in primitive arrays which are allocated
+ * when the object is first seen; after that, recording an event allocates
+ * nothing. Statistics are kept after an object is destroyed, until reset()
+ * is called. Events are recorded on the receive thread and may be queried
+ * from any thread; both are synchronized and short.
+ */
+public class CombatAnalytics implements SystemManager.OnObjectChangeListener {
+
+    public enum Stat {
+        /** Beams fired by the object */
+        BEAMS_FIRED,
+        /** Beams that hit the object */
+        BEAM_HITS,
+        /** Estimated damage done by the object's beams */
+        DAMAGE_DEALT,
+        /** Estimated damage done to the object by beams */
+        DAMAGE_TAKEN,
+        /** Shield strength lost */
+        SHIELD_DAMAGE,
+        /** Times damage got past the object's shields */
+        HULL_HITS
+    }
+
+    public static final long DEFAULT_BUCKET_MILLIS = 1000;
+    public static final int DEFAULT_BUCKET_COUNT = 10;
+
+    private static final int STATS = Stat.values().length;
+    private static final ShipSystem[] SYSTEMS = ShipSystem.values();
+    private static final long NO_BUCKET = Long.MIN_VALUE;
+
+    private static final class Track {
+        // window[stat * bucketCount + column]
+        private final float[] window;
+        // the bucket number held in each column; NO_BUCKET if none
+        private final long[] buckets;
+        private final double[] totals = new double[STATS];
+        private float shieldsFront = Float.MIN_VALUE;
+        private float shieldsRear = Float.MIN_VALUE;
+        private float systemDamage = -1;
+
+        private Track(int bucketCount) {
+            window = new float[STATS * bucketCount];
+            buckets = new long[bucketCount];
+            Arrays.fill(buckets, NO_BUCKET);
+        }
+    }
+
+    private final SystemManager mMgr;
+    private final long mBucketNanos;
+    private final int mBucketCount;
+    private final IntMap<Track> mTracks = new IntMap<Track>();
+
+    public CombatAnalytics(SystemManager mgr) {
+        this(mgr, DEFAULT_BUCKET_MILLIS, DEFAULT_BUCKET_COUNT);
+    }
+
+    /**
+     * @param bucketMillis The length of each bucket of the sliding window
+     * @param bucketCount The number of buckets in the sliding window
+     */
+    public CombatAnalytics(SystemManager mgr, long bucketMillis, int bucketCount) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("Invalid bucket length: " + bucketMillis);
+        }
+
+        if (bucketCount <= 0) {
+            throw new IllegalArgumentException("Invalid bucket count: " + bucketCount);
+        }
+
+        mMgr = mgr;
+        mBucketNanos = bucketMillis * 1000000L;
+        mBucketCount = bucketCount;
+    }
+
+    /**
+     * The length of the sliding window, in seconds.
+     */
+    public float getWindowSeconds() {
+        return mBucketNanos * mBucketCount / 1e9f;
+    }
+
+    @Listener
+    public void onPacket(BeamFiredPacket pkt) {
+        recordBeam(pkt, System.nanoTime());
+    }
+
+    @Listener
+    public void onPacket(PlayerShipDamagePacket pkt) {
+        ArtemisPlayer player = mMgr.getPlayerShip(mMgr.getDefaultShipIndex());
+
+        if (player != null) {
+            recordHullHit(player.getId(), System.nanoTime());
+        }
+    }
+
+    /**
+     * Records a beam fired at the given System.nanoTime().
+     */
+    public synchronized void recordBeam(BeamFiredPacket pkt, long time) {
+        final float damage = estimateDamage(pkt);
+        final int origin = pkt.getOriginId();
+        final int target = pkt.getTargetId();
+
+        if (origin != 0) {
+            Track track = getOrCreate(origin);
+            add(track, Stat.BEAMS_FIRED, 1, time);
+            add(track, Stat.DAMAGE_DEALT, damage, time);
+        }
+
+        if (target != 0) {
+            Track track = getOrCreate(target);
+            add(track, Stat.BEAM_HITS, 1, time);
+            add(track, Stat.DAMAGE_TAKEN, damage, time);
+        }
+    }
+
+    /**
+     * Records damage getting past the shields of the object with the given
+     *  ID at the given System.nanoTime().
+     */
+    public synchronized void recordHullHit(int objId, long time) {
+        add(getOrCreate(objId), Stat.HULL_HITS, 1, time);
+    }
+
+    @Override
+    public void onObjectChanged(ArtemisObject obj) {
+        if (obj instanceof ArtemisShielded) {
+            observe((ArtemisShielded) obj, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void onObjectRemoved(ArtemisObject obj) {
+        // keep the statistics for the debrief
+    }
+
+    @Override
+    public synchronized void onObjectsCleared() {
+        for (Track track : mTracks.values()) {
+            track.shieldsFront = Float.MIN_VALUE;
+            track.shieldsRear = Float.MIN_VALUE;
+            track.systemDamage = -1;
+        }
+    }
+
+    /**
+     * Compares the object's shields, and for NPCs its system damage, with
+     *  what they were when last observed, and records any damage as of the
+     *  given System.nanoTime().
+     */
+    public synchronized void observe(ArtemisShielded obj, long time) {
+        Track track = getOrCreate(obj.getId());
+        final float front = obj.getShieldsFront();
+        final float rear = obj.getShieldsRear();
+        float lost = 0;
+
+        if (front != Float.MIN_VALUE) {
+            if (track.shieldsFront != Float.MIN_VALUE && front < track.shieldsFront) {
+                lost += track.shieldsFront - front;
+            }
+
+            track.shieldsFront = front;
+        }
+
+        if (rear != Float.MIN_VALUE) {
+            if (track.shieldsRear != Float.MIN_VALUE && rear < track.shieldsRear) {
+                lost += track.shieldsRear - rear;
+            }
+
+            track.shieldsRear = rear;
+        }
+
+        if (lost > 0) {
+            add(track, Stat.SHIELD_DAMAGE, lost, time);
+        }
+
+        if (obj instanceof ArtemisNpc) {
+            final ArtemisNpc npc = (ArtemisNpc) obj;
+            float damage = -1;
+
+            for (ShipSystem sys : SYSTEMS) {
+                final float value = npc.getSystemDamage(sys);
+
+                if (value >= 0) {
+                    damage = (damage < 0 ? 0 : damage) + value;
+                }
+            }
+
+            if (damage >= 0) {
+                if (track.systemDamage >= 0 && damage > track.systemDamage) {
+                    add(track, Stat.HULL_HITS, 1, time);
+                }
+
+                track.systemDamage = damage;
+            }
+        }
+    }
+
+    /**
+     * Returns the total of the given statistic for the object since it was
+     *  first seen or reset() was last called.
+     */
+    public synchronized double getTotal(int objId, Stat stat) {
+        Track track = mTracks.get(objId);
+        return track != null ? track.totals[stat.ordinal()] : 0;
+    }
+
+    /**
+     * Returns the sum of the given statistic over the sliding window that
+     *  ends at the given System.nanoTime().
+     */
+    public synchronized float getWindowTotal(int objId, Stat stat, long now) {
+        Track track = mTracks.get(objId);
+
+        if (track == null) {
+            return 0;
+        }
+
+        final long current = now / mBucketNanos;
+        final int offset = stat.ordinal() * mBucketCount;
+        float sum = 0;
+
+        for (int i = 0; i < mBucketCount; i++) {
+            final long bucket = track.buckets[i];
+
+            if (bucket != NO_BUCKET && current - bucket >= 0 && current - bucket < mBucketCount) {
+                sum += track.window[offset + i];
+            }
+        }
+
+        return sum;
+    }
+
+    /**
+     * Returns the given statistic per second, averaged over the sliding
+     *  window that ends at the given System.nanoTime(). For example,
+     *  getRate(id, Stat.DAMAGE_DEALT, now) is the object's DPS.
+     */
+    public float getRate(int objId, Stat stat, long now) {
+        return getWindowTotal(objId, stat, now) / getWindowSeconds();
+    }
+
+    /**
+     * Writes the IDs of every object with statistics into dest.
+     * @return The number of IDs written; if larger than dest.length, only
+     *  that many were written
+     */
+    public synchronized int getObjectIds(int[] dest) {
+        return mTracks.keys(dest);
+    }
+
+    /**
+     * Forgets every object's statistics.
+     */
+    public synchronized void reset() {
+        mTracks.clear();
+    }
+
+    private float estimateDamage(BeamFiredPacket pkt) {
+        ArtemisObject origin = mMgr.getObject(pkt.getOriginId());
+
+        if (!(origin instanceof ArtemisShielded)) {
+            return 0;
+        }
+
+        Vessel vessel = ((ArtemisShielded) origin).getVessel();
+
+        if (vessel == null) {
+            return 0;
+        }
+
+        BeamPort port = vessel.getBeamPort(pkt.getBeamPortIndex());
+        return port != null ? port.getDamage() : 0;
+    }
+
+    private Track getOrCreate(int objId) {
+        Track track = mTracks.get(objId);
+
+        if (track == null) {
+            track = new Track(mBucketCount);
+            mTracks.put(objId, track);
+        }
+
+        return track;
+    }
+
+    private void add(Track track, Stat stat, float value, long time) {
+        final long bucket = time / mBucketNanos;
+        int column = (int) (bucket % mBucketCount);
+
+        if (column < 0) {
+            column += mBucketCount; // System.nanoTime() may be negative
+        }
+
+        track.totals[stat.ordinal()] += value;
+
+        if (bucket < track.buckets[column]) {
+            // a late event whose bucket has already been recycled; it only
+            //  counts towards the totals
+            return;
+        }
+
+        if (track.buckets[column] != bucket) {
+            // the column held an older bucket; recycle it
+            for (int i = column; i < track.window.length; i += mBucketCount) {
+                track.window[i] = 0;
+            }
+
+            track.buckets[column] = bucket;
+        }
+
+        track.window[stat.ordinal() * mBucketCount + column] += value;
+    }
+}
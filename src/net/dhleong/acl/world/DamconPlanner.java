@@ -0,0 +1,407 @@
+package net.dhleong.acl.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.dhleong.acl.enums.ShipSystem;
+import net.dhleong.acl.iface.Listener;
+import net.dhleong.acl.protocol.core.eng.EngGridUpdatePacket;
+import net.dhleong.acl.protocol.core.eng.EngGridUpdatePacket.DamconStatus;
+import net.dhleong.acl.protocol.core.eng.EngSendDamconPacket;
+import net.dhleong.acl.util.GridCoord;
+import net.dhleong.acl.util.ShipSystemGrid;
+
+/**
+ * Plans the work of the DAMCON teams, based on the grid damage and team
+ * positions tracked by a ShipEngineering.
+ *
+ * Each damaged node is a job worth its damage times the weight of its system,
+ * and takes a team the time to walk there plus the time to repair it, which
+ * is proportional to the damage and inversely proportional to the team's
+ * size. The planner gives each team a sequence of jobs, aiming to minimize
+ * the sum over all jobs of their worth times the time they are finished. It
+ * builds the sequences by inserting the jobs, most valuable first, wherever
+ * they add the least to that sum, then improves them by moving single jobs to
+ * a better place in any team's sequence (which includes swapping neighboring
+ * jobs) until no such move helps. This is a heuristic: the result is usually
+ * good, but not guaranteed to be optimal.
+ *
+ * Only the first job of each sequence is sent as an order; getRoute() returns
+ * the rest. Walking distances come from the ShipSystemGrid, which computes
+ * them once per hull, so planning does no path searches of its own, only
+ * table lookups. Register the planner with the ship's connection after its
+ * ShipEngineering to re-plan after every EngGridUpdatePacket, or call plan()
+ * directly.
+ */
+public class DamconPlanner {
+
+    public interface OnPlanListener {
+        /**
+         * Called with the orders that would change what the teams are
+         *  doing; never called with an empty list.
+         */
+        void onPlan(List<EngSendDamconPacket> orders);
+    }
+
+    /**
+     * The default number of moves it takes a one-person team to fully
+     *  repair a node.
+     */
+    public static final float DEFAULT_REPAIR_COST = 10;
+
+    private static final ShipSystem[] SYSTEMS = ShipSystem.values();
+
+    private final ShipEngineering mEng;
+    private final float[] mWeights = new float[SYSTEMS.length];
+    private float mRepairCost = DEFAULT_REPAIR_COST;
+    private volatile OnPlanListener mListener;
+
+    // scratch space for plan(); guarded by this
+    private final int[] mJobs = new int[GridCoord.GRID_SIZE];
+    private final float[] mWorth = new float[GridCoord.GRID_SIZE];
+    private final float[] mDamage = new float[GridCoord.GRID_SIZE];
+    private final int[] mOrder = new int[GridCoord.GRID_SIZE];
+    private DamconStatus[] mTeams = new DamconStatus[4];
+    private int[] mTeamNodes = new int[4];
+    private int mBestTeam, mBestPos;
+
+    // the sequences from the last plan(), as job indices; guarded by this
+    private int[][] mRoutes = new int[4][GridCoord.GRID_SIZE];
+    private int[] mRouteLengths = new int[4];
+    private int[] mTeamNumbers = new int[4];
+    private int mTeamCount;
+
+    public DamconPlanner(ShipEngineering eng) {
+        mEng = eng;
+        Arrays.fill(mWeights, 1);
+    }
+
+    /**
+     * Sets how much repairing the given system matters relative to the
+     *  others; the default is 1 for every system. A weight of 0 means
+     *  the system is never repaired.
+     */
+    public synchronized void setWeight(ShipSystem sys, float weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Invalid weight: " + weight);
+        }
+
+        mWeights[sys.ordinal()] = weight;
+    }
+
+    public synchronized float getWeight(ShipSystem sys) {
+        return mWeights[sys.ordinal()];
+    }
+
+    /**
+     * Sets the number of moves it takes a one-person team to fully repair a
+     *  node.
+     */
+    public synchronized void setRepairCost(float repairCost) {
+        if (repairCost <= 0) {
+            throw new IllegalArgumentException("Invalid repair cost: " + repairCost);
+        }
+
+        mRepairCost = repairCost;
+    }
+
+    public void setOnPlanListener(OnPlanListener listener) {
+        mListener = listener;
+    }
+
+    @Listener
+    public void onPacket(EngGridUpdatePacket pkt) {
+        final OnPlanListener listener = mListener;
+
+        if (listener == null) {
+            return;
+        }
+
+        List<EngSendDamconPacket> orders = plan();
+
+        if (!orders.isEmpty()) {
+            listener.onPlan(orders);
+        }
+    }
+
+    /**
+     * Plans the teams' sequences of jobs from the ship's current state.
+     * @return The orders that send each team to the first job of its
+     *  sequence; teams which are already heading there, or which have
+     *  nothing to do, get no order
+     */
+    public synchronized List<EngSendDamconPacket> plan() {
+        final ShipSystemGrid grid = mEng.getSystemGrid();
+        final List<EngSendDamconPacket> orders = new ArrayList<EngSendDamconPacket>();
+        mTeamCount = 0;
+
+        if (grid == null) {
+            return orders;
+        }
+
+        final int jobCount = collectJobs();
+        final int teamCount = collectTeams(grid);
+        mTeamCount = teamCount;
+
+        if (teamCount == 0) {
+            return orders;
+        }
+
+        // insert the most valuable jobs first
+        for (int j = 0; j < jobCount; j++) {
+            int k = j;
+
+            while (k > 0 && mWorth[mOrder[k - 1]] < mWorth[j]) {
+                mOrder[k] = mOrder[k - 1];
+                k--;
+            }
+
+            mOrder[k] = j;
+        }
+
+        for (int k = 0; k < jobCount; k++) {
+            final int job = mOrder[k];
+
+            if (findInsertion(grid, job) != Float.POSITIVE_INFINITY) {
+                insert(mBestTeam, mBestPos, job);
+            }
+        }
+
+        improve(grid, jobCount);
+
+        for (int t = 0; t < teamCount; t++) {
+            final DamconStatus team = mTeams[t];
+
+            if (mRouteLengths[t] == 0) {
+                continue;
+            }
+
+            final GridCoord target = GridCoord.fromIndex(mJobs[mRoutes[t][0]]);
+
+            if (!target.equals(team.getGoalX(), team.getGoalY(), team.getGoalZ())) {
+                orders.add(new EngSendDamconPacket(team.getTeamNumber(), target));
+            }
+        }
+
+        Arrays.fill(mTeams, 0, teamCount, null);
+        return orders;
+    }
+
+    /**
+     * Returns the nodes the last plan() would have the given team repair, in
+     *  order, or an empty list if it planned nothing for that team. The
+     *  first node is the one the team was sent to.
+     */
+    public synchronized List<GridCoord> getRoute(int teamNumber) {
+        final List<GridCoord> route = new ArrayList<GridCoord>();
+
+        for (int t = 0; t < mTeamCount; t++) {
+            if (mTeamNumbers[t] == teamNumber) {
+                for (int i = 0; i < mRouteLengths[t]; i++) {
+                    route.add(GridCoord.fromIndex(mJobs[mRoutes[t][i]]));
+                }
+
+                break;
+            }
+        }
+
+        return route;
+    }
+
+    /**
+     * Moves single jobs to the team and position where they add the least
+     *  weighted completion time, for as long as that improves the plan.
+     */
+    private void improve(ShipSystemGrid grid, int jobCount) {
+        boolean improved = true;
+
+        // every move strictly improves the plan, so this ends; the cap just
+        //  bounds the time taken by a plan with many near-equal moves
+        for (int pass = 0; improved && pass < jobCount; pass++) {
+            improved = false;
+
+            for (int t = 0; t < mTeamCount; t++) {
+                for (int i = 0; i < mRouteLengths[t]; i++) {
+                    final int job = mRoutes[t][i];
+                    final float before = getCost(grid, t);
+                    remove(t, i);
+                    final float saved = before - getCost(grid, t);
+                    final float added = findInsertion(grid, job);
+
+                    if (added < saved - 1e-4f * saved) {
+                        insert(mBestTeam, mBestPos, job);
+                        improved = true;
+                    } else {
+                        insert(t, i, job);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the team and position at which the given job adds the least to
+     *  the total weighted completion time, and stores them in mBestTeam and
+     *  mBestPos.
+     * @return The cost added, or POSITIVE_INFINITY if no team can reach the
+     *  job
+     */
+    private float findInsertion(ShipSystemGrid grid, int job) {
+        final int node = mJobs[job];
+        float best = Float.POSITIVE_INFINITY;
+
+        for (int t = 0; t < mTeamCount; t++) {
+            final int[] route = mRoutes[t];
+            final int length = mRouteLengths[t];
+            final float repair = getRepairTime(t, job);
+            float suffixWorth = 0;
+
+            for (int i = 0; i < length; i++) {
+                suffixWorth += mWorth[route[i]];
+            }
+
+            int prev = mTeamNodes[t];
+            float time = 0; // when the job before this position is done
+
+            for (int i = 0; i <= length; i++) {
+                final int in = grid.getDistance(prev, node);
+                final int next = i < length ? mJobs[route[i]] : -1;
+
+                if (in != -1) {
+                    final float done = time + in + repair;
+                    float added = mWorth[job] * done;
+
+                    if (next != -1) {
+                        // every later job is delayed by the detour
+                        added += suffixWorth * (in + repair +
+                                grid.getDistance(node, next) - grid.getDistance(prev, next));
+                    }
+
+                    if (added < best) {
+                        best = added;
+                        mBestTeam = t;
+                        mBestPos = i;
+                    }
+                }
+
+                if (next != -1) {
+                    time += grid.getDistance(prev, next) + getRepairTime(t, route[i]);
+                    suffixWorth -= mWorth[route[i]];
+                    prev = next;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * The total weighted completion time of the given team's sequence.
+     */
+    private float getCost(ShipSystemGrid grid, int team) {
+        final int[] route = mRoutes[team];
+        int prev = mTeamNodes[team];
+        float time = 0;
+        float cost = 0;
+
+        for (int i = 0, len = mRouteLengths[team]; i < len; i++) {
+            final int node = mJobs[route[i]];
+            time += grid.getDistance(prev, node) + getRepairTime(team, route[i]);
+            cost += mWorth[route[i]] * time;
+            prev = node;
+        }
+
+        return cost;
+    }
+
+    private float getRepairTime(int team, int job) {
+        return mRepairCost / mTeams[team].getMembers() * mDamage[job];
+    }
+
+    private void insert(int team, int pos, int job) {
+        final int[] route = mRoutes[team];
+        System.arraycopy(route, pos, route, pos + 1, mRouteLengths[team] - pos);
+        route[pos] = job;
+        mRouteLengths[team]++;
+    }
+
+    private void remove(int team, int pos) {
+        final int[] route = mRoutes[team];
+        mRouteLengths[team]--;
+        System.arraycopy(route, pos + 1, route, pos, mRouteLengths[team] - pos);
+    }
+
+    /**
+     * Finds the damaged nodes of systems with a non-zero weight.
+     * @return The number of jobs found
+     */
+    private int collectJobs() {
+        int count = 0;
+
+        for (int i = 0; i < GridCoord.GRID_SIZE; i++) {
+            final float damage = mEng.getGridDamage(i);
+
+            if (damage <= 0) {
+                continue;
+            }
+
+            final int sys = mEng.getGridSystem(i);
+            final float weight = sys == -1 ? 0 : mWeights[sys];
+
+            if (weight > 0) {
+                mJobs[count] = i;
+                mDamage[count] = damage;
+                mWorth[count] = damage * weight;
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Finds the teams that have members, and the grid node each one is
+     *  at. A team which is between nodes is treated as being at its goal.
+     * @return The number of teams found
+     */
+    private int collectTeams(ShipSystemGrid grid) {
+        int count = 0;
+
+        for (DamconStatus team : mEng.getDamcons()) {
+            if (team.getMembers() <= 0) {
+                continue;
+            }
+
+            int node = GridCoord.getIndex(team.getX(), team.getY(), team.getZ());
+
+            if (node == -1 || grid.getDistance(node, node) == -1) {
+                node = GridCoord.getIndex(team.getGoalX(), team.getGoalY(), team.getGoalZ());
+
+                if (node == -1 || grid.getDistance(node, node) == -1) {
+                    continue;
+                }
+            }
+
+            if (count == mTeams.length) {
+                mTeams = Arrays.copyOf(mTeams, count * 2);
+                mTeamNodes = Arrays.copyOf(mTeamNodes, count * 2);
+                mTeamNumbers = Arrays.copyOf(mTeamNumbers, count * 2);
+                mRouteLengths = Arrays.copyOf(mRouteLengths, count * 2);
+                mRoutes = Arrays.copyOf(mRoutes, count * 2);
+
+                for (int i = count; i < mRoutes.length; i++) {
+                    mRoutes[i] = new int[GridCoord.GRID_SIZE];
+                }
+            }
+
+            mTeams[count] = team;
+            mTeamNodes[count] = node;
+            mTeamNumbers[count] = team.getTeamNumber();
+            mRouteLengths[count] = 0;
+            count++;
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,660 @@
+package net.dhleong.acl.world;
+
+import net.dhleong.acl.iface.DisconnectEvent;
+import net.dhleong.acl.iface.Listener;
+import net.dhleong.acl.protocol.core.world.DestroyObjectPacket;
+import net.dhleong.acl.protocol.core.world.ObjectUpdatingPacket;
+import net.dhleong.acl.protocol.core.world.PlayerUpdatePacket;
+import net.dhleong.acl.util.IntMap;
+
+/**
+ * Predicts where every moving object is "now", between updates from the
+ * server. A ship's speed comes from the velocity it reports, and its
+ * direction from its heading, so a ship is predicted to move from its very
+ * first update; objects which don't report a velocity, or ships for which no
+ * speed scale is known yet, fall back to the change in position between
+ * their last two updates. The velocity is bent by the rate at which the
+ * heading was changing, so a turning ship is predicted to follow an arc.
+ *
+ * The server's velocity units aren't known, so a reported velocity is
+ * multiplied by the speed scale given to setSpeedScale(); until one is
+ * given, the scale is learned from the ships whose reported velocity and
+ * observed movement are both known.
+ *
+ * All state is kept in parallel primitive arrays, and the position pass in
+ * predictAll() is straight-line arithmetic over them, with no branches or
+ * method calls, which the JIT can vectorize.
+ *
+ * When a real update arrives, the distance between it and the position that
+ * was predicted for that moment is recorded as the prediction error, both
+ * for the object and in aggregate. A rising error means the network is
+ * delivering updates late or irregularly.
+ *
+ * Register a DeadReckoner with the network interface to feed it. Updates are
+ * applied on the receive thread to arrays only it can see, which are then
+ * copied and published once per packet; predictions may be made from any
+ * thread, and read the latest published copy, so they are always consistent
+ * and neither side ever waits for the other. Publishing costs a copy of the
+ * arrays, in proportion to the number of objects tracked.
+ */
+public class DeadReckoner {
+    private static final float NANOS_PER_SECOND = 1e9f;
+    private static final float TWO_PI = (float) (2 * Math.PI);
+
+    // updates closer together than this are too noisy to measure motion by
+    private static final float MIN_DT_SECONDS = 0.005f;
+
+    /**
+     * The state of every tracked object, as parallel arrays which all have
+     *  the same length. Slots [0, count) are in use. The writer works on a
+     *  State of its own, and publishes copies of it which are never
+     *  modified.
+     */
+    private static final class State {
+        private int count;
+        private final int[] ids;
+        private final long[] time;
+        private final float[] x, y, z;
+        private final float[] vx, vz, ax, az;
+        private final float[] heading, yawRate;
+        private final float[] velocity, maxSpeed, maxYawRate;
+        private final float[] lastError;
+
+        private State(int capacity, State old) {
+            ids = new int[capacity];
+            time = new long[capacity];
+            x = new float[capacity];
+            y = new float[capacity];
+            z = new float[capacity];
+            vx = new float[capacity];
+            vz = new float[capacity];
+            ax = new float[capacity];
+            az = new float[capacity];
+            heading = new float[capacity];
+            yawRate = new float[capacity];
+            velocity = new float[capacity];
+            maxSpeed = new float[capacity];
+            maxYawRate = new float[capacity];
+            lastError = new float[capacity];
+
+            if (old != null) {
+                final int n = old.count;
+                count = n;
+                System.arraycopy(old.ids, 0, ids, 0, n);
+                System.arraycopy(old.time, 0, time, 0, n);
+                System.arraycopy(old.x, 0, x, 0, n);
+                System.arraycopy(old.y, 0, y, 0, n);
+                System.arraycopy(old.z, 0, z, 0, n);
+                System.arraycopy(old.vx, 0, vx, 0, n);
+                System.arraycopy(old.vz, 0, vz, 0, n);
+                System.arraycopy(old.ax, 0, ax, 0, n);
+                System.arraycopy(old.az, 0, az, 0, n);
+                System.arraycopy(old.heading, 0, heading, 0, n);
+                System.arraycopy(old.yawRate, 0, yawRate, 0, n);
+                System.arraycopy(old.velocity, 0, velocity, 0, n);
+                System.arraycopy(old.maxSpeed, 0, maxSpeed, 0, n);
+                System.arraycopy(old.maxYawRate, 0, maxYawRate, 0, n);
+                System.arraycopy(old.lastError, 0, lastError, 0, n);
+            }
+        }
+
+        private void copySlot(int from, int to) {
+            ids[to] = ids[from];
+            time[to] = time[from];
+            x[to] = x[from];
+            y[to] = y[from];
+            z[to] = z[from];
+            vx[to] = vx[from];
+            vz[to] = vz[from];
+            ax[to] = ax[from];
+            az[to] = az[from];
+            heading[to] = heading[from];
+            yawRate[to] = yawRate[from];
+            velocity[to] = velocity[from];
+            maxSpeed[to] = maxSpeed[from];
+            maxYawRate[to] = maxYawRate[from];
+            lastError[to] = lastError[from];
+        }
+    }
+
+    /**
+     * An object's slot in the writer's State. Each tracked object gets one
+     *  when it's first seen, and it's updated in place when the object moves
+     *  to another slot, so the slot map never boxes. Readers may see a
+     *  stale index, so they check it against the published State.
+     */
+    private static final class Slot {
+        private int index;
+
+        private Slot(int index) {
+            this.index = index;
+        }
+    }
+
+    // written by the writer only
+    private State mWork = new State(16, null);
+    private final IntMap<Slot> mSlots = new IntMap<Slot>();
+    private double mScaleNum;
+    private double mScaleDen;
+
+    private volatile State mPublished = new State(0, null);
+    private volatile float mSpeedScale;
+    private volatile float mTurnRateScale;
+
+    // aggregate error; written by the writer only
+    private volatile long mErrorCount;
+    private volatile double mErrorSum;
+    private volatile double mErrorSumSq;
+    private volatile float mErrorMax;
+
+    /**
+     * Sets the factor which converts a ship's velocity and top speed (as
+     *  reported by {@link BaseArtemisShip#getVelocity()} and
+     *  {@link BaseArtemisShip#getTopSpeed()}) to world units per second.
+     *  If set, predicted speeds are capped at the ship's top speed. The
+     *  default is 0, which means that velocities are converted by a learned
+     *  scale and speeds are not capped, since the units the server uses are
+     *  not known.
+     */
+    public void setSpeedScale(float scale) {
+        mSpeedScale = scale;
+    }
+
+    /**
+     * Sets the factor which converts a ship's turn rate (as reported by
+     *  {@link BaseArtemisShip#getTurnRate()}) to radians per second. If set,
+     *  predicted turns are capped at the ship's turn rate. The default is
+     *  0, which disables the cap.
+     */
+    public void setTurnRateScale(float scale) {
+        mTurnRateScale = scale;
+    }
+
+    @Listener
+    public void onPacket(ObjectUpdatingPacket pkt) {
+        final long now = System.nanoTime();
+
+        for (ArtemisObject obj : pkt.getObjects()) {
+            apply(obj, now);
+        }
+
+        publish();
+    }
+
+    @Listener
+    public void onPacket(PlayerUpdatePacket pkt) {
+        observe(pkt.getPlayer(), System.nanoTime());
+    }
+
+    @Listener
+    public void onPacket(DestroyObjectPacket pkt) {
+        remove(pkt.getTarget());
+    }
+
+    @Listener
+    public void onDisconnect(DisconnectEvent event) {
+        clear();
+    }
+
+    /**
+     * Returns the number of objects being tracked.
+     */
+    public int size() {
+        return mPublished.count;
+    }
+
+    /**
+     * Applies an object update received at the given System.nanoTime(). Any
+     *  of its properties may be unspecified. Must be called from the writer
+     *  thread.
+     */
+    public void observe(ArtemisObject update, long time) {
+        apply(update, time);
+        publish();
+    }
+
+    /**
+     * Stops tracking the object with the given ID. Must be called from the
+     *  writer thread.
+     */
+    public void remove(int objId) {
+        final Slot removed = mSlots.remove(objId);
+
+        if (removed == null) {
+            return;
+        }
+
+        // move the last object into the vacated slot
+        final State s = mWork;
+        final int slot = removed.index;
+        final int last = s.count - 1;
+
+        if (slot != last) {
+            s.copySlot(last, slot);
+            mSlots.get(s.ids[slot]).index = slot;
+        }
+
+        s.count = last;
+        publish();
+    }
+
+    /**
+     * Stops tracking all objects and resets the error statistics and the
+     *  learned speed scale. Must be called from the writer thread.
+     */
+    public void clear() {
+        mSlots.clear();
+        mWork.count = 0;
+        mScaleNum = 0;
+        mScaleDen = 0;
+        publish();
+        resetErrorStats();
+    }
+
+    /**
+     * Predicts the position and heading of every tracked object at the given
+     *  System.nanoTime(). The ID of the i'th object is written to ids[i],
+     *  and its predicted state to x[i], y[i], z[i] and heading[i]; a heading
+     *  which has never been received is Float.MIN_VALUE. Stops early if any
+     *  array fills up.
+     * @return The number of objects written
+     */
+    public int predictAll(long now, int[] ids, float[] outX, float[] outY,
+            float[] outZ, float[] outHeading) {
+        final State s = mPublished;
+        final long[] time = s.time;
+        final float[] x = s.x, y = s.y, z = s.z;
+        final float[] vx = s.vx, vz = s.vz, ax = s.ax, az = s.az;
+        int count = Math.min(s.count, Math.min(ids.length, outX.length));
+        count = Math.min(count, Math.min(outY.length, Math.min(outZ.length,
+                outHeading.length)));
+
+        System.arraycopy(s.ids, 0, ids, 0, count);
+
+        for (int i = 0; i < count; i++) {
+            final float dt = (now - time[i]) / NANOS_PER_SECOND;
+            outX[i] = x[i] + (vx[i] + 0.5f * ax[i] * dt) * dt;
+            outY[i] = y[i];
+            outZ[i] = z[i] + (vz[i] + 0.5f * az[i] * dt) * dt;
+        }
+
+        // headings need wrapping, so they get their own pass
+        for (int i = 0; i < count; i++) {
+            final float dt = (now - time[i]) / NANOS_PER_SECOND;
+            outHeading[i] = predictHeading(s.heading[i], s.yawRate[i], dt);
+        }
+
+        return count;
+    }
+
+    /**
+     * Predicts the position and heading of the object with the given ID at
+     *  the given System.nanoTime(), writing x, y, z and heading into out.
+     * @return true if the object is being tracked; false otherwise
+     */
+    public boolean predict(int objId, long now, float[] out) {
+        final State s = mPublished;
+        final int i = find(s, objId);
+
+        if (i == -1) {
+            return false;
+        }
+
+        final float dt = (now - s.time[i]) / NANOS_PER_SECOND;
+        out[0] = s.x[i] + (s.vx[i] + 0.5f * s.ax[i] * dt) * dt;
+        out[1] = s.y[i];
+        out[2] = s.z[i] + (s.vz[i] + 0.5f * s.az[i] * dt) * dt;
+        out[3] = predictHeading(s.heading[i], s.yawRate[i], dt);
+        return true;
+    }
+
+    /**
+     * The distance between the most recent update for the object with the
+     *  given ID and the position that had been predicted for it, or -1 if
+     *  no prediction has been checked yet.
+     */
+    public float getLastError(int objId) {
+        final State s = mPublished;
+        final int i = find(s, objId);
+        return i == -1 ? -1 : s.lastError[i];
+    }
+
+    /**
+     * The number of predictions which have been checked against a real
+     *  update since the statistics were last reset.
+     */
+    public long getErrorSampleCount() {
+        return mErrorCount;
+    }
+
+    /**
+     * The mean prediction error, in world units.
+     */
+    public float getMeanError() {
+        final long count = mErrorCount;
+        return count == 0 ? 0 : (float) (mErrorSum / count);
+    }
+
+    /**
+     * The root mean square prediction error, in world units. This weighs
+     *  large misses more heavily than the mean does.
+     */
+    public float getRmsError() {
+        final long count = mErrorCount;
+        return count == 0 ? 0 : (float) Math.sqrt(mErrorSumSq / count);
+    }
+
+    /**
+     * The largest prediction error seen, in world units.
+     */
+    public float getMaxError() {
+        return mErrorMax;
+    }
+
+    /**
+     * Resets the aggregate error statistics.
+     */
+    public void resetErrorStats() {
+        mErrorCount = 0;
+        mErrorSum = 0;
+        mErrorSumSq = 0;
+        mErrorMax = 0;
+    }
+
+    /**
+     * Returns the index of the given object in the given published State,
+     *  or -1 if it isn't tracked. The slot map may already be ahead of the
+     *  State, so its answer is checked, and the State searched if it's
+     *  wrong.
+     */
+    private int find(State s, int objId) {
+        final Slot slot = mSlots.get(objId);
+
+        if (slot == null) {
+            return -1;
+        }
+
+        final int hint = slot.index;
+
+        if (hint < s.count && s.ids[hint] == objId) {
+            return hint;
+        }
+
+        for (int i = 0; i < s.count; i++) {
+            if (s.ids[i] == objId) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Applies an update to the writer's State, without publishing it.
+     */
+    private void apply(ArtemisObject update, long time) {
+        final int id = update.getId();
+        final Slot existing = mSlots.get(id);
+        final float x = update.getX();
+        final float y = update.getY();
+        final float z = update.getZ();
+        final boolean moved = x != Float.MIN_VALUE || z != Float.MIN_VALUE;
+        final float heading = update instanceof ArtemisOrientable ?
+                ((ArtemisOrientable) update).getHeading() : Float.MIN_VALUE;
+        final BaseArtemisShip ship = update instanceof BaseArtemisShip ?
+                (BaseArtemisShip) update : null;
+        final float velocity = ship != null ? ship.getVelocity() : -1;
+
+        if (existing == null && (x == Float.MIN_VALUE || z == Float.MIN_VALUE)) {
+            return; // we don't know where it is yet
+        }
+
+        final int slot = existing == null ? add(id, time, x, y, z) : existing.index;
+        final State s = mWork;
+
+        if (ship != null) {
+            if (ship.getTopSpeed() != -1) {
+                s.maxSpeed[slot] = ship.getTopSpeed();
+            }
+
+            if (ship.getTurnRate() != -1) {
+                s.maxYawRate[slot] = ship.getTurnRate();
+            }
+        }
+
+        if (existing != null && moved) {
+            move(s, slot, time, x == Float.MIN_VALUE ? s.x[slot] : x,
+                    y == Float.MIN_VALUE ? s.y[slot] : y,
+                    z == Float.MIN_VALUE ? s.z[slot] : z, heading, velocity);
+        } else {
+            if (heading != Float.MIN_VALUE) {
+                s.heading[slot] = heading;
+            }
+
+            if (velocity != -1) {
+                s.velocity[slot] = velocity;
+            }
+
+            steer(s, slot);
+        }
+    }
+
+    private int add(int id, long time, float x, float y, float z) {
+        State s = mWork;
+        final int slot = s.count;
+
+        if (slot == s.ids.length) {
+            s = new State(slot * 2, s);
+            mWork = s;
+        }
+
+        s.ids[slot] = id;
+        s.time[slot] = time;
+        s.x[slot] = x;
+        s.y[slot] = y == Float.MIN_VALUE ? 0 : y;
+        s.z[slot] = z;
+        s.vx[slot] = 0;
+        s.vz[slot] = 0;
+        s.ax[slot] = 0;
+        s.az[slot] = 0;
+        s.heading[slot] = Float.MIN_VALUE;
+        s.yawRate[slot] = 0;
+        s.velocity[slot] = -1;
+        s.maxSpeed[slot] = -1;
+        s.maxYawRate[slot] = -1;
+        s.lastError[slot] = -1;
+        s.count = slot + 1;
+        mSlots.put(id, new Slot(slot));
+        return slot;
+    }
+
+    /**
+     * Publishes a copy of the writer's State for readers.
+     */
+    private void publish() {
+        mPublished = new State(mWork.count, mWork);
+    }
+
+    /**
+     * Records a new position for an existing object: checks it against the
+     *  prediction, then derives the object's new motion from it.
+     */
+    private void move(State s, int i, long time, float x, float y, float z,
+            float heading, float velocity) {
+        final float dt = (time - s.time[i]) / NANOS_PER_SECOND;
+
+        if (velocity != -1) {
+            s.velocity[i] = velocity;
+        }
+
+        if (dt < MIN_DT_SECONDS) {
+            // too soon to measure anything; start predicting from here, with
+            // the motion that was already known
+            s.time[i] = time;
+            s.x[i] = x;
+            s.y[i] = y;
+            s.z[i] = z;
+
+            if (heading != Float.MIN_VALUE) {
+                s.heading[i] = heading;
+            }
+
+            steer(s, i);
+            return;
+        }
+
+        // how far off were we?
+        final float px = s.x[i] + (s.vx[i] + 0.5f * s.ax[i] * dt) * dt;
+        final float pz = s.z[i] + (s.vz[i] + 0.5f * s.az[i] * dt) * dt;
+        final float dy = s.y[i] - y;
+        final float error = (float) Math.sqrt((px - x) * (px - x) +
+                dy * dy + (pz - z) * (pz - z));
+        recordError(s, i, error);
+
+        // measured motion over the last interval
+        float vx = (x - s.x[i]) / dt;
+        float vz = (z - s.z[i]) / dt;
+        final float measured = (float) Math.sqrt(vx * vx + vz * vz);
+        learnScale(s.velocity[i], measured);
+        final float reported = reportedSpeed(s, i);
+        final float speed = reported == -1 ? capSpeed(s, i, measured) : reported;
+        float yawRate = 0;
+
+        if (heading != Float.MIN_VALUE) {
+            if (s.heading[i] != Float.MIN_VALUE) {
+                yawRate = wrap(heading - s.heading[i]) / dt;
+
+                if (s.maxYawRate[i] > 0 && mTurnRateScale > 0) {
+                    final float max = s.maxYawRate[i] * mTurnRateScale;
+                    yawRate = Math.max(-max, Math.min(max, yawRate));
+                }
+            }
+
+            s.heading[i] = heading;
+        }
+
+        if (s.heading[i] != Float.MIN_VALUE) {
+            // the heading is more current than the averaged direction of
+            // travel, so steer along it (or opposite it, if in reverse)
+            final float dirX = (float) Math.sin(s.heading[i]);
+            final float dirZ = (float) Math.cos(s.heading[i]);
+            final float sign;
+
+            if (reported != -1) {
+                sign = s.velocity[i] < 0 ? -1 : 1;
+            } else {
+                sign = vx * dirX + vz * dirZ < 0 ? -1 : 1;
+            }
+
+            vx = sign * speed * dirX;
+            vz = sign * speed * dirZ;
+        } else if (measured > 0) {
+            vx *= speed / measured;
+            vz *= speed / measured;
+        }
+
+        s.time[i] = time;
+        s.x[i] = x;
+        s.y[i] = y;
+        s.z[i] = z;
+        s.vx[i] = vx;
+        s.vz[i] = vz;
+        s.yawRate[i] = yawRate;
+
+        // turning rotates the velocity vector: dv/dt = yawRate * (vz, -vx)
+        s.ax[i] = yawRate * vz;
+        s.az[i] = -yawRate * vx;
+    }
+
+    /**
+     * Points the object's velocity along its heading (or opposite it, if
+     *  the reported velocity is negative), at its reported speed, if both
+     *  are known; otherwise leaves its motion alone.
+     */
+    private void steer(State s, int i) {
+        final float speed = reportedSpeed(s, i);
+
+        if (speed == -1 || s.heading[i] == Float.MIN_VALUE) {
+            return;
+        }
+
+        final float dirX = (float) Math.sin(s.heading[i]);
+        final float dirZ = (float) Math.cos(s.heading[i]);
+        final float sign = s.velocity[i] < 0 ? -1 : 1;
+        s.vx[i] = sign * speed * dirX;
+        s.vz[i] = sign * speed * dirZ;
+        s.ax[i] = s.yawRate[i] * s.vz[i];
+        s.az[i] = -s.yawRate[i] * s.vx[i];
+    }
+
+    /**
+     * Returns the object's reported velocity in world units per second,
+     *  capped at its top speed, or -1 if it hasn't reported one or there's
+     *  no scale to convert it by yet.
+     */
+    private float reportedSpeed(State s, int i) {
+        final float velocity = s.velocity[i];
+
+        if (velocity == -1) {
+            return -1;
+        }
+
+        float scale = mSpeedScale;
+
+        if (scale <= 0) {
+            if (mScaleDen == 0) {
+                return -1;
+            }
+
+            scale = (float) (mScaleNum / mScaleDen);
+        }
+
+        return capSpeed(s, i, Math.abs(velocity) * scale);
+    }
+
+    private float capSpeed(State s, int i, float speed) {
+        if (s.maxSpeed[i] > 0 && mSpeedScale > 0) {
+            return Math.min(speed, s.maxSpeed[i] * mSpeedScale);
+        }
+
+        return speed;
+    }
+
+    /**
+     * Adds a pair of reported velocity and measured speed to the
+     *  least-squares fit of the velocity scale.
+     */
+    private void learnScale(float velocity, float measured) {
+        if (velocity > 0) {
+            mScaleNum += (double) velocity * measured;
+            mScaleDen += (double) velocity * velocity;
+        }
+    }
+
+    private void recordError(State s, int slot, float error) {
+        s.lastError[slot] = error;
+        mErrorCount = mErrorCount + 1;
+        mErrorSum = mErrorSum + error;
+        mErrorSumSq = mErrorSumSq + (double) error * error;
+
+        if (error > mErrorMax) {
+            mErrorMax = error;
+        }
+    }
+
+    private static float predictHeading(float heading, float yawRate, float dt) {
+        if (heading == Float.MIN_VALUE) {
+            return heading;
+        }
+
+        return wrap(heading + yawRate * dt);
+    }
+
+    /**
+     * Wraps the given angle into the range -pi to pi; an infinite or NaN
+     *  angle gives NaN.
+     */
+    private static float wrap(float angle) {
+        return (float) Math.IEEEremainder(angle, TWO_PI);
+    }
+}
@@ -0,0 +1,308 @@
+package net.dhleong.acl.world;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.dhleong.acl.util.IntMap;
+
+/**
+ * Keeps the last few positions received for each world object, along with
+ * the time they were received, so that a renderer running faster than the
+ * server's update rate can interpolate smoothly between them instead of
+ * jumping from one update to the next. A renderer will typically draw each
+ * frame at a time slightly in the past (about one server update interval),
+ * so that there's always a newer sample to interpolate towards.
+ *
+ * Each object's history is a fixed-size ring buffer of primitives, so
+ * recording a sample never allocates once the object is known. Samples are
+ * recorded by a single writer thread (SystemManager's), but may be read from
+ * any thread; each history is guarded by a sequence counter, and a read which
+ * overlaps a write is simply retried. The samples themselves are kept in
+ * atomic arrays (floats as their raw int bits), so every access is ordered
+ * against the counter and a read whose counter didn't change is never torn.
+ *
+ * Interpolated values are written to a float array in the following order:
+ * x, y, z, heading, velocity. A heading or velocity which has never been
+ * received is Float.MIN_VALUE or -1, respectively.
+ */
+public class PositionHistory {
+    /**
+     * The number of floats written for each object by interpolate().
+     */
+    public static final int STRIDE = 5;
+
+    public static final int X = 0;
+    public static final int Y = 1;
+    public static final int Z = 2;
+    public static final int HEADING = 3;
+    public static final int VELOCITY = 4;
+
+    /**
+     * The default number of samples kept for each object.
+     */
+    public static final int DEFAULT_CAPACITY = 8;
+
+    private static final class Track {
+        private final int id;
+        private final AtomicLongArray times;
+        private final AtomicIntegerArray values; // Float.floatToRawIntBits
+        private volatile int head; // where the next sample goes
+        private volatile int count;
+        private volatile int version; // odd while a sample is being written
+
+        private Track(int id, int capacity) {
+            this.id = id;
+            times = new AtomicLongArray(capacity);
+            values = new AtomicIntegerArray(capacity * STRIDE);
+        }
+
+        private float value(int index) {
+            return Float.intBitsToFloat(values.get(index));
+        }
+
+        private void setValue(int index, float value) {
+            values.set(index, Float.floatToRawIntBits(value));
+        }
+    }
+
+    private final int mCapacity;
+    private final IntMap<Track> mTracks = new IntMap<Track>();
+
+    public PositionHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of samples to keep for each object; at
+     *  least two are required to interpolate
+     */
+    public PositionHistory(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+
+        mCapacity = capacity;
+    }
+
+    /**
+     * Returns true if the given object update contains any part of the
+     *  object's position or heading, and therefore should be recorded.
+     */
+    public static boolean hasMotion(ArtemisObject update) {
+        if (update.getX() != Float.MIN_VALUE || update.getY() != Float.MIN_VALUE ||
+                update.getZ() != Float.MIN_VALUE) {
+            return true;
+        }
+
+        return update instanceof ArtemisOrientable &&
+                ((ArtemisOrientable) update).getHeading() != Float.MIN_VALUE;
+    }
+
+    /**
+     * Records the current position, heading and velocity of the given object
+     *  as of the given System.nanoTime(). Objects whose position is
+     *  unspecified are ignored. Must only be called from the writer thread.
+     */
+    public void record(ArtemisObject obj, long time) {
+        final float x = obj.getX();
+        final float z = obj.getZ();
+
+        if (x == Float.MIN_VALUE || z == Float.MIN_VALUE) {
+            return;
+        }
+
+        Track track = mTracks.get(obj.getId());
+
+        if (track == null) {
+            track = new Track(obj.getId(), mCapacity);
+            mTracks.put(obj.getId(), track);
+        }
+
+        final float y = obj.getY();
+        final float heading = obj instanceof ArtemisOrientable ?
+                ((ArtemisOrientable) obj).getHeading() : Float.MIN_VALUE;
+        final float velocity = obj instanceof BaseArtemisShip ?
+                ((BaseArtemisShip) obj).getVelocity() : -1;
+
+        track.version++;
+        final int o = track.head * STRIDE;
+        track.times.set(track.head, time);
+        track.setValue(o + X, x);
+        track.setValue(o + Y, y == Float.MIN_VALUE ? 0 : y);
+        track.setValue(o + Z, z);
+        track.setValue(o + HEADING, heading);
+        track.setValue(o + VELOCITY, velocity);
+        track.head = (track.head + 1) % mCapacity;
+
+        if (track.count < mCapacity) {
+            track.count++;
+        }
+
+        track.version++;
+    }
+
+    /**
+     * Forgets the history of the object with the given ID.
+     */
+    public void remove(int objId) {
+        mTracks.remove(objId);
+    }
+
+    /**
+     * Forgets the history of all objects.
+     */
+    public void clear() {
+        mTracks.clear();
+    }
+
+    /**
+     * Returns the number of samples currently held for the object with the
+     *  given ID.
+     */
+    public int getSampleCount(int objId) {
+        Track track = mTracks.get(objId);
+        return track == null ? 0 : track.count;
+    }
+
+    /**
+     * Writes the state of the object with the given ID at the given
+     *  System.nanoTime() into out, starting at offset; see the class
+     *  documentation for the layout. Times between two samples are
+     *  interpolated; times before the oldest or after the newest sample
+     *  get that sample's values.
+     * @return true if the object has any history; false otherwise, in
+     *  which case out is not modified
+     */
+    public boolean interpolate(int objId, long time, float[] out, int offset) {
+        Track track = mTracks.get(objId);
+        return track != null && interpolate(track, time, out, offset);
+    }
+
+    /**
+     * Interpolates every object with history at the given System.nanoTime(),
+     *  writing each object's ID to ids and its state to out, STRIDE floats
+     *  per object. Stops early if either array fills up.
+     * @return The number of objects written
+     */
+    public int interpolateAll(long time, int[] ids, float[] out) {
+        final int max = Math.min(ids.length, out.length / STRIDE);
+        int count = 0;
+
+        for (Track track : mTracks.values()) {
+            if (count == max) {
+                break;
+            }
+
+            if (interpolate(track, time, out, count * STRIDE)) {
+                ids[count++] = track.id;
+            }
+        }
+
+        return count;
+    }
+
+    private boolean interpolate(Track track, long time, float[] out, int offset) {
+        while (true) {
+            final int version = track.version;
+
+            if ((version & 1) != 0) {
+                continue; // a sample is being written right now
+            }
+
+            final boolean found = read(track, time, out, offset);
+
+            if (track.version == version) {
+                return found;
+            }
+        }
+    }
+
+    /**
+     * Does the work of interpolate() without guarding against concurrent
+     *  writes; the caller must check the track's version afterward.
+     */
+    private boolean read(Track track, long time, float[] out, int offset) {
+        final int count = track.count;
+
+        if (count == 0) {
+            return false;
+        }
+
+        final int cap = mCapacity;
+        final int oldest = (track.head - count + cap) % cap;
+
+        // find the newest sample at or before the requested time
+        int before = -1;
+
+        for (int i = count - 1; i >= 0; i--) {
+            int idx = (oldest + i) % cap;
+
+            if (track.times.get(idx) <= time) {
+                before = i;
+                break;
+            }
+        }
+
+        if (before == -1 || before == count - 1) {
+            copy(track, before == -1 ? oldest : (oldest + before) % cap, out, offset);
+            return true;
+        }
+
+        final int a = (oldest + before) % cap;
+        final int b = (oldest + before + 1) % cap;
+        final long timeA = track.times.get(a);
+        final long span = track.times.get(b) - timeA;
+        final float f = span <= 0 ? 1 : (float) (time - timeA) / span;
+        final int oa = a * STRIDE;
+        final int ob = b * STRIDE;
+
+        out[offset + X] = lerp(track.value(oa + X), track.value(ob + X), f);
+        out[offset + Y] = lerp(track.value(oa + Y), track.value(ob + Y), f);
+        out[offset + Z] = lerp(track.value(oa + Z), track.value(ob + Z), f);
+        out[offset + HEADING] = lerpHeading(track.value(oa + HEADING),
+                track.value(ob + HEADING), f);
+
+        final float velA = track.value(oa + VELOCITY);
+        final float velB = track.value(ob + VELOCITY);
+        out[offset + VELOCITY] = velA == -1 || velB == -1 ? velB : lerp(velA, velB, f);
+        return true;
+    }
+
+    private static void copy(Track track, int idx, float[] out, int offset) {
+        for (int i = 0; i < STRIDE; i++) {
+            out[offset + i] = track.value(idx * STRIDE + i);
+        }
+    }
+
+    private static float lerp(float a, float b, float f) {
+        return a + (b - a) * f;
+    }
+
+    /**
+     * Interpolates between two headings (in the range -pi to pi) the short
+     *  way around the circle.
+     */
+    static float lerpHeading(float a, float b, float f) {
+        if (a == Float.MIN_VALUE || b == Float.MIN_VALUE) {
+            return b == Float.MIN_VALUE ? a : b;
+        }
+
+        float delta = b - a;
+
+        if (delta > Math.PI) {
+            delta -= 2 * Math.PI;
+        } else if (delta < -Math.PI) {
+            delta += 2 * Math.PI;
+        }
+
+        float h = a + delta * f;
+
+        if (h > Math.PI) {
+            h -= 2 * Math.PI;
+        } else if (h < -Math.PI) {
+            h += 2 * Math.PI;
+        }
+
+        return h;
+    }
+}
@@ -0,0 +1,270 @@
+package net.dhleong.acl.world;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import net.dhleong.acl.enums.ShipSystem;
+import net.dhleong.acl.iface.DisconnectEvent;
+import net.dhleong.acl.iface.Listener;
+import net.dhleong.acl.protocol.core.GameOverPacket;
+import net.dhleong.acl.protocol.core.eng.EngGridUpdatePacket;
+import net.dhleong.acl.protocol.core.eng.EngGridUpdatePacket.DamconStatus;
+import net.dhleong.acl.protocol.core.eng.EngGridUpdatePacket.GridDamage;
+import net.dhleong.acl.util.GridCoord;
+import net.dhleong.acl.util.IntMap;
+import net.dhleong.acl.util.ShipSystemGrid;
+import net.dhleong.acl.util.ShipSystemGrid.GridEntry;
+
+/**
+ * The engineering state of one player ship: its system grid, the damage to
+ * each node of the grid and its DAMCON teams. The server only sends this to
+ * the ship's own engineering console, so a client that watches several ships
+ * needs a connection per ship. SystemManager keeps one ShipEngineering per
+ * ship index; register {@link SystemManager#getEngineering(int)} with the
+ * connection for that ship, and the SystemManager itself with just one of the
+ * connections, so that the world objects are only stored and updated once.
+ *
+ * Like SystemManager, each ShipEngineering is a single-writer store: only the
+ * thread that delivers its ship's packets may modify it, while other threads
+ * read it without locking and see its changes in a weakly consistent order.
+ * Since that thread is its only writer, it clears itself when its own
+ * connection reports the end of the game or is lost, rather than being
+ * cleared by the SystemManager's connection.
+ */
+public class ShipEngineering {
+    private static final ShipSystem[] SYSTEMS = ShipSystem.values();
+
+    private final SystemManager mMgr;
+    private final int mShipIndex;
+
+    // damage by packed GridCoord index; -1 for nodes that aren't in the grid
+    private final float[] mGridDamage = new float[GridCoord.GRID_SIZE];
+    // the ShipSystem ordinal at each index, or -1
+    private final byte[] mGridSystems = new byte[GridCoord.GRID_SIZE];
+    // total damage per ShipSystem, kept up to date as damage arrives
+    private final double[] mSystemDamage = new double[SYSTEMS.length];
+    private volatile ShipSystemGrid mGrid;
+
+    private final IntMap<DamconStatus> mDamcons = new IntMap<DamconStatus>();
+
+    ShipEngineering(SystemManager mgr, int shipIndex) {
+        mMgr = mgr;
+        mShipIndex = shipIndex;
+        clearGrid();
+    }
+
+    /**
+     * The index of the ship whose engineering state this is.
+     */
+    public int getShipIndex() {
+        return mShipIndex;
+    }
+
+    /**
+     * The ship whose engineering state this is, or null if the
+     *  SystemManager hasn't received it yet.
+     */
+    public ArtemisPlayer getPlayerShip() {
+        return mMgr.getPlayerShip(mShipIndex);
+    }
+
+    @Listener
+    public void onPacket(EngGridUpdatePacket pkt) {
+        List<GridDamage> damages = pkt.getDamage();
+
+        if (damages.size() > 0 && mGrid != null) {
+            for (int i = 0, len = damages.size(); i < len; i++) {
+                GridDamage d = damages.get(i);
+                final int index = d.coord.getIndex();
+
+                if (index == -1) {
+                    continue;
+                }
+
+                final float old = mGridDamage[index];
+                mGridDamage[index] = d.damage;
+                final int sys = mGridSystems[index];
+
+                if (sys != -1) {
+                    mSystemDamage[sys] += d.damage - (old == -1 ? 0 : old);
+                }
+            }
+        }
+
+        // update/init damcon teams
+        for (DamconStatus s : pkt.getDamcons()) {
+            final int team = s.getTeamNumber();
+
+            DamconStatus old = mDamcons.get(team);
+
+            if (old != null) {
+                old.updateFrom(s);
+            } else {
+                mDamcons.put(team, s);
+            }
+        }
+    }
+
+    /**
+     * Get the status of the given Damcon Team if we have it, else null.
+     */
+    public DamconStatus getDamcon(int teamNumber) {
+        return mDamcons.get(teamNumber);
+    }
+
+    /**
+     * Get the status of every Damcon Team we've heard about
+     * @return A read-only view, which reflects later updates
+     */
+    public Collection<DamconStatus> getDamcons() {
+        return Collections.unmodifiableCollection(mDamcons.values());
+    }
+
+    public GridEntry getGridAt(int x, int y, int z) {
+        return getGridAt(GridCoord.getInstance(x, y, z));
+    }
+
+    public GridEntry getGridAt(GridCoord key) {
+        return requireGrid().getGridAt(key);
+    }
+
+    /**
+     * Get the type of System at the grid coordinates,
+     *  or NULL if it's just a hallway
+     */
+    public ShipSystem getSystemTypeAt(int x, int y, int z) {
+        return requireGrid().getSystemTypeAt(GridCoord.getInstance(x, y, z));
+    }
+
+    /**
+     * Get the overall health of the given system
+     * @return A float [0, 1] indicating percentage health
+     * @throws IllegalStateException if there is no ShipSystemGrid yet
+     */
+    public float getHealthOfSystem(ShipSystem sys) {
+        final float total = requireGrid().getSystemCount(sys);
+        return (float) (total - mSystemDamage[sys.ordinal()]) / total;
+    }
+
+    public boolean hasSystemGrid() {
+        return mGrid != null;
+    }
+
+    /**
+     * @return The ship's grid, or null if it hasn't been set
+     */
+    public ShipSystemGrid getSystemGrid() {
+        return mGrid;
+    }
+
+    /**
+     * Get the damage at a specific grid coord
+     * @return The damage as a value [0, 1] or -1
+     *  if we don't have the any entry for the coord
+     */
+    public float getGridDamageAt(GridCoord coord) {
+        final int index = coord.getIndex();
+        return index == -1 ? -1f : mGridDamage[index];
+    }
+
+    public float getGridDamageAt(int x, int y, int z) {
+        final int index = GridCoord.getIndex(x, y, z);
+        return index == -1 ? -1f : mGridDamage[index];
+    }
+
+    /**
+     * The damage at the grid node with the given index, or -1; for callers
+     *  that walk the whole grid.
+     */
+    float getGridDamage(int index) {
+        return mGridDamage[index];
+    }
+
+    /**
+     * The ordinal of the system at the grid node with the given index, or
+     *  -1 for a hallway or a node that isn't in the grid.
+     */
+    int getGridSystem(int index) {
+        return mGridSystems[index];
+    }
+
+    /**
+     * Get the damage of every grid coord we have an entry for. This builds
+     *  a new Map on each call, so prefer getGridDamageAt() where possible.
+     */
+    public Set<Entry<GridCoord, Float>> getGridDamages() {
+        Map<GridCoord, Float> damages = new HashMap<GridCoord, Float>();
+
+        for (int i = 0; i < mGridDamage.length; i++) {
+            if (mGridDamage[i] != -1) {
+                damages.put(GridCoord.fromIndex(i), mGridDamage[i]);
+            }
+        }
+
+        return damages.entrySet();
+    }
+
+    @Listener
+    public void onPacket(GameOverPacket pkt) {
+        clear();
+    }
+
+    @Listener
+    public void onDisconnect(DisconnectEvent event) {
+        clear();
+    }
+
+    /**
+     * Set the ship's (fully loaded) grid, which resets its damage
+     */
+    public void setSystemGrid(ShipSystemGrid grid) {
+        clearGrid();
+
+        // fill some default values
+        for (GridCoord c : grid.getCoords()) {
+            final int index = c.getIndex();
+
+            if (index == -1) {
+                continue;
+            }
+
+            GridEntry entry = grid.getGridAt(c);
+            mGridDamage[index] = 0; // default
+            mGridSystems[index] = (byte) (entry == null || entry.getSystem() == null ?
+                    -1 : entry.getSystem().ordinal());
+        }
+
+        mGrid = grid;
+    }
+
+    /**
+     * Forgets the grid, its damage and the DAMCON teams.
+     */
+    public void clear() {
+        clearGrid();
+        mDamcons.clear();
+    }
+
+    private void clearGrid() {
+        mGrid = null;
+        Arrays.fill(mGridDamage, -1);
+        Arrays.fill(mGridSystems, (byte) -1);
+        Arrays.fill(mSystemDamage, 0);
+    }
+
+    private ShipSystemGrid requireGrid() {
+        final ShipSystemGrid grid = mGrid;
+
+        if (grid == null) {
+            throw new IllegalStateException("Ship " + mShipIndex + " has no ShipSystemGrid");
+        }
+
+        return grid;
+    }
+}
@@ -0,0 +1,348 @@
+package net.dhleong.acl.world;
+
+import java.util.List;
+
+import net.dhleong.acl.enums.ObjectType;
+import net.dhleong.acl.util.IntMap;
+
+/**
+ * A uniform grid over the sector which allows ArtemisObjects to be found by
+ * position without scanning the whole world. Since the sector is very nearly
+ * flat (the Y-axis only runs from -500 to 500), the grid divides the sector
+ * along the X and Z axes only; the Y coordinate is still taken into account
+ * when distances are computed. Objects outside the sector bounds are kept in
+ * the nearest edge cell, so they are still found by any query that touches
+ * that edge.
+ *
+ * Each cell is an intrusive linked list, so moving an object from one cell to
+ * another doesn't allocate, and neither do queries: results are written into
+ * a caller-supplied List or array. Objects whose position is unspecified are
+ * not indexed. Like SystemManager, SpatialIndex has a single writer: update(),
+ * remove() and clear() must all be called from the same thread, but queries
+ * may run on other threads at the same time. Such queries are weakly
+ * consistent; an object that moves while a query runs may be missed.
+ */
+public class SpatialIndex {
+    /**
+     * The length of one side of the sector along the X and Z axes.
+     */
+    public static final float SECTOR_SIZE = 100000;
+
+    /**
+     * The default length of a side of one grid cell.
+     */
+    public static final float DEFAULT_CELL_SIZE = 5000;
+
+    private static final class Entry {
+        private final ArtemisObject obj;
+        private float x, y, z;
+        private int cell = -1;
+        private Entry prev, next;
+
+        private Entry(ArtemisObject obj) {
+            this.obj = obj;
+        }
+    }
+
+    private final float mCellSize;
+    private final int mCellsPerSide;
+    private final Entry[] mCells;
+    private final IntMap<Entry> mEntries = new IntMap<Entry>();
+    private final ThreadLocal<float[]> mScratchDist = new ThreadLocal<float[]>();
+
+    public SpatialIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * @param cellSize The length of a side of one grid cell. Smaller cells
+     *  make small queries cheaper but large queries more expensive.
+     */
+    public SpatialIndex(float cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Invalid cell size: " + cellSize);
+        }
+
+        mCellSize = cellSize;
+        mCellsPerSide = Math.max(1, (int) Math.ceil(SECTOR_SIZE / cellSize));
+        mCells = new Entry[mCellsPerSide * mCellsPerSide];
+    }
+
+    /**
+     * Returns the number of objects in the index.
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Adds the given object to the index or, if it's already there, moves it
+     * to its current position. If the object's position is unspecified, it
+     * is removed from the index instead.
+     */
+    public void update(ArtemisObject obj) {
+        final float x = obj.getX();
+        final float y = obj.getY();
+        final float z = obj.getZ();
+
+        if (x == Float.MIN_VALUE || z == Float.MIN_VALUE) {
+            remove(obj.getId());
+            return;
+        }
+
+        Entry entry = mEntries.get(obj.getId());
+
+        if (entry == null) {
+            entry = new Entry(obj);
+            mEntries.put(obj.getId(), entry);
+        }
+
+        entry.x = x;
+        entry.y = y == Float.MIN_VALUE ? 0 : y;
+        entry.z = z;
+        final int cell = cellIndex(cellCoord(x), cellCoord(z));
+
+        if (cell != entry.cell) {
+            unlink(entry);
+            link(entry, cell);
+        }
+    }
+
+    /**
+     * Removes the object with the given ID from the index.
+     */
+    public void remove(int objId) {
+        Entry entry = mEntries.remove(objId);
+
+        if (entry != null) {
+            unlink(entry);
+        }
+    }
+
+    /**
+     * Removes all objects from the index.
+     */
+    public void clear() {
+        mEntries.clear();
+
+        for (int i = 0; i < mCells.length; i++) {
+            mCells[i] = null;
+        }
+    }
+
+    /**
+     * Adds all objects of the given type that lie within radius of the given
+     * point to dest. If type is null, objects of all types are included.
+     * @return The number of objects added to dest
+     */
+    public int getWithin(float x, float y, float z, float radius,
+            ObjectType type, List<ArtemisObject> dest) {
+        final float radiusSq = radius * radius;
+        final int minCx = cellCoord(x - radius);
+        final int maxCx = cellCoord(x + radius);
+        final int minCz = cellCoord(z - radius);
+        final int maxCz = cellCoord(z + radius);
+        int count = 0;
+
+        for (int cz = minCz; cz <= maxCz; cz++) {
+            for (int cx = minCx; cx <= maxCx; cx++) {
+                for (Entry e = mCells[cellIndex(cx, cz)]; e != null; e = e.next) {
+                    if (type != null && e.obj.getType() != type) {
+                        continue;
+                    }
+
+                    if (distanceSq(e, x, y, z) <= radiusSq) {
+                        dest.add(e.obj);
+                        count++;
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds all objects of the given type that lie within the given axis-aligned
+     * box to dest. If type is null, objects of all types are included.
+     * @return The number of objects added to dest
+     */
+    public int getInBox(float minX, float minY, float minZ, float maxX,
+            float maxY, float maxZ, ObjectType type, List<ArtemisObject> dest) {
+        final int minCx = cellCoord(minX);
+        final int maxCx = cellCoord(maxX);
+        final int minCz = cellCoord(minZ);
+        final int maxCz = cellCoord(maxZ);
+        int count = 0;
+
+        for (int cz = minCz; cz <= maxCz; cz++) {
+            for (int cx = minCx; cx <= maxCx; cx++) {
+                for (Entry e = mCells[cellIndex(cx, cz)]; e != null; e = e.next) {
+                    if (type != null && e.obj.getType() != type) {
+                        continue;
+                    }
+
+                    if (e.x >= minX && e.x <= maxX && e.y >= minY &&
+                            e.y <= maxY && e.z >= minZ && e.z <= maxZ) {
+                        dest.add(e.obj);
+                        count++;
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Fills dest with the objects of the given type that are nearest to the
+     * given point, nearest first. The number of objects requested is the
+     * length of dest. If type is null, objects of all types are included.
+     * @return The number of objects written to dest, which is less than
+     *  dest.length if the index doesn't contain enough matching objects
+     */
+    public int getNearest(float x, float y, float z, ObjectType type,
+            ArtemisObject[] dest) {
+        final int k = dest.length;
+
+        if (k == 0) {
+            return 0;
+        }
+
+        float[] dist = mScratchDist.get();
+
+        if (dist == null || dist.length < k) {
+            dist = new float[k];
+            mScratchDist.set(dist);
+        }
+
+        final int originCx = cellCoord(x);
+        final int originCz = cellCoord(z);
+        int found = 0;
+
+        // search outward in square rings of cells around the origin cell
+        for (int ring = 0; ring < mCellsPerSide; ring++) {
+            final int minCx = originCx - ring;
+            final int maxCx = originCx + ring;
+            final int minCz = originCz - ring;
+            final int maxCz = originCz + ring;
+
+            for (int cz = minCz; cz <= maxCz; cz++) {
+                if (cz < 0 || cz >= mCellsPerSide) {
+                    continue;
+                }
+
+                final boolean edgeRow = cz == minCz || cz == maxCz;
+
+                for (int cx = minCx; cx <= maxCx; cx++) {
+                    if (cx < 0 || cx >= mCellsPerSide) {
+                        continue;
+                    }
+
+                    if (!edgeRow && cx != minCx && cx != maxCx) {
+                        cx = maxCx - 1; // interior already visited
+                        continue;
+                    }
+
+                    for (Entry e = mCells[cellIndex(cx, cz)]; e != null; e = e.next) {
+                        if (type != null && e.obj.getType() != type) {
+                            continue;
+                        }
+
+                        found = insertNearest(e, distanceSq(e, x, y, z),
+                                dest, dist, found);
+                    }
+                }
+            }
+
+            if (found == k) {
+                // anything in the next ring is at least this far away
+                final float reach = ring * mCellSize;
+
+                if (dist[k - 1] <= reach * reach) {
+                    break;
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Inserts the given entry into the sorted dest/dist arrays if it is
+     * nearer than the farthest entry kept so far.
+     */
+    private static int insertNearest(Entry e, float d, ArtemisObject[] dest,
+            float[] dist, int found) {
+        final int k = dest.length;
+        int i = found < k ? found : k - 1;
+
+        if (found == k && d >= dist[i]) {
+            return found;
+        }
+
+        while (i > 0 && dist[i - 1] > d) {
+            dest[i] = dest[i - 1];
+            dist[i] = dist[i - 1];
+            i--;
+        }
+
+        dest[i] = e.obj;
+        dist[i] = d;
+        return found < k ? found + 1 : found;
+    }
+
+    private static float distanceSq(Entry e, float x, float y, float z) {
+        final float dx = e.x - x;
+        final float dy = e.y - y;
+        final float dz = e.z - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private int cellCoord(float v) {
+        int c = (int) (v / mCellSize);
+
+        if (c < 0 || v < 0) {
+            return 0;
+        }
+
+        return c >= mCellsPerSide ? mCellsPerSide - 1 : c;
+    }
+
+    private int cellIndex(int cx, int cz) {
+        return cz * mCellsPerSide + cx;
+    }
+
+    private void link(Entry entry, int cell) {
+        Entry head = mCells[cell];
+        entry.prev = null;
+        entry.next = head;
+
+        if (head != null) {
+            head.prev = entry;
+        }
+
+        mCells[cell] = entry;
+        entry.cell = cell;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.cell == -1) {
+            return;
+        }
+
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            mCells[entry.cell] = entry.next;
+        }
+
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+
+        entry.prev = null;
+        entry.next = null;
+        entry.cell = -1;
+    }
+}
@@ -2,22 +2,27 @@ package net.dhleong.acl.world;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.dhleong.acl.enums.ObjectType;
 import net.dhleong.acl.enums.ShipSystem;
+import net.dhleong.acl.iface.DisconnectEvent;
 import net.dhleong.acl.iface.Listener;
+import net.dhleong.acl.protocol.core.GameOverPacket;
 import net.dhleong.acl.protocol.core.eng.EngGridUpdatePacket;
 import net.dhleong.acl.protocol.core.eng.EngGridUpdatePacket.DamconStatus;
-import net.dhleong.acl.protocol.core.eng.EngGridUpdatePacket.GridDamage;
 import net.dhleong.acl.protocol.core.world.DestroyObjectPacket;
 import net.dhleong.acl.protocol.core.world.IntelPacket;
 import net.dhleong.acl.protocol.core.world.ObjectUpdatingPacket;
 import net.dhleong.acl.protocol.core.world.PlayerUpdatePacket;
 import net.dhleong.acl.util.GridCoord;
+import net.dhleong.acl.util.IntMap;
 import net.dhleong.acl.util.ShipSystemGrid;
 import net.dhleong.acl.util.ShipSystemGrid.GridEntry;
 
@@ -25,6 +30,23 @@ import net.dhleong.acl.util.ShipSystemGrid.GridEntry;
  * A repository of Artemis world objects. Register an instance of SystemManager
  * with the ArtemisNetworkInterface and it will keep track of all objects as
  * they're created, updated and destroyed.
+ *
+ * SystemManager is a single-writer store: only the thread that delivers
+ * packets (the receive thread) may modify it, which includes calling
+ * addObject(), setSystemGrid() and clear(). Any number of other threads (a
+ * renderer, for example) may read from it at the same time without ever
+ * taking a lock, so readers never stall the network thread. Such reads are
+ * weakly consistent: each object lookup is safe, but a reader may see some of
+ * a packet's changes and not others. A reader which needs a consistent view of
+ * the whole world should enable snapshots with setSnapshotsEnabled() and read
+ * the immutable {@link WorldSnapshot} returned by getSnapshot() instead.
+ *
+ * Grid damage and DAMCON state are kept per ship, in the ShipEngineering
+ * objects returned by getEngineering(int), each with its own writer; the grid
+ * and DAMCON methods here refer to the default ship. To monitor several ships,
+ * register the SystemManager with one connection and each ship's
+ * ShipEngineering with that ship's engineering connection, so the world itself
+ * is only stored and updated once.
  * @author dhleong
  */
 public class SystemManager {
@@ -32,6 +54,28 @@ public class SystemManager {
     public interface OnObjectCountChangeListener {
         void onObjectCountChanged(int count);
     }
+
+    /**
+     * Notified on the writer thread after each change to a stored object,
+     *  once the change is visible to readers.
+     */
+    public interface OnObjectChangeListener {
+        /**
+         * Called after the object was added or updated; obj is the stored
+         *  object, with the update applied.
+         */
+        void onObjectChanged(ArtemisObject obj);
+
+        /**
+         * Called after the object was removed.
+         */
+        void onObjectRemoved(ArtemisObject obj);
+
+        /**
+         * Called after every object was removed by clear().
+         */
+        void onObjectsCleared();
+    }
     
     private static final OnObjectCountChangeListener sDummyListener = 
             new OnObjectCountChangeListener() {
@@ -41,35 +85,72 @@ public class SystemManager {
 
     private static final boolean DEBUG = false;
     
-    private final HashMap<Integer, ArtemisObject> mObjects = 
-            new HashMap<Integer, ArtemisObject>();
+    private final IntMap<ArtemisObject> mObjects = new IntMap<ArtemisObject>();
+    private final EnumMap<ObjectType, IntMap<ArtemisObject>> mBuckets =
+            new EnumMap<ObjectType, IntMap<ArtemisObject>>(ObjectType.class);
+    private final EnumMap<ObjectType, Collection<ArtemisObject>> mBucketViews =
+            new EnumMap<ObjectType, Collection<ArtemisObject>>(ObjectType.class);
+    private final IntMap<ArtemisObject> mSelectable = new IntMap<ArtemisObject>();
+    private final SpatialIndex mSpatialIndex = new SpatialIndex();
+    private final PositionHistory mHistory = new PositionHistory();
     private OnObjectCountChangeListener mListener = sDummyListener;
+    private final List<OnObjectChangeListener> mChangeListeners =
+            new CopyOnWriteArrayList<OnObjectChangeListener>();
 
-    private HashMap<GridCoord, Float> mGridDamage;
-    private ShipSystemGrid mGrid;
-    
-    private final HashMap<Integer, DamconStatus> mDamcons =
-            new HashMap<Integer, DamconStatus>();
+    private final ShipEngineering[] mEngineering = new ShipEngineering[Artemis.SHIP_COUNT];
+    private volatile int mDefaultShip;
     
     private final ArtemisPlayer[] mPlayers = new ArtemisPlayer[Artemis.SHIP_COUNT];
+
+    // snapshot bookkeeping; only touched by the writer
+    private boolean mSnapshotsEnabled;
+    private final IntMap<ArtemisObject> mDirty = new IntMap<ArtemisObject>();
+    private final List<ArtemisObject> mDirtyList = new ArrayList<ArtemisObject>();
+    private int[] mRemoved = new int[16];
+    private int mRemovedCount;
+    private volatile WorldSnapshot mSnapshot;
     
     public SystemManager() {
+        for (int i = 0; i < mEngineering.length; i++) {
+            mEngineering[i] = new ShipEngineering(this, i);
+        }
+
+        for (ObjectType type : ObjectType.values()) {
+            IntMap<ArtemisObject> bucket = new IntMap<ArtemisObject>();
+            mBuckets.put(type, bucket);
+            mBucketViews.put(type, Collections.unmodifiableCollection(bucket.values()));
+        }
+
         clear();
     }
     
     /** Manually add an obj to the system */
     public void addObject(ArtemisObject obj) {
-        synchronized(this) {
-            mObjects.put(obj.getId(), obj);
+        putObject(obj);
+
+        if (obj instanceof ArtemisPlayer) {
+            ArtemisPlayer plr = (ArtemisPlayer) obj;
+
+            if (plr.getShipIndex() >= 0) {
+                mPlayers[plr.getShipIndex()] = plr;
+            }
         }
 
+        publishSnapshotIfEnabled();
+        fireChanged(obj);
         mListener.onObjectCountChanged(mObjects.size());
     }
 
     @Listener
     public void onPacket(DestroyObjectPacket pkt) {
-        synchronized(this) {
-            mObjects.remove(pkt.getTarget());
+        ArtemisObject removed = removeObject(pkt.getTarget());
+
+        publishSnapshotIfEnabled();
+
+        if (removed != null) {
+            for (OnObjectChangeListener listener : mChangeListeners) {
+                listener.onObjectRemoved(removed);
+            }
         }
 
         // signal change
@@ -78,8 +159,12 @@ public class SystemManager {
 
             if ("Artemis".equals(last.getName())) {
                 // special (hack?) case;
-                //  this is actually the end of the game
-                clear();
+                //  this is actually the end of the game. The default
+                //  ship's ShipEngineering is written on this thread, so
+                //  reset it here; every other ship's is reset by its own
+                //  connection, on the GameOverPacket.
+                clearWorld();
+                getEngineering().clear();
                 mListener.onObjectCountChanged(0);
                 return;
             }
@@ -89,28 +174,31 @@ public class SystemManager {
         return;
     }
 
+    /**
+     * Applies the grid update to the default ship; see
+     *  {@link #setDefaultShipIndex(int)}.
+     */
     @Listener
     public void onPacket(EngGridUpdatePacket pkt) {
-        // this ONLY goes to the appropriate ship's engineer console
-        List<GridDamage> damages = pkt.getDamage();
+        getEngineering().onPacket(pkt);
+    }
 
-        if (damages.size() > 0 && mGridDamage != null) {
-            for (GridDamage d : damages) {
-                mGridDamage.put(d.coord, d.damage);
-            }
-        }
-        
-        // update/init damcon teams
-        for (DamconStatus s : pkt.getDamcons()) {
-            final int team = s.getTeamNumber();
-
-            if (mDamcons.containsKey(team)) {
-                DamconStatus old = mDamcons.get(team);
-                old.updateFrom(s);
-            } else {
-                mDamcons.put(team, s);
-            }
-        }
+    /**
+     * Resets the default ship's grid and DAMCON state, along with its grid
+     *  updates; see {@link #onPacket(EngGridUpdatePacket)}.
+     */
+    @Listener
+    public void onPacket(GameOverPacket pkt) {
+        getEngineering().onPacket(pkt);
+    }
+
+    /**
+     * Resets the default ship's grid and DAMCON state when this connection
+     *  is lost; see {@link #onPacket(GameOverPacket)}.
+     */
+    @Listener
+    public void onDisconnect(DisconnectEvent event) {
+        getEngineering().onDisconnect(event);
     }
 
     @Listener
@@ -118,11 +206,14 @@ public class SystemManager {
         for (ArtemisObject p : pkt.getObjects()) {
             updateOrCreate(p);
         }
+
+        publishSnapshotIfEnabled();
     }
 
     @Listener
     public void onPacket(PlayerUpdatePacket pkt) {
         updateOrCreate(pkt.getPlayer());
+        publishSnapshotIfEnabled();
     }
 
     @Listener
@@ -131,6 +222,10 @@ public class SystemManager {
 
     	if (npc != null) {
     		npc.setIntel(pkt.getIntel());
+    		markDirty(npc);
+
+    		publishSnapshotIfEnabled();
+    		fireChanged(npc);
     	}
     }
 
@@ -140,6 +235,12 @@ public class SystemManager {
 
         if (p != null) {
             p.updateFrom(o);
+            mSpatialIndex.update(p);
+            markDirty(p);
+
+            if (PositionHistory.hasMotion(o)) {
+                mHistory.record(p, System.nanoTime());
+            }
             
             if (o instanceof ArtemisPlayer) {
                 // just in case we get the ship number AFTER
@@ -151,13 +252,12 @@ public class SystemManager {
                     mPlayers[plr.getShipIndex()] = (ArtemisPlayer) p;
                 }
             }
-            
+
+            fireChanged(p);
             return false;
         }
 
-        synchronized(this) {
-            mObjects.put(o.getId(), o);
-        }
+        putObject(o);
         
         if (o instanceof ArtemisPlayer) {
             ArtemisPlayer plr = (ArtemisPlayer) o;
@@ -166,6 +266,8 @@ public class SystemManager {
                 mPlayers[plr.getShipIndex()] = plr;
             }
         }
+
+        fireChanged(o);
         
         if (DEBUG && o.getName() == null) {
             throw new IllegalStateException("Creating " + p +" without name! " + 
@@ -176,19 +278,137 @@ public class SystemManager {
         return true;
     }
 
-    public synchronized void getAll(List<ArtemisObject> dest) {
-        dest.addAll(mObjects.values());
+    /**
+     * Stores the given object and files it in the type bucket and spatial
+     *  index.
+     */
+    private void putObject(ArtemisObject obj) {
+        final int id = obj.getId();
+        ArtemisObject old = mObjects.put(id, obj);
+
+        if (old != null && old.getType() != obj.getType()) {
+            mBuckets.get(old.getType()).remove(id);
+        }
+
+        mBuckets.get(obj.getType()).put(id, obj);
+
+        // tentative
+        if (obj instanceof ArtemisGenericObject) {
+            mSelectable.remove(id);
+        } else {
+            mSelectable.put(id, obj);
+        }
+
+        mSpatialIndex.update(obj);
+        mHistory.record(obj, System.nanoTime());
+        markDirty(obj);
     }
 
-    public synchronized void getAllSelectable(List<ArtemisObject> dest) {
-        for (ArtemisObject obj : mObjects.values()) {
-            // tentative
-            if (!(obj instanceof ArtemisGenericObject)) {
-                dest.add(obj);
+    /**
+     * Removes the object with the given ID from storage, its type bucket and
+     *  the spatial index.
+     * @return The removed object, or null if there was none
+     */
+    private ArtemisObject removeObject(int objId) {
+        ArtemisObject old = mObjects.remove(objId);
+
+        if (old != null) {
+            mBuckets.get(old.getType()).remove(objId);
+            mSelectable.remove(objId);
+            mSpatialIndex.remove(objId);
+            mHistory.remove(objId);
+            markRemoved(objId);
+        }
+
+        return old;
+    }
+
+    private void fireChanged(ArtemisObject obj) {
+        for (OnObjectChangeListener listener : mChangeListeners) {
+            listener.onObjectChanged(obj);
+        }
+    }
+
+    private void markDirty(ArtemisObject obj) {
+        if (mSnapshotsEnabled) {
+            mDirty.put(obj.getId(), obj);
+        }
+    }
+
+    private void markRemoved(int objId) {
+        if (!mSnapshotsEnabled) {
+            return;
+        }
+
+        mDirty.remove(objId);
+
+        if (mRemovedCount == mRemoved.length) {
+            mRemoved = Arrays.copyOf(mRemoved, mRemovedCount * 2);
+        }
+
+        mRemoved[mRemovedCount++] = objId;
+    }
+
+    /**
+     * Turns the publication of {@link WorldSnapshot}s on or off. While
+     *  enabled, a new snapshot is published after every packet that changes
+     *  any object; the cost of doing so is proportional to the number of
+     *  objects changed. Must be called from the writer thread.
+     */
+    public void setSnapshotsEnabled(boolean enabled) {
+        if (enabled == mSnapshotsEnabled) {
+            return;
+        }
+
+        mSnapshotsEnabled = enabled;
+        mDirty.clear();
+        mRemovedCount = 0;
+
+        if (enabled) {
+            // the first snapshot has to include everything
+            for (ArtemisObject obj : mObjects.values()) {
+                mDirty.put(obj.getId(), obj);
             }
+
+            mSnapshot = WorldSnapshot.EMPTY;
+            publishSnapshot();
+        } else {
+            mSnapshot = null;
+        }
+    }
+
+    /**
+     * Returns the most recently published snapshot of the world, or null if
+     *  snapshots are not enabled. The snapshot never changes, so it may be
+     *  held and read by any thread for as long as needed.
+     * @see #setSnapshotsEnabled(boolean)
+     */
+    public WorldSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    private void publishSnapshotIfEnabled() {
+        if (mSnapshotsEnabled && (!mDirty.isEmpty() || mRemovedCount > 0)) {
+            publishSnapshot();
         }
     }
 
+    private void publishSnapshot() {
+        mDirtyList.addAll(mDirty.values());
+        mSnapshot = mSnapshot.next(mDirtyList, mRemoved, mRemovedCount);
+        mDirtyList.clear();
+        mDirty.clear();
+        mRemovedCount = 0;
+    }
+
+    public void getAll(List<ArtemisObject> dest) {
+        dest.addAll(mObjects.values());
+    }
+
+    public void getAllSelectable(List<ArtemisObject> dest) {
+        dest.addAll(mSelectable.values());
+    }
+
     /**
      * Add objects of the given type to the given list 
      * 
@@ -196,17 +416,28 @@ public class SystemManager {
      * @param type One of the ArtemisObject#TYPE_* constants
      * @return The number of objects added to "dest"
      */
-    public synchronized int getObjects(List<ArtemisObject> dest, ObjectType type) {
-        int count = 0;
+    public int getObjects(List<ArtemisObject> dest, ObjectType type) {
+        // the bucket may change size while we copy it
+        final int before = dest.size();
+        dest.addAll(mBuckets.get(type).values());
+        return dest.size() - before;
+    }
 
-        for (ArtemisObject obj : mObjects.values()) {
-            if (obj.getType() == type) {
-                dest.add(obj);
-                count++;
-            }
-        }
+    /**
+     * Get the number of objects of the given type
+     */
+    public int getObjectCount(ObjectType type) {
+        return mBuckets.get(type).size();
+    }
 
-        return count;
+    /**
+     * Get a read-only, live view of the objects of the given type. Nothing
+     *  is copied, so this is the cheapest way to walk one type of object.
+     *  Iterating it is safe while packets are being applied; the iteration
+     *  is weakly consistent.
+     */
+    public Collection<ArtemisObject> getObjectsView(ObjectType type) {
+        return mBucketViews.get(type);
     }
 
     /**
@@ -223,6 +454,75 @@ public class SystemManager {
         return objs;
     }
 
+    /**
+     * Add objects of the given type which lie within radius of the given
+     *  point to the given list. Pass a null type to include objects of
+     *  every type.
+     *
+     * @return The number of objects added to "dest"
+     */
+    public int getObjectsWithin(List<ArtemisObject> dest,
+            float x, float y, float z, float radius, ObjectType type) {
+        return mSpatialIndex.getWithin(x, y, z, radius, type, dest);
+    }
+
+    /**
+     * Add objects of the given type which lie within the given axis-aligned
+     *  box to the given list. Pass a null type to include objects of every
+     *  type.
+     *
+     * @return The number of objects added to "dest"
+     */
+    public int getObjectsInBox(List<ArtemisObject> dest,
+            float minX, float minY, float minZ,
+            float maxX, float maxY, float maxZ, ObjectType type) {
+        return mSpatialIndex.getInBox(minX, minY, minZ, maxX, maxY, maxZ,
+                type, dest);
+    }
+
+    /**
+     * Fill the given array with the objects of the given type nearest to
+     *  the given point, nearest first; the length of the array is the
+     *  number of objects wanted. Pass a null type to include objects of
+     *  every type.
+     *
+     * @return The number of objects written to "dest"
+     */
+    public int getNearestObjects(ArtemisObject[] dest,
+            float x, float y, float z, ObjectType type) {
+        return mSpatialIndex.getNearest(x, y, z, type, dest);
+    }
+
+    /**
+     * Get the recent position history of every object, as received from
+     *  the server.
+     */
+    public PositionHistory getPositionHistory() {
+        return mHistory;
+    }
+
+    /**
+     * Write the interpolated position of the given object at the given
+     *  System.nanoTime() into "out", in the layout described by
+     *  {@link PositionHistory}.
+     *
+     * @return true if the object has any position history
+     */
+    public boolean interpolate(int objId, long time, float[] out) {
+        return mHistory.interpolate(objId, time, out, 0);
+    }
+
+    /**
+     * Interpolate the positions of all objects at the given System.nanoTime()
+     *  into "out", {@link PositionHistory#STRIDE} floats per object, writing
+     *  the matching object IDs into "ids".
+     *
+     * @return The number of objects written
+     */
+    public int interpolateAll(long time, int[] ids, float[] out) {
+        return mHistory.interpolateAll(time, ids, out);
+    }
+
     public ArtemisObject getObject(int objId) {
         return mObjects.get(objId);
     }
@@ -244,6 +544,41 @@ public class SystemManager {
         return mPlayers[shipIndex];
     }
     
+    /**
+     * Get the engineering state of the ship with the given index. Register
+     *  it with that ship's connection to track the ship's grid and DAMCON
+     *  teams.
+     */
+    public ShipEngineering getEngineering(int shipIndex) {
+        if (shipIndex < 0 || shipIndex >= mEngineering.length) {
+            throw new IllegalArgumentException("Invalid ship index " + shipIndex);
+        }
+
+        return mEngineering[shipIndex];
+    }
+
+    /**
+     * Get the engineering state of the default ship, which is the one
+     *  updated by EngGridUpdatePackets delivered to this SystemManager and
+     *  read by its grid and DAMCON methods.
+     */
+    public ShipEngineering getEngineering() {
+        return mEngineering[mDefaultShip];
+    }
+
+    /**
+     * Sets which ship's engineering state the grid and DAMCON methods of
+     *  this SystemManager refer to; the default is ship 0.
+     */
+    public void setDefaultShipIndex(int shipIndex) {
+        getEngineering(shipIndex); // validates
+        mDefaultShip = shipIndex;
+    }
+
+    public int getDefaultShipIndex() {
+        return mDefaultShip;
+    }
+    
     /**
      * Get the status of the given Damcon Team
      *  if we have it, else null. It would be
@@ -257,19 +592,23 @@ public class SystemManager {
      * @return
      */
     public DamconStatus getDamcon(int teamNumber) {
-        return mDamcons.get(teamNumber);
+        return getEngineering().getDamcon(teamNumber);
+    }
+
+    /**
+     * Get the status of every Damcon Team we've heard about
+     * @return A read-only view, which reflects later updates
+     */
+    public Collection<DamconStatus> getDamcons() {
+        return getEngineering().getDamcons();
     }
     
     public GridEntry getGridAt(int x, int y, int z) {
-        return getGridAt(GridCoord.getInstance(x, y, z));
+        return getEngineering().getGridAt(x, y, z);
     }
 
     public GridEntry getGridAt(GridCoord key) {
-        if (mGrid == null) {
-            throw new IllegalStateException("SystemManager must have a ShipSystemGrid");
-        }
-        
-        return mGrid.getGridAt(key);
+        return getEngineering().getGridAt(key);
     }
 
     /**
@@ -281,7 +620,7 @@ public class SystemManager {
      * @return
      */
     public ShipSystem getSystemTypeAt(int x, int y, int z) {
-        return mGrid.getSystemTypeAt(GridCoord.getInstance(x, y, z));
+        return getEngineering().getSystemTypeAt(x, y, z);
     }
 
     /**
@@ -292,22 +631,7 @@ public class SystemManager {
      *  yet have a ShipSystemGrid
      */
     public float getHealthOfSystem(ShipSystem sys) {
-        if (mGrid == null) {
-            throw new IllegalStateException("SystemManager must have a ShipSystemGrid");
-        }
-        
-        final float total = mGrid.getSystemCount(sys);
-        float current = total;
-
-        for (GridCoord c : mGrid.getCoordsFor(sys)) {
-            final float damage = getGridDamageAt(c);
-        
-            if (damage != -1) {
-                current -= damage;
-            }
-        }
-        
-        return current / total;
+        return getEngineering().getHealthOfSystem(sys);
     }
     
     /**
@@ -315,7 +639,7 @@ public class SystemManager {
      * @param type
      * @return null if no such object or if name is null
      */
-    public synchronized ArtemisObject getObjectByName(final String name) {
+    public ArtemisObject getObjectByName(final String name) {
         if (name == null) {
             return null;
         }
@@ -330,12 +654,31 @@ public class SystemManager {
     }
     
     public boolean hasSystemGrid() {
-        return mGrid != null;
+        return getEngineering().hasSystemGrid();
+    }
+
+    /**
+     * @return The current ship's grid, or null if it hasn't been set
+     */
+    public ShipSystemGrid getSystemGrid() {
+        return getEngineering().getSystemGrid();
     }
 
     public void setOnObjectCountChangedListener(OnObjectCountChangeListener listener) {
         mListener = (listener == null) ? sDummyListener : listener;
     }
+
+    /**
+     * Adds a listener to be told about every change to the stored objects.
+     *  Listeners are called on the writer thread, so they should be quick.
+     */
+    public void addOnObjectChangeListener(OnObjectChangeListener listener) {
+        mChangeListeners.add(listener);
+    }
+
+    public void removeOnObjectChangeListener(OnObjectChangeListener listener) {
+        mChangeListeners.remove(listener);
+    }
     
     /**
      * Get the damage at a specific grid coord
@@ -344,15 +687,7 @@ public class SystemManager {
      *  if we don't have the any entry for the coord
      */
     public float getGridDamageAt(GridCoord coord) {
-        if (mGridDamage == null) {
-            return -1f;
-        }
-        
-        if (mGridDamage.containsKey(coord)) {
-            return mGridDamage.get(coord);
-        }
-        
-        return -1f;
+        return getEngineering().getGridDamageAt(coord);
     }
 
     /**
@@ -363,11 +698,15 @@ public class SystemManager {
      * @return
      */
     public float getGridDamageAt(int x, int y, int z) {
-        return getGridDamageAt(GridCoord.getInstance(x, y, z));
+        return getEngineering().getGridDamageAt(x, y, z);
     }
 
+    /**
+     * Get the damage of every grid coord we have an entry for. This builds
+     *  a new Map on each call, so prefer getGridDamageAt() where possible.
+     */
     public Set<Entry<GridCoord, Float>> getGridDamages() {
-        return mGridDamage.entrySet();
+        return getEngineering().getGridDamages();
     }
 
     /**
@@ -375,29 +714,48 @@ public class SystemManager {
      * @param grid
      */
     public void setSystemGrid(ShipSystemGrid grid) {
-        if (mGridDamage == null) {
-            mGridDamage = new HashMap<GridCoord, Float>();
-        } else {
-            mGridDamage.clear(); // just in case
+        getEngineering().setSystemGrid(grid);
+    }
+
+    /**
+     * Forgets all objects, along with the grid and DAMCON state of every
+     *  ship. Call this while no packets are being delivered for any ship.
+     */
+    public void clear() {
+        clearWorld();
+
+        for (ShipEngineering eng : mEngineering) {
+            eng.clear();
         }
-        mGrid = grid;
-        
-        // fill some default values
-        for (GridCoord c : grid.getCoords()) {
-            mGridDamage.put(c, 0f); // default
+    }
+
+    /**
+     * Forgets all objects, leaving each ShipEngineering to its own writer.
+     */
+    private void clearWorld() {
+        clearObjects();
+
+        if (mSnapshotsEnabled) {
+            mDirty.clear();
+            mRemovedCount = 0;
+            mSnapshot = mSnapshot.cleared();
+        }
+
+        for (OnObjectChangeListener listener : mChangeListeners) {
+            listener.onObjectsCleared();
         }
     }
 
-    public synchronized void clear() {
+    private void clearObjects() {
         mObjects.clear();
-        Arrays.fill(mPlayers, null);
-        
-        mGrid = null;
+        mSelectable.clear();
+        mSpatialIndex.clear();
+        mHistory.clear();
 
-        if (mGridDamage != null) {
-            mGridDamage.clear();
+        for (IntMap<ArtemisObject> bucket : mBuckets.values()) {
+            bucket.clear();
         }
-        
-        mDamcons.clear();
+
+        Arrays.fill(mPlayers, null);
     }
 }
@@ -0,0 +1,415 @@
+package net.dhleong.acl.world;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import net.dhleong.acl.enums.EliteAbility;
+import net.dhleong.acl.enums.ShipSystem;
+import net.dhleong.acl.util.BoolState;
+import net.dhleong.acl.util.IntMap;
+import net.dhleong.acl.vesseldata.Vessel;
+import net.dhleong.acl.vesseldata.VesselTactics;
+
+/**
+ * Keeps a ranking of the NPC ships by how much of a threat each one is to
+ * each player ship, updated as the objects change. Register it with the
+ * SystemManager before connecting:
+ *
+ * <pre>
+ * ThreatEngine threats = new ThreatEngine();
+ * systemManager.addOnObjectChangeListener(threats);
+ * </pre>
+ *
+ * When an NPC changes, only its score against each player ship is
+ * recomputed. When a player ship moves, only that ship's row is, and only
+ * once the ship is {@link #RESCORE_DISTANCE} or more from where the row was
+ * last rescored, so that a ship drifting a little every tick doesn't cost a
+ * pass over every NPC each time; the threats' distances may be that far out
+ * of date in between. Each score is a few lookups in the NPC's
+ * {@link VesselTactics} plus one atan2, and re-ranking an NPC costs O(log n),
+ * so getTopThreats() costs O(N) for the top N no matter how many NPCs there
+ * are.
+ *
+ * A threat's score estimates the damage per second the NPC can do to the
+ * ship: the beam DPS it can bring to bear right now, given its heading and
+ * the distance, plus its full beam and torpedo potential scaled down by how
+ * far outside its engagement range the ship is. Damage to the NPC's beams
+ * and torpedoes reduces this; low shields reduce it by up to half, as the
+ * NPC won't last as long; and each elite ability multiplies it by that
+ * ability's weight. Friendly and surrendered NPCs, and NPCs whose vessel is
+ * unknown, are not ranked.
+ *
+ * The engine is updated on the SystemManager's writer thread and may be
+ * queried from any thread; queries and updates are synchronized, and both
+ * are short.
+ */
+public class ThreatEngine implements SystemManager.OnObjectChangeListener {
+
+    /**
+     * An NPC's threat to one player ship. Immutable; a new Threat replaces
+     *  the old one whenever the score changes.
+     */
+    public static final class Threat {
+        private final ArtemisNpc mNpc;
+        private final int mShipIndex;
+        private final float mScore;
+        private final float mDistance;
+
+        private Threat(ArtemisNpc npc, int shipIndex, float score, float distance) {
+            mNpc = npc;
+            mShipIndex = shipIndex;
+            mScore = score;
+            mDistance = distance;
+        }
+
+        public ArtemisNpc getNpc() {
+            return mNpc;
+        }
+
+        public int getShipIndex() {
+            return mShipIndex;
+        }
+
+        /**
+         * The estimated damage per second, weighted; see {@link ThreatEngine}.
+         */
+        public float getScore() {
+            return mScore;
+        }
+
+        /**
+         * The distance between the NPC and the ship when scored.
+         */
+        public float getDistance() {
+            return mDistance;
+        }
+
+        @Override
+        public String toString() {
+            return mNpc.getName() + " -> ship " + mShipIndex + ": " + mScore;
+        }
+    }
+
+    /**
+     * The default DPS that each torpedo tube is considered to be worth.
+     */
+    public static final float DEFAULT_TORPEDO_WEIGHT = 2;
+
+    /**
+     * The default weight of each elite ability.
+     */
+    public static final float DEFAULT_ELITE_WEIGHT = 1.25f;
+
+    /**
+     * How far a player ship must move before its threats are rescored.
+     */
+    public static final float RESCORE_DISTANCE = 50;
+
+    private static final EliteAbility[] ABILITIES = EliteAbility.values();
+
+    // highest score first, ties broken by ID so that no two threats are equal
+    private static final Comparator<Threat> RANKING = new Comparator<Threat>() {
+        @Override
+        public int compare(Threat a, Threat b) {
+            final int c = Float.compare(b.mScore, a.mScore);
+
+            if (c != 0) {
+                return c;
+            }
+
+            final int aId = a.mNpc.getId();
+            final int bId = b.mNpc.getId();
+            return aId < bId ? -1 : (aId == bId ? 0 : 1);
+        }
+    };
+
+    /**
+     * The threats to one player ship.
+     */
+    private static class Row {
+        private ArtemisPlayer player;
+        // where the player was when every NPC was last rescored
+        private float scoredX = Float.MIN_VALUE;
+        private float scoredZ = Float.MIN_VALUE;
+        private final TreeSet<Threat> ranked = new TreeSet<Threat>(RANKING);
+        private final IntMap<Threat> byNpc = new IntMap<Threat>();
+
+        /**
+         * Returns true if the player has moved far enough to rescore the
+         *  row, recording its position if so.
+         */
+        private boolean moved() {
+            final float x = player.getX();
+            final float z = player.getZ();
+
+            if (isSpecified(scoredX) && isSpecified(x)) {
+                final float dx = x - scoredX;
+                final float dz = z - scoredZ;
+
+                if (dx * dx + dz * dz < RESCORE_DISTANCE * RESCORE_DISTANCE) {
+                    return false;
+                }
+            }
+
+            scoredX = x;
+            scoredZ = z;
+            return true;
+        }
+
+        private void clear() {
+            player = null;
+            scoredX = Float.MIN_VALUE;
+            scoredZ = Float.MIN_VALUE;
+            ranked.clear();
+            byNpc.clear();
+        }
+    }
+
+    private final Row[] mRows = new Row[Artemis.SHIP_COUNT];
+    private final IntMap<ArtemisNpc> mNpcs = new IntMap<ArtemisNpc>();
+    private final float[] mEliteWeights = new float[ABILITIES.length];
+    private float mTorpedoWeight = DEFAULT_TORPEDO_WEIGHT;
+
+    public ThreatEngine() {
+        for (int i = 0; i < mRows.length; i++) {
+            mRows[i] = new Row();
+        }
+
+        Arrays.fill(mEliteWeights, DEFAULT_ELITE_WEIGHT);
+    }
+
+    /**
+     * Sets how much having the given elite ability multiplies an NPC's
+     *  threat. Takes effect as NPCs are next scored.
+     */
+    public synchronized void setEliteWeight(EliteAbility ability, float weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Invalid weight: " + weight);
+        }
+
+        mEliteWeights[ability.ordinal()] = weight;
+    }
+
+    /**
+     * Sets the DPS that each torpedo tube is considered to be worth. Takes
+     *  effect as NPCs are next scored.
+     */
+    public synchronized void setTorpedoWeight(float weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Invalid weight: " + weight);
+        }
+
+        mTorpedoWeight = weight;
+    }
+
+    /**
+     * Adds the biggest threats to the given player ship to dest, biggest
+     *  first.
+     * @return The number of threats added, which is at most n
+     */
+    public synchronized int getTopThreats(int shipIndex, int n, List<Threat> dest) {
+        Iterator<Threat> iter = getRow(shipIndex).ranked.iterator();
+        int count = 0;
+
+        while (count < n && iter.hasNext()) {
+            dest.add(iter.next());
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the given NPC's threat to the given player ship, or null if
+     *  it isn't ranked.
+     */
+    public synchronized Threat getThreat(int shipIndex, int npcId) {
+        return getRow(shipIndex).byNpc.get(npcId);
+    }
+
+    /**
+     * Returns the number of NPCs ranked against the given player ship.
+     */
+    public synchronized int getThreatCount(int shipIndex) {
+        return getRow(shipIndex).ranked.size();
+    }
+
+    @Override
+    public synchronized void onObjectChanged(ArtemisObject obj) {
+        if (obj instanceof ArtemisNpc) {
+            ArtemisNpc npc = (ArtemisNpc) obj;
+            mNpcs.put(npc.getId(), npc);
+
+            for (Row row : mRows) {
+                if (row.player != null) {
+                    rescore(row, npc);
+                }
+            }
+        } else if (obj instanceof ArtemisPlayer) {
+            ArtemisPlayer player = (ArtemisPlayer) obj;
+            final int index = player.getShipIndex();
+
+            if (index < 0 || index >= mRows.length) {
+                return;
+            }
+
+            Row row = mRows[index];
+
+            if (row.player != player) {
+                row.clear();
+                row.player = player;
+            }
+
+            if (!row.moved()) {
+                return;
+            }
+
+            for (ArtemisNpc npc : mNpcs.values()) {
+                rescore(row, npc);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onObjectRemoved(ArtemisObject obj) {
+        if (obj instanceof ArtemisNpc) {
+            final int id = obj.getId();
+            mNpcs.remove(id);
+
+            for (Row row : mRows) {
+                Threat old = row.byNpc.remove(id);
+
+                if (old != null) {
+                    row.ranked.remove(old);
+                }
+            }
+        } else if (obj instanceof ArtemisPlayer) {
+            for (Row row : mRows) {
+                if (row.player == obj) {
+                    row.clear();
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onObjectsCleared() {
+        mNpcs.clear();
+
+        for (Row row : mRows) {
+            row.clear();
+        }
+    }
+
+    private Row getRow(int shipIndex) {
+        if (shipIndex < 0 || shipIndex >= mRows.length) {
+            throw new IllegalArgumentException("Invalid ship index " + shipIndex);
+        }
+
+        return mRows[shipIndex];
+    }
+
+    private void rescore(Row row, ArtemisNpc npc) {
+        final int id = npc.getId();
+        final Threat old = row.byNpc.get(id);
+        final ArtemisPlayer player = row.player;
+        final float dx = player.getX() - npc.getX();
+        final float dz = player.getZ() - npc.getZ();
+        final float distance = (float) Math.sqrt(dx * dx + dz * dz);
+        final float score = score(npc, player, dx, dz, distance);
+
+        if (old != null) {
+            if (old.mScore == score && old.mDistance == distance) {
+                return;
+            }
+
+            row.ranked.remove(old);
+        }
+
+        if (score > 0) {
+            Threat threat = new Threat(npc, player.getShipIndex(), score, distance);
+            row.byNpc.put(id, threat);
+            row.ranked.add(threat);
+        } else if (old != null) {
+            row.byNpc.remove(id);
+        }
+    }
+
+    /**
+     * Scores the NPC's threat to the player; 0 means it isn't one.
+     */
+    private float score(ArtemisNpc npc, ArtemisPlayer player, float dx, float dz,
+            float distance) {
+        if (npc.isEnemy() == BoolState.FALSE || npc.isSurrendered() == BoolState.TRUE) {
+            return 0;
+        }
+
+        if (!isSpecified(npc.getX()) || !isSpecified(npc.getZ())
+                || !isSpecified(player.getX()) || !isSpecified(player.getZ())) {
+            return 0;
+        }
+
+        final Vessel vessel = npc.getVessel();
+
+        if (vessel == null) {
+            return 0;
+        }
+
+        final VesselTactics tactics = vessel.getTactics();
+        final float range = Math.max(tactics.getMaxRange(), 1);
+        final float reach = range / Math.max(distance, range);
+        final float heading = npc.getHeading();
+        float beamsNow;
+
+        if (isSpecified(heading)) {
+            beamsNow = tactics.getBeamDps((float) Math.atan2(dx, dz) - heading, distance);
+        } else {
+            beamsNow = distance <= tactics.getBeamRange() ? tactics.getBeamDps() : 0;
+        }
+
+        float score = (beamsNow + tactics.getBeamDps() * reach)
+                * health(npc, ShipSystem.BEAMS)
+                + mTorpedoWeight * tactics.getTorpedoTubeCount() * reach
+                * health(npc, ShipSystem.TORPEDOES);
+
+        if (score <= 0) {
+            return 0;
+        }
+
+        final float frontMax = npc.getShieldsFrontMax();
+        final float rearMax = npc.getShieldsRearMax();
+        final float front = npc.getShieldsFront();
+        final float rear = npc.getShieldsRear();
+
+        if (frontMax >= 0 && rearMax >= 0 && frontMax + rearMax > 0
+                && isSpecified(front) && isSpecified(rear)) {
+            final float fraction = Math.max(0,
+                    Math.min(1, (front + rear) / (frontMax + rearMax)));
+            score *= 0.5f + 0.5f * fraction;
+        }
+
+        final int elite = npc.getEliteBits();
+
+        if (elite > 0) {
+            for (EliteAbility ability : ABILITIES) {
+                if (ability.on(elite)) {
+                    score *= mEliteWeights[ability.ordinal()];
+                }
+            }
+        }
+
+        return score;
+    }
+
+    private static float health(ArtemisNpc npc, ShipSystem sys) {
+        final float damage = npc.getSystemDamage(sys);
+        return damage < 0 ? 1 : Math.max(0, 1 - damage);
+    }
+
+    private static boolean isSpecified(float value) {
+        return value != Float.MIN_VALUE;
+    }
+}
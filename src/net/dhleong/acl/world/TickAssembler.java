@@ -0,0 +1,228 @@
+package net.dhleong.acl.world;
+
+import java.util.concurrent.TimeUnit;
+
+import net.dhleong.acl.iface.DisconnectEvent;
+import net.dhleong.acl.iface.Listener;
+import net.dhleong.acl.protocol.core.world.BeamFiredPacket;
+import net.dhleong.acl.protocol.core.world.DestroyObjectPacket;
+import net.dhleong.acl.protocol.core.world.ObjectUpdatingPacket;
+import net.dhleong.acl.protocol.core.world.PlayerUpdatePacket;
+
+/**
+ * The server sends each simulation tick as a burst of world update packets.
+ * TickAssembler groups those packets back into ticks and hands each one to an
+ * {@link OnTickListener} as a single {@link TickFrame}, so that a UI can
+ * redraw once per tick instead of once per packet.
+ *
+ * There is no explicit tick marker in the protocol, so a tick is considered
+ * complete when either:
+ *
+ * - no packet has arrived for longer than the gap threshold, or
+ * - an object which was already updated in the current tick is updated
+ *   again, which means the server has moved on to the next tick.
+ *
+ * The first rule can only be detected when the next packet arrives, so a UI
+ * should also call {@link #flushIfIdle()} from its render loop; that delivers
+ * the pending frame as soon as the gap has elapsed, instead of waiting for the
+ * next tick to begin.
+ *
+ * A frame is therefore usually delivered on the receive thread, by the first
+ * packet of the next tick, before any later listener sees that packet. By
+ * then the SystemManager has applied all of the frame's packets. If the
+ * TickAssembler is registered with the network interface before the
+ * SystemManager, onTick() sees the world exactly as the frame left it; if it
+ * is registered after, the SystemManager has also applied the packet that
+ * began the next tick. A frame delivered by flushIfIdle() or flush() is
+ * delivered on the calling thread, while the SystemManager may be applying
+ * later packets at the same time, so its state there is not tied to the
+ * frame; use the frame's own updates, or a {@link WorldSnapshot}, instead.
+ * A disconnect delivers the pending frame on the receive thread.
+ */
+public class TickAssembler {
+
+    public interface OnTickListener {
+        void onTick(TickFrame frame);
+    }
+
+    /**
+     * The default gap, in milliseconds, after which a tick is considered
+     *  complete. The server ticks far less often than this, while the
+     *  packets in one tick arrive within a millisecond or two of each other.
+     */
+    public static final long DEFAULT_GAP_MS = 10;
+
+    private final OnTickListener mListener;
+    private final long mGapNanos;
+
+    // guarded by this
+    private TickFrame mFrame;
+    private long mLastArrival;
+    private long mNextNumber;
+
+    public TickAssembler(OnTickListener listener) {
+        this(listener, DEFAULT_GAP_MS);
+    }
+
+    /**
+     * @param listener Receives the completed frames
+     * @param gapMs The gap between packets, in milliseconds, which
+     *  ends a tick
+     */
+    public TickAssembler(OnTickListener listener, long gapMs) {
+        if (listener == null) {
+            throw new IllegalArgumentException("No listener given");
+        }
+
+        if (gapMs <= 0) {
+            throw new IllegalArgumentException("Invalid gap: " + gapMs);
+        }
+
+        mListener = listener;
+        mGapNanos = TimeUnit.MILLISECONDS.toNanos(gapMs);
+    }
+
+    @Listener
+    public void onPacket(ObjectUpdatingPacket pkt) {
+        final long now = System.nanoTime();
+        TickFrame done;
+
+        synchronized (this) {
+            // all the objects in one packet belong to the same tick
+            boolean repeat = false;
+
+            for (ArtemisObject obj : pkt.getObjects()) {
+                repeat |= isInFrame(obj);
+            }
+
+            done = startFrame(now, repeat);
+
+            for (ArtemisObject obj : pkt.getObjects()) {
+                addUpdate(obj, now);
+            }
+        }
+
+        deliver(done);
+    }
+
+    @Listener
+    public void onPacket(PlayerUpdatePacket pkt) {
+        final long now = System.nanoTime();
+        TickFrame done;
+
+        synchronized (this) {
+            done = startFrame(now, isInFrame(pkt.getPlayer()));
+            addUpdate(pkt.getPlayer(), now);
+        }
+
+        deliver(done);
+    }
+
+    @Listener
+    public void onPacket(BeamFiredPacket pkt) {
+        final long now = System.nanoTime();
+        TickFrame done;
+
+        synchronized (this) {
+            done = startFrame(now, false);
+            mFrame.addBeam(pkt, now);
+        }
+
+        deliver(done);
+    }
+
+    @Listener
+    public void onPacket(DestroyObjectPacket pkt) {
+        final long now = System.nanoTime();
+        TickFrame done;
+
+        synchronized (this) {
+            done = startFrame(now, false);
+            mFrame.addDestroyed(pkt.getTarget(), now);
+        }
+
+        deliver(done);
+    }
+
+    @Listener
+    public void onDisconnect(DisconnectEvent event) {
+        flush();
+    }
+
+    /**
+     * Delivers the pending frame if no packet has arrived for longer than
+     *  the gap threshold. This is cheap enough to call every time a UI
+     *  draws.
+     * @return true if a frame was delivered; false otherwise
+     */
+    public boolean flushIfIdle() {
+        TickFrame done = null;
+
+        synchronized (this) {
+            if (mFrame != null && System.nanoTime() - mLastArrival > mGapNanos) {
+                done = takeFrame();
+            }
+        }
+
+        deliver(done);
+        return done != null;
+    }
+
+    /**
+     * Delivers the pending frame, if there is one, without waiting for the
+     *  tick to end.
+     */
+    public void flush() {
+        TickFrame done;
+
+        synchronized (this) {
+            done = takeFrame();
+        }
+
+        deliver(done);
+    }
+
+    /**
+     * Returns true if the current frame already contains an update for the
+     *  given object.
+     */
+    private boolean isInFrame(ArtemisObject obj) {
+        return mFrame != null && mFrame.getUpdate(obj.getId()) != null;
+    }
+
+    private void addUpdate(ArtemisObject obj, long now) {
+        mFrame.addUpdate(obj, now);
+    }
+
+    /**
+     * Makes sure there's a current frame for a packet arriving at the given
+     *  time, ending the previous frame if the gap has elapsed or if
+     *  forceNew is true. Returns the frame that was ended, if any.
+     */
+    private TickFrame startFrame(long now, boolean forceNew) {
+        TickFrame done = null;
+
+        if (mFrame != null && (forceNew || now - mLastArrival > mGapNanos)) {
+            done = takeFrame();
+        }
+
+        if (mFrame == null) {
+            mFrame = new TickFrame(mNextNumber++, now);
+        }
+
+        mLastArrival = now;
+        return done;
+    }
+
+    private TickFrame takeFrame() {
+        TickFrame frame = mFrame;
+        mFrame = null;
+        return frame;
+    }
+
+    private void deliver(TickFrame frame) {
+        if (frame != null) {
+            mListener.onTick(frame);
+        }
+    }
+}
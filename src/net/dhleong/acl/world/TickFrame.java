@@ -0,0 +1,129 @@
+package net.dhleong.acl.world;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.dhleong.acl.protocol.core.world.BeamFiredPacket;
+import net.dhleong.acl.util.IntMap;
+
+/**
+ * Everything that changed in the world during one server tick, as grouped by
+ * a {@link TickAssembler}. The objects in a frame are the partial updates that
+ * were received, not the complete objects tracked by SystemManager; use
+ * SystemManager to get the full current state of an updated object.
+ */
+public class TickFrame {
+    private final long mNumber;
+    private final long mStartTime;
+    private long mEndTime;
+    private final List<ArtemisObject> mUpdates = new ArrayList<ArtemisObject>();
+    private final IntMap<ArtemisObject> mUpdatesById = new IntMap<ArtemisObject>();
+    private final List<BeamFiredPacket> mBeams = new ArrayList<BeamFiredPacket>();
+    private int[] mDestroyed = new int[4];
+    private int mDestroyedCount;
+
+    TickFrame(long number, long startTime) {
+        mNumber = number;
+        mStartTime = startTime;
+        mEndTime = startTime;
+    }
+
+    /**
+     * The sequence number of this frame; each frame's number is one greater
+     *  than the previous frame's.
+     */
+    public long getNumber() {
+        return mNumber;
+    }
+
+    /**
+     * The System.nanoTime() at which the first packet of this frame arrived.
+     */
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /**
+     * The System.nanoTime() at which the last packet of this frame arrived.
+     */
+    public long getEndTime() {
+        return mEndTime;
+    }
+
+    /**
+     * The object updates received during this tick, in the order they
+     *  arrived.
+     */
+    public List<ArtemisObject> getUpdates() {
+        return Collections.unmodifiableList(mUpdates);
+    }
+
+    /**
+     * Returns the update received for the object with the given ID during
+     *  this tick, or null if the object wasn't updated.
+     */
+    public ArtemisObject getUpdate(int objId) {
+        return mUpdatesById.get(objId);
+    }
+
+    /**
+     * The beams fired during this tick.
+     */
+    public List<BeamFiredPacket> getBeams() {
+        return Collections.unmodifiableList(mBeams);
+    }
+
+    /**
+     * The number of objects destroyed during this tick.
+     */
+    public int getDestroyedCount() {
+        return mDestroyedCount;
+    }
+
+    /**
+     * The ID of the index'th object destroyed during this tick.
+     */
+    public int getDestroyedId(int index) {
+        if (index < 0 || index >= mDestroyedCount) {
+            throw new IndexOutOfBoundsException("Invalid index " + index);
+        }
+
+        return mDestroyed[index];
+    }
+
+    /**
+     * Returns true if nothing happened during this tick.
+     */
+    public boolean isEmpty() {
+        return mUpdates.isEmpty() && mBeams.isEmpty() && mDestroyedCount == 0;
+    }
+
+    void addUpdate(ArtemisObject obj, long time) {
+        mUpdates.add(obj);
+        mUpdatesById.put(obj.getId(), obj);
+        mEndTime = time;
+    }
+
+    void addBeam(BeamFiredPacket pkt, long time) {
+        mBeams.add(pkt);
+        mEndTime = time;
+    }
+
+    void addDestroyed(int objId, long time) {
+        if (mDestroyedCount == mDestroyed.length) {
+            int[] grown = new int[mDestroyedCount * 2];
+            System.arraycopy(mDestroyed, 0, grown, 0, mDestroyedCount);
+            mDestroyed = grown;
+        }
+
+        mDestroyed[mDestroyedCount++] = objId;
+        mEndTime = time;
+    }
+
+    @Override
+    public String toString() {
+        return "TickFrame#" + mNumber + "[updates=" + mUpdates.size() +
+                ", beams=" + mBeams.size() + ", destroyed=" + mDestroyedCount + "]";
+    }
+}
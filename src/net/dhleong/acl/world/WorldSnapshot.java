@@ -0,0 +1,181 @@
+package net.dhleong.acl.world;
+
+import java.util.Collection;
+import java.util.List;
+
+import net.dhleong.acl.enums.ObjectType;
+import net.dhleong.acl.util.PersistentIntMap;
+
+/**
+ * An immutable picture of every object in the world as of one update from
+ * the server. Snapshots are published by SystemManager; any thread may hold
+ * on to one for as long as it likes and read from it without locking, and
+ * everything it reads will be from the same moment in time.
+ *
+ * Consecutive snapshots share every object that didn't change between them,
+ * so publishing a snapshot only costs as much as the changes since the last
+ * one. The objects in a snapshot are private copies, not the live objects in
+ * SystemManager, and must not be modified.
+ */
+public class WorldSnapshot {
+    private static final ObjectType[] TYPES = ObjectType.values();
+
+    static final WorldSnapshot EMPTY = new WorldSnapshot(0,
+            PersistentIntMap.<ArtemisObject>empty(), emptyBuckets());
+
+    private final long mVersion;
+    private final PersistentIntMap<ArtemisObject> mObjects;
+    private final PersistentIntMap<ArtemisObject>[] mBuckets;
+
+    private WorldSnapshot(long version, PersistentIntMap<ArtemisObject> objects,
+            PersistentIntMap<ArtemisObject>[] buckets) {
+        mVersion = version;
+        mObjects = objects;
+        mBuckets = buckets;
+    }
+
+    /**
+     * The number of snapshots that were published before this one; newer
+     *  snapshots have higher versions.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * The number of objects in this snapshot.
+     */
+    public int size() {
+        return mObjects.size();
+    }
+
+    /**
+     * Returns the object with the given ID, or null if it didn't exist when
+     *  this snapshot was taken.
+     */
+    public ArtemisObject getObject(int objId) {
+        return mObjects.get(objId);
+    }
+
+    /**
+     * Add all objects in this snapshot to the given list
+     * @return The number of objects added to "dest"
+     */
+    public int getAll(List<ArtemisObject> dest) {
+        dest.addAll(mObjects.values());
+        return mObjects.size();
+    }
+
+    /**
+     * Add objects of the given type to the given list
+     * @return The number of objects added to "dest"
+     */
+    public int getObjects(List<ArtemisObject> dest, ObjectType type) {
+        PersistentIntMap<ArtemisObject> bucket = mBuckets[type.ordinal()];
+        dest.addAll(bucket.values());
+        return bucket.size();
+    }
+
+    /**
+     * Returns the number of objects of the given type in this snapshot.
+     */
+    public int getObjectCount(ObjectType type) {
+        return mBuckets[type.ordinal()].size();
+    }
+
+    /**
+     * Returns a read-only view of the objects of the given type, without
+     *  copying anything.
+     */
+    public Collection<ArtemisObject> getObjectsView(ObjectType type) {
+        return mBuckets[type.ordinal()].values();
+    }
+
+    /**
+     * Returns the snapshot that follows this one: the given objects (which
+     *  are live objects) are copied into it, and the given IDs are dropped
+     *  from it.
+     */
+    WorldSnapshot next(List<ArtemisObject> changed, int[] removed, int removedCount) {
+        PersistentIntMap<ArtemisObject> objects = mObjects;
+        PersistentIntMap<ArtemisObject>[] buckets = mBuckets.clone();
+
+        for (int i = 0; i < removedCount; i++) {
+            ArtemisObject old = objects.get(removed[i]);
+
+            if (old != null) {
+                objects = objects.without(removed[i]);
+                int t = old.getType().ordinal();
+                buckets[t] = buckets[t].without(removed[i]);
+            }
+        }
+
+        for (int i = 0, len = changed.size(); i < len; i++) {
+            ArtemisObject copy = copyOf(changed.get(i));
+            final int id = copy.getId();
+            ArtemisObject old = objects.get(id);
+            objects = objects.with(id, copy);
+
+            if (old != null && old.getType() != copy.getType()) {
+                int t = old.getType().ordinal();
+                buckets[t] = buckets[t].without(id);
+            }
+
+            int t = copy.getType().ordinal();
+            buckets[t] = buckets[t].with(id, copy);
+        }
+
+        return new WorldSnapshot(mVersion + 1, objects, buckets);
+    }
+
+    /**
+     * Returns an empty snapshot that follows this one.
+     */
+    WorldSnapshot cleared() {
+        return new WorldSnapshot(mVersion + 1,
+                PersistentIntMap.<ArtemisObject>empty(), emptyBuckets());
+    }
+
+    /**
+     * Returns a new object which has the same type and property values as
+     *  the given one.
+     */
+    static ArtemisObject copyOf(ArtemisObject obj) {
+        final int id = obj.getId();
+        ArtemisObject copy;
+
+        if (obj instanceof ArtemisPlayer) {
+            copy = new ArtemisPlayer(id);
+        } else if (obj instanceof ArtemisNpc) {
+            copy = new ArtemisNpc(id, null, -1);
+        } else if (obj instanceof ArtemisBase) {
+            copy = new ArtemisBase(id, null, -1);
+        } else if (obj instanceof ArtemisMesh) {
+            copy = new ArtemisMesh(id, null);
+        } else if (obj instanceof ArtemisWhale) {
+            copy = new ArtemisWhale(id, null);
+        } else if (obj instanceof ArtemisDrone) {
+            copy = new ArtemisDrone(id);
+        } else if (obj instanceof ArtemisNebula) {
+            copy = new ArtemisNebula(id);
+        } else if (obj instanceof ArtemisGenericObject) {
+            copy = new ArtemisGenericObject(id, obj.getName(), obj.getType());
+        } else {
+            throw new IllegalArgumentException("Can't copy " + obj.getClass());
+        }
+
+        copy.updateFrom(obj);
+        return copy;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static PersistentIntMap<ArtemisObject>[] emptyBuckets() {
+        PersistentIntMap<ArtemisObject>[] buckets = new PersistentIntMap[TYPES.length];
+
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = PersistentIntMap.empty();
+        }
+
+        return buckets;
+    }
+}
@@ -0,0 +1,132 @@
+package net.dhleong.acl.iface;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ConnectionType;
+import net.dhleong.acl.protocol.ArtemisPacket;
+import net.dhleong.acl.protocol.core.setup.ReadyPacket;
+import net.dhleong.acl.protocol.core.setup.WelcomePacket;
+
+import org.junit.Test;
+
+public class ArtemisProxyTest {
+	private static final int PACKETS = 9;
+
+	public static class Recorder {
+		private final CountDownLatch connected = new CountDownLatch(1);
+		private final CountDownLatch disconnected = new CountDownLatch(1);
+		private final AtomicInteger ready = new AtomicInteger();
+		private volatile DisconnectEvent.Cause cause;
+
+		@Listener
+		public void onPacket(ReadyPacket pkt) {
+			ready.incrementAndGet();
+		}
+
+		@Listener
+		public void onConnect(ConnectionSuccessEvent event) {
+			connected.countDown();
+		}
+
+		@Listener
+		public void onDisconnect(DisconnectEvent event) {
+			cause = event.getCause();
+			disconnected.countDown();
+		}
+	}
+
+	/**
+	 * Drops every third ReadyPacket, forwards the next unchanged and
+	 * replaces the one after that.
+	 */
+	private static class ReadyInterceptor implements ArtemisProxy.Interceptor<ReadyPacket> {
+		private final CountDownLatch intercepted = new CountDownLatch(PACKETS);
+		private int count;
+
+		@Override
+		public ArtemisPacket intercept(ReadyPacket pkt) {
+			final int i = count++;
+			intercepted.countDown();
+
+			switch (i % 3) {
+			case 0:
+				return null;
+			case 1:
+				return pkt;
+			default:
+				return new ReadyPacket();
+			}
+		}
+	}
+
+	@Test
+	public void testProxy() throws IOException, InterruptedException {
+		InetAddress localhost = InetAddress.getByName("127.0.0.1");
+		ServerSocket gameServer = new ServerSocket(0, 1, localhost);
+		ServerSocket proxyServer = new ServerSocket(0, 1, localhost);
+		ThreadedArtemisNetworkInterface client = null;
+		ThreadedArtemisNetworkInterface remote = null;
+
+		try {
+			client = new ThreadedArtemisNetworkInterface("127.0.0.1",
+					proxyServer.getLocalPort());
+			ArtemisProxy proxy = new ArtemisProxy(proxyServer.accept(), "127.0.0.1",
+					gameServer.getLocalPort(), 0);
+			remote = new ThreadedArtemisNetworkInterface(gameServer.accept(),
+					ConnectionType.CLIENT);
+
+			Recorder clientRecorder = new Recorder();
+			Recorder serverRecorder = new Recorder();
+			Recorder proxyRecorder = new Recorder();
+			ReadyInterceptor interceptor = new ReadyInterceptor();
+			client.addListener(clientRecorder);
+			remote.addListener(serverRecorder);
+			proxy.addListener(proxyRecorder);
+			proxy.addInterceptor(ReadyPacket.class, interceptor);
+			client.start();
+			remote.start();
+			proxy.start();
+
+			// not intercepted, so forwarded without being parsed
+			remote.send(new WelcomePacket());
+			Assert.assertTrue(clientRecorder.connected.await(5, TimeUnit.SECONDS));
+
+			for (int i = 0; i < PACKETS; i++) {
+				client.send(new ReadyPacket());
+			}
+
+			Assert.assertTrue(interceptor.intercepted.await(5, TimeUnit.SECONDS));
+			proxy.sendToServer(new ReadyPacket());
+			final int expected = PACKETS * 2 / 3 + 1;
+			final long deadline = System.currentTimeMillis() + 5000;
+
+			while (serverRecorder.ready.get() < expected && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+
+			Assert.assertEquals(expected, serverRecorder.ready.get());
+
+			proxy.stop();
+			Assert.assertFalse(proxy.isConnected());
+			Assert.assertEquals(DisconnectEvent.Cause.LOCAL_DISCONNECT, proxyRecorder.cause);
+			Assert.assertTrue(serverRecorder.disconnected.await(5, TimeUnit.SECONDS));
+		} finally {
+			if (client != null) {
+				client.stop();
+			}
+
+			if (remote != null) {
+				remote.stop();
+			}
+
+			gameServer.close();
+			proxyServer.close();
+		}
+	}
+}
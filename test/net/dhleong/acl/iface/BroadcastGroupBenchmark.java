@@ -0,0 +1,106 @@
+package net.dhleong.acl.iface;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.dhleong.acl.enums.ConnectionType;
+import net.dhleong.acl.protocol.UnknownPacket;
+
+/**
+ * Broadcasts packets to 1, 10 and 100 observers, each of which reads and
+ * discards everything it's sent, and reports how many packets per second
+ * reach every observer. Run it as a plain Java program; it is not part of
+ * the unit test suite.
+ */
+public class BroadcastGroupBenchmark {
+	private static final int[] OBSERVERS = { 1, 10, 100 };
+	private static final int PACKETS = 20000;
+	private static final int PAYLOAD_BYTES = 200;
+	private static final int PREAMBLE_BYTES = 24;
+
+	public static void main(String[] args) throws Exception {
+		System.out.println(PACKETS + " packets of " + PAYLOAD_BYTES + " bytes");
+
+		for (int observers : OBSERVERS) {
+			run(observers);
+		}
+	}
+
+	private static void run(int observers) throws IOException, InterruptedException {
+		ServerSocket server = new ServerSocket(0, observers, InetAddress.getByName("127.0.0.1"));
+		BroadcastGroup group = new BroadcastGroup(ConnectionType.SERVER);
+		final long expected = (long) PACKETS * (PREAMBLE_BYTES + PAYLOAD_BYTES);
+		final CountDownLatch done = new CountDownLatch(observers);
+
+		try {
+			for (int i = 0; i < observers; i++) {
+				final Socket skt = new Socket("127.0.0.1", server.getLocalPort());
+				group.add(server.accept(), BroadcastGroup.SlowConsumerPolicy.DISCONNECT, PACKETS);
+				Thread reader = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						drain(skt, expected);
+						done.countDown();
+					}
+				});
+				reader.setDaemon(true);
+				reader.start();
+			}
+
+			UnknownPacket pkt = new UnknownPacket(ConnectionType.SERVER, 0, new byte[PAYLOAD_BYTES]);
+			long start = System.nanoTime();
+
+			for (int i = 0; i < PACKETS; i++) {
+				group.broadcast(pkt);
+			}
+
+			long queued = System.nanoTime() - start;
+
+			if (!done.await(60, TimeUnit.SECONDS)) {
+				System.out.println("timed out");
+			}
+
+			long elapsed = System.nanoTime() - start;
+			System.out.println(
+					observers + " observers" +
+					"  broadcast: " + queued / PACKETS + " ns/packet" +
+					"  delivered: " + PACKETS * 1000000000L / elapsed + " packets/s"
+			);
+		} finally {
+			group.shutdown();
+			server.close();
+		}
+	}
+
+	private static void drain(Socket skt, long expected) {
+		byte[] buffer = new byte[64 * 1024];
+		long total = 0;
+
+		try {
+			InputStream in = skt.getInputStream();
+
+			while (total < expected) {
+				int count = in.read(buffer);
+
+				if (count == -1) {
+					break;
+				}
+
+				total += count;
+			}
+
+			skt.close();
+		} catch (IOException ex) {
+			// report what was read
+		}
+
+		if (total < expected) {
+			System.out.println("observer read only " + total + " of " + expected + " bytes");
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package net.dhleong.acl.iface;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ConnectionType;
+import net.dhleong.acl.protocol.UnknownPacket;
+import net.dhleong.acl.protocol.core.PausePacket;
+import net.dhleong.acl.util.BoolState;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BroadcastGroupTest {
+	private static final int OBSERVERS = 3;
+	private static final int PACKETS = 100;
+	private static final long TIMEOUT_MS = 5000;
+
+	public static class Recorder {
+		private final List<BoolState> paused = new ArrayList<BoolState>();
+
+		@Listener
+		public void onPacket(PausePacket pkt) {
+			paused.add(pkt.getPaused());
+		}
+	}
+
+	private ServerSocket server;
+	private BroadcastGroup group;
+	private List<Socket> stalled = new ArrayList<Socket>();
+
+	@Before
+	public void setUp() throws IOException {
+		server = new ServerSocket(0, OBSERVERS, InetAddress.getByName("127.0.0.1"));
+		group = new BroadcastGroup(ConnectionType.SERVER);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		group.shutdown();
+		server.close();
+
+		for (Socket skt : stalled) {
+			skt.close();
+		}
+	}
+
+	@Test
+	public void testFanOut() throws IOException {
+		PollingArtemisNetworkInterface[] observers = new PollingArtemisNetworkInterface[OBSERVERS];
+		Recorder[] recorders = new Recorder[OBSERVERS];
+
+		for (int i = 0; i < OBSERVERS; i++) {
+			observers[i] = new PollingArtemisNetworkInterface("127.0.0.1", server.getLocalPort());
+			recorders[i] = new Recorder();
+			observers[i].addListener(recorders[i]);
+			group.add(server.accept());
+		}
+
+		Assert.assertEquals(OBSERVERS, group.getMemberCount());
+
+		for (int i = 0; i < PACKETS; i++) {
+			group.broadcast(new PausePacket(i % 2 == 0));
+		}
+
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+		for (int i = 0; i < OBSERVERS; i++) {
+			while (recorders[i].paused.size() < PACKETS && System.currentTimeMillis() < deadline) {
+				observers[i].poll(PACKETS);
+			}
+
+			Assert.assertEquals(PACKETS, recorders[i].paused.size());
+
+			for (int j = 0; j < PACKETS; j++) {
+				Assert.assertEquals(BoolState.from(j % 2 == 0), recorders[i].paused.get(j));
+			}
+
+			observers[i].stop();
+		}
+	}
+
+	@Test
+	public void testDrop() throws IOException {
+		BroadcastGroup.Member member = addStalledMember(BroadcastGroup.SlowConsumerPolicy.DROP);
+		flood(null);
+		Assert.assertTrue(member.isConnected());
+		Assert.assertTrue(member.getDroppedCount() > 0);
+		Assert.assertTrue(member.getQueuedCount() <= 4);
+	}
+
+	@Test
+	public void testDisconnect() throws IOException {
+		BroadcastGroup.Member member = addStalledMember(BroadcastGroup.SlowConsumerPolicy.DISCONNECT);
+		flood(null);
+		Assert.assertFalse(member.isConnected());
+		Assert.assertEquals(0, group.getMemberCount());
+	}
+
+	public static class LastSeen {
+		private int seq = -1;
+
+		@Listener
+		public void onPacket(UnknownPacket pkt) {
+			seq = PacketReader.readInt(pkt.getPayload(), 0);
+		}
+	}
+
+	@Test
+	public void testCoalesce() throws IOException {
+		// an observer which doesn't read until the flood is over
+		PollingArtemisNetworkInterface observer = new PollingArtemisNetworkInterface(
+				"127.0.0.1", server.getLocalPort());
+		LastSeen lastSeen = new LastSeen();
+		observer.addListener(lastSeen);
+		BroadcastGroup.Member member = group.add(server.accept(),
+				BroadcastGroup.SlowConsumerPolicy.COALESCE, 4);
+		final int packets = 1000;
+
+		for (int i = 0; i < packets; i++) {
+			byte[] payload = new byte[64 * 1024];
+			payload[0] = (byte) i;
+			payload[1] = (byte) (i >> 8);
+			group.broadcast(new UnknownPacket(ConnectionType.SERVER, 0, payload), "update");
+		}
+
+		Assert.assertTrue(member.isConnected());
+		Assert.assertTrue(member.getDroppedCount() > 0);
+		Assert.assertTrue(member.getQueuedCount() <= 4);
+
+		// whatever was coalesced away, the last update must arrive
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+		while (lastSeen.seq != packets - 1 && System.currentTimeMillis() < deadline) {
+			observer.poll(PACKETS);
+		}
+
+		Assert.assertEquals(packets - 1, lastSeen.seq);
+		observer.stop();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongConnectionType() throws IOException {
+		group.broadcast(new UnknownPacket(ConnectionType.CLIENT, 0, new byte[0]));
+	}
+
+	/**
+	 * Adds a member with a queue of four packets whose other end never reads.
+	 */
+	private BroadcastGroup.Member addStalledMember(BroadcastGroup.SlowConsumerPolicy policy)
+			throws IOException {
+		stalled.add(new Socket("127.0.0.1", server.getLocalPort()));
+		return group.add(server.accept(), policy, 4);
+	}
+
+	/**
+	 * Broadcasts far more than the socket buffers can hold.
+	 */
+	private void flood(Object coalesceKey) throws IOException {
+		byte[] payload = new byte[64 * 1024];
+
+		for (int i = 0; i < 1000; i++) {
+			group.broadcast(new UnknownPacket(ConnectionType.SERVER, 0, payload), coalesceKey);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package net.dhleong.acl.iface;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import net.dhleong.acl.enums.ConnectionType;
+import net.dhleong.acl.protocol.core.setup.ReadyPacket;
+import net.dhleong.acl.protocol.core.setup.WelcomePacket;
+
+/**
+ * Connects 10, 100 and 500 ThreadedArtemisNetworkInterfaces to a local
+ * server, first on platform threads and then, if the JDK supports them, on
+ * virtual threads, and reports how long it takes for every connection to
+ * be welcomed and deliver its packets, along with the number of platform
+ * threads alive at the peak. The server side runs on an EventLoopGroup so
+ * that it adds only a couple of threads. Run it as a plain Java program;
+ * it is not part of the unit test suite.
+ */
+public class ConnectionThreadsBenchmark {
+	private static final int[] CONNECTIONS = { 10, 100, 500 };
+	private static final int PACKETS = 20;
+
+	public static class Counter {
+		private final CountDownLatch latch;
+
+		private Counter(int count) {
+			latch = new CountDownLatch(count);
+		}
+
+		@Listener
+		public void onPacket(ReadyPacket pkt) {
+			latch.countDown();
+		}
+
+		@Listener
+		public void onConnect(ConnectionSuccessEvent event) {
+			latch.countDown();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		System.out.println("virtual threads supported: " + ConnectionThreads.isVirtualSupported());
+		System.out.println(PACKETS + " packets per connection");
+
+		for (int connections : CONNECTIONS) {
+			report("platform", connections, run(ConnectionThreads.platform(), connections));
+
+			if (ConnectionThreads.isVirtualSupported()) {
+				report("virtual ", connections, run(ConnectionThreads.virtual(), connections));
+			}
+		}
+	}
+
+	private static void report(String mode, int connections, long[] result) {
+		System.out.println(
+				mode + " x" + connections +
+				"  time: " + result[0] / 1000000 + " ms" +
+				"  peak platform threads: " + result[1]
+		);
+	}
+
+	/**
+	 * @return The elapsed nanoseconds and the peak platform thread count
+	 */
+	private static long[] run(ThreadFactory factory, int connections)
+			throws IOException, InterruptedException {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		EventLoopGroup group = new EventLoopGroup(2);
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress("127.0.0.1", 0), connections);
+		final int port = server.socket().getLocalPort();
+		Counter received = new Counter(connections * PACKETS);
+		Counter welcomed = new Counter(connections);
+		ThreadedArtemisNetworkInterface[] clients = new ThreadedArtemisNetworkInterface[connections];
+		NioArtemisNetworkInterface[] remotes = new NioArtemisNetworkInterface[connections];
+		threads.resetPeakThreadCount();
+		long start = System.nanoTime();
+
+		try {
+			for (int i = 0; i < connections; i++) {
+				clients[i] = new ThreadedArtemisNetworkInterface("127.0.0.1", port);
+				clients[i].setThreadFactory(factory);
+				clients[i].addListener(welcomed);
+				clients[i].start();
+				remotes[i] = new NioArtemisNetworkInterface(group, server.accept(),
+						ConnectionType.CLIENT);
+				remotes[i].addListener(received);
+				remotes[i].start();
+				remotes[i].send(new WelcomePacket());
+			}
+
+			welcomed.latch.await(60, TimeUnit.SECONDS);
+
+			for (int i = 0; i < connections; i++) {
+				for (int j = 0; j < PACKETS; j++) {
+					clients[i].send(new ReadyPacket());
+				}
+			}
+
+			if (!received.latch.await(60, TimeUnit.SECONDS)) {
+				System.out.println("timed out");
+			}
+
+			return new long[] { System.nanoTime() - start, threads.getPeakThreadCount() };
+		} finally {
+			for (ThreadedArtemisNetworkInterface client : clients) {
+				if (client != null) {
+					client.stop();
+				}
+			}
+
+			group.shutdown();
+			server.close();
+			Thread.sleep(200); // let the old threads wind down
+		}
+	}
+}
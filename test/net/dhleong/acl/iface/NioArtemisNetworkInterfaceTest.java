@@ -0,0 +1,180 @@
+package net.dhleong.acl.iface;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ConnectionType;
+import net.dhleong.acl.protocol.ArtemisPacket;
+import net.dhleong.acl.protocol.core.setup.ReadyPacket;
+import net.dhleong.acl.protocol.core.setup.WelcomePacket;
+
+import org.junit.Test;
+
+public class NioArtemisNetworkInterfaceTest {
+	private static final int PACKETS = 500;
+
+	public static class ClientListener {
+		private final CountDownLatch connected = new CountDownLatch(1);
+		private volatile Thread thread;
+
+		@Listener
+		public void onConnect(ConnectionSuccessEvent event) {
+			thread = Thread.currentThread();
+			connected.countDown();
+		}
+	}
+
+	public static class ServerListener {
+		private final CountDownLatch ready = new CountDownLatch(PACKETS);
+		private final CountDownLatch disconnected = new CountDownLatch(1);
+		private volatile DisconnectEvent.Cause cause;
+
+		@Listener
+		public void onPacket(ReadyPacket pkt) {
+			ready.countDown();
+		}
+
+		@Listener
+		public void onDisconnect(DisconnectEvent event) {
+			cause = event.getCause();
+			disconnected.countDown();
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException, InterruptedException {
+		EventLoopGroup group = new EventLoopGroup(2);
+		ServerSocketChannel server = ServerSocketChannel.open();
+
+		try {
+			server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+			NioArtemisNetworkInterface client = new NioArtemisNetworkInterface(group,
+					"127.0.0.1", server.socket().getLocalPort());
+			SocketChannel accepted = server.accept();
+			NioArtemisNetworkInterface remote = new NioArtemisNetworkInterface(group,
+					accepted, ConnectionType.CLIENT);
+
+			ClientListener clientListener = new ClientListener();
+			ServerListener serverListener = new ServerListener();
+			client.addListener(clientListener);
+			remote.addListener(serverListener);
+
+			// packets sent before start() are held until then
+			client.send(new ReadyPacket());
+			client.start();
+			remote.start();
+			remote.send(new WelcomePacket());
+
+			for (int i = 1; i < PACKETS; i++) {
+				client.send(new ReadyPacket());
+			}
+
+			Assert.assertTrue(clientListener.connected.await(5, TimeUnit.SECONDS));
+			Assert.assertTrue(client.isConnected());
+			Assert.assertTrue(clientListener.thread.getName().startsWith("ArtemisEventLoop-"));
+			Assert.assertTrue(serverListener.ready.await(5, TimeUnit.SECONDS));
+
+			client.stop();
+			Assert.assertTrue(serverListener.disconnected.await(5, TimeUnit.SECONDS));
+			Assert.assertEquals(DisconnectEvent.Cause.REMOTE_DISCONNECT, serverListener.cause);
+			Assert.assertFalse(client.isConnected());
+		} finally {
+			server.close();
+			group.shutdown();
+		}
+	}
+
+	/**
+	 * Records the cause of a disconnect, then fails.
+	 */
+	public static class FailingListener {
+		private final CountDownLatch disconnected = new CountDownLatch(1);
+		private volatile DisconnectEvent.Cause cause;
+
+		@Listener
+		public void onDisconnect(DisconnectEvent event) {
+			cause = event.getCause();
+			disconnected.countDown();
+			throw new IllegalStateException("listener failure");
+		}
+	}
+
+	@Test
+	public void testBadPreambleIsolated() throws IOException, InterruptedException {
+		EventLoopGroup group = new EventLoopGroup(1);
+		ServerSocketChannel server = ServerSocketChannel.open();
+
+		try {
+			server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+
+			// too short for a preamble, then far too long to allocate
+			for (int len : new int[] { 10, Integer.MAX_VALUE }) {
+				SocketChannel raw = SocketChannel.open(server.socket().getLocalSocketAddress());
+				NioArtemisNetworkInterface remote = new NioArtemisNetworkInterface(group,
+						server.accept(), ConnectionType.CLIENT);
+				FailingListener listener = new FailingListener();
+				remote.addListener(listener);
+				remote.start();
+				raw.write(preamble(len));
+				Assert.assertTrue(listener.disconnected.await(5, TimeUnit.SECONDS));
+				Assert.assertEquals(DisconnectEvent.Cause.PACKET_PARSE_EXCEPTION, listener.cause);
+				raw.close();
+			}
+
+			// a listener failing in stop() doesn't take the loop down either
+			SocketChannel raw = SocketChannel.open(server.socket().getLocalSocketAddress());
+			NioArtemisNetworkInterface stopped = new NioArtemisNetworkInterface(group,
+					server.accept(), ConnectionType.CLIENT);
+			FailingListener listener = new FailingListener();
+			stopped.addListener(listener);
+			stopped.start();
+			stopped.stop();
+			Assert.assertTrue(listener.disconnected.await(5, TimeUnit.SECONDS));
+			raw.close();
+
+			// the shared thread still serves other connections
+			NioArtemisNetworkInterface client = new NioArtemisNetworkInterface(group,
+					"127.0.0.1", server.socket().getLocalPort());
+			NioArtemisNetworkInterface remote = new NioArtemisNetworkInterface(group,
+					server.accept(), ConnectionType.CLIENT);
+			ClientListener clientListener = new ClientListener();
+			client.addListener(clientListener);
+			client.start();
+			remote.start();
+			remote.send(new WelcomePacket());
+			Assert.assertTrue(clientListener.connected.await(5, TimeUnit.SECONDS));
+		} finally {
+			server.close();
+			group.shutdown();
+		}
+	}
+
+	private static ByteBuffer preamble(int len) {
+		ByteBuffer buf = ByteBuffer.allocate(PacketReader.PREAMBLE_BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(ArtemisPacket.HEADER).putInt(len).putInt(ConnectionType.CLIENT.toInt())
+				.putInt(0).putInt(len - 20).putInt(0);
+		buf.flip();
+		return buf;
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongConnectionType() throws IOException {
+		EventLoopGroup group = new EventLoopGroup(1);
+
+		try {
+			SocketChannel channel = SocketChannel.open();
+			new NioArtemisNetworkInterface(group, channel, ConnectionType.SERVER)
+					.send(new WelcomePacket());
+		} finally {
+			group.shutdown();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package net.dhleong.acl.iface;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ConnectionType;
+import net.dhleong.acl.protocol.core.setup.ReadyPacket;
+import net.dhleong.acl.protocol.core.setup.WelcomePacket;
+
+import org.junit.Test;
+
+public class PollingArtemisNetworkInterfaceTest {
+	private static final int PACKETS = 500;
+	private static final long TIMEOUT_MS = 5000;
+
+	public static class Recorder {
+		private int ready;
+		private boolean connected;
+		private DisconnectEvent.Cause cause;
+		private Thread thread;
+
+		@Listener
+		public void onPacket(ReadyPacket pkt) {
+			ready++;
+			thread = Thread.currentThread();
+		}
+
+		@Listener
+		public void onConnect(ConnectionSuccessEvent event) {
+			connected = true;
+			thread = Thread.currentThread();
+		}
+
+		@Listener
+		public void onDisconnect(DisconnectEvent event) {
+			cause = event.getCause();
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException, InterruptedException {
+		ServerSocketChannel server = ServerSocketChannel.open();
+
+		try {
+			server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+			PollingArtemisNetworkInterface client = new PollingArtemisNetworkInterface(
+					"127.0.0.1", server.socket().getLocalPort());
+			SocketChannel accepted = server.accept();
+			PollingArtemisNetworkInterface remote = new PollingArtemisNetworkInterface(
+					accepted, ConnectionType.CLIENT);
+
+			Recorder clientRecorder = new Recorder();
+			Recorder serverRecorder = new Recorder();
+			client.addListener(clientRecorder);
+			remote.addListener(serverRecorder);
+
+			// nothing is written until flush()
+			remote.send(new WelcomePacket());
+			Thread.sleep(50);
+			Assert.assertEquals(0, client.poll(10));
+			Assert.assertFalse(client.isConnected());
+
+			Assert.assertTrue(remote.flush());
+			long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+			while (!clientRecorder.connected && System.currentTimeMillis() < deadline) {
+				client.poll(10);
+			}
+
+			Assert.assertTrue(client.isConnected());
+			Assert.assertSame(Thread.currentThread(), clientRecorder.thread);
+
+			for (int i = 0; i < PACKETS; i++) {
+				client.send(new ReadyPacket());
+			}
+
+			boolean flushed = false;
+
+			while (serverRecorder.ready < PACKETS && System.currentTimeMillis() < deadline) {
+				flushed = client.flush();
+				Assert.assertTrue(remote.poll(10) <= 10);
+			}
+
+			Assert.assertTrue(flushed);
+			Assert.assertEquals(PACKETS, serverRecorder.ready);
+			Assert.assertSame(Thread.currentThread(), serverRecorder.thread);
+
+			client.stop();
+			Assert.assertEquals(DisconnectEvent.Cause.LOCAL_DISCONNECT, clientRecorder.cause);
+			Assert.assertFalse(client.isConnected());
+
+			while (serverRecorder.cause == null && System.currentTimeMillis() < deadline) {
+				remote.poll(10);
+			}
+
+			Assert.assertEquals(DisconnectEvent.Cause.REMOTE_DISCONNECT, serverRecorder.cause);
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongConnectionType() throws IOException {
+		SocketChannel channel = SocketChannel.open();
+
+		try {
+			new PollingArtemisNetworkInterface(channel, ConnectionType.SERVER)
+					.send(new WelcomePacket());
+		} finally {
+			channel.close();
+		}
+	}
+}
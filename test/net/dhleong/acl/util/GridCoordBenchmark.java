@@ -0,0 +1,131 @@
+package net.dhleong.acl.util;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures GridCoord lookups under contention: several threads, each standing
+ * in for a network interface decoding EngGridUpdatePackets, look up the
+ * coords of randomly damaged nodes at the same time. The old synchronized LRU
+ * cache is included as a baseline. Run it as a plain Java program; it is not
+ * part of the unit test suite.
+ */
+public class GridCoordBenchmark {
+	private static final int LOOKUPS = 2000000;
+	private static final int PASSES = 5;
+	private static final int[] THREADS = { 1, 2, 4, 8 };
+
+	private static volatile long sink;
+
+	public static void main(String[] args) throws InterruptedException {
+		System.out.println(LOOKUPS + " lookups per thread (ms)");
+
+		// the first passes are warm-up; watch the numbers settle
+		for (int pass = 1; pass <= PASSES; pass++) {
+			StringBuilder line = new StringBuilder("pass " + pass);
+
+			for (int threads : THREADS) {
+				long lru = run(threads, true);
+				long table = run(threads, false);
+				line.append("  ").append(threads).append(" threads: ")
+						.append(lru / 1000000).append(" vs ").append(table / 1000000);
+			}
+
+			System.out.println(line + "  (LRU vs table)");
+		}
+	}
+
+	private static long run(int threadCount, final boolean lru)
+			throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threadCount);
+
+		for (int t = 0; t < threadCount; t++) {
+			final int seed = t + 1;
+
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException ex) {
+						return;
+					}
+
+					decode(seed, lru);
+					done.countDown();
+				}
+			}.start();
+		}
+
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		return System.nanoTime() - begin;
+	}
+
+	private static void decode(int seed, boolean lru) {
+		int rand = seed;
+		long local = 0;
+
+		for (int i = 0; i < LOOKUPS; i++) {
+			// cheap xorshift, so the random source isn't what we measure
+			rand ^= rand << 13;
+			rand ^= rand >>> 17;
+			rand ^= rand << 5;
+			int index = (rand & 0x7fffffff) % GridCoord.GRID_SIZE;
+			int x = index % GridCoord.MAX_X;
+			int y = (index / GridCoord.MAX_X) % GridCoord.MAX_Y;
+			int z = index / (GridCoord.MAX_X * GridCoord.MAX_Y);
+
+			if (lru) {
+				local += LegacyCache.getInstance(x, y, z).getZ();
+			} else {
+				local += GridCoord.getInstance(x, y, z).getZ();
+			}
+		}
+
+		sink += local;
+	}
+
+	/**
+	 * The synchronized LRU cache that GridCoord used to use.
+	 */
+	private static class LegacyCache {
+		private static final int CACHE_SIZE = 50;
+		private static final Queue<GridCoord> sCache = new ArrayDeque<GridCoord>(CACHE_SIZE);
+
+		private static GridCoord getInstance(int x, int y, int z) {
+			synchronized (sCache) {
+				Iterator<GridCoord> iter = sCache.iterator();
+
+				while (iter.hasNext()) {
+					GridCoord c = iter.next();
+
+					if (c.equals(x, y, z)) {
+						iter.remove();
+						sCache.offer(c);
+						return c;
+					}
+				}
+			}
+
+			// stands in for the allocation on a miss
+			GridCoord c = GridCoord.getInstance(x, y, z);
+
+			if (sCache.size() >= CACHE_SIZE) {
+				synchronized (sCache) {
+					sCache.poll();
+				}
+			}
+
+			synchronized (sCache) {
+				sCache.offer(c);
+			}
+
+			return c;
+		}
+	}
+}
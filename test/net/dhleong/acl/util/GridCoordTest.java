@@ -0,0 +1,28 @@
+package net.dhleong.acl.util;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class GridCoordTest {
+	@Test
+	public void testIndexRoundTrip() {
+		boolean[] seen = new boolean[GridCoord.GRID_SIZE];
+
+		for (int z = 0; z < GridCoord.MAX_Z; z++) {
+			for (int y = 0; y < GridCoord.MAX_Y; y++) {
+				for (int x = 0; x < GridCoord.MAX_X; x++) {
+					GridCoord coord = GridCoord.getInstance(x, y, z);
+					int index = coord.getIndex();
+					Assert.assertFalse(seen[index]);
+					seen[index] = true;
+					Assert.assertEquals(coord, GridCoord.fromIndex(index));
+				}
+			}
+		}
+
+		Assert.assertEquals(-1, GridCoord.getIndex(5, 0, 0));
+		Assert.assertEquals(-1, GridCoord.getIndex(0, -1, 0));
+		Assert.assertEquals(-1, GridCoord.getInstance(0, 0, 10).getIndex());
+	}
+}
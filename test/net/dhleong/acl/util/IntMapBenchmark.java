@@ -0,0 +1,119 @@
+package net.dhleong.acl.util;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Compares IntMap against HashMap<Integer, V> for a world of 10,000 objects
+ * with server-style (large, scattered) IDs. Run it as a plain Java program;
+ * it is not part of the unit test suite.
+ */
+public class IntMapBenchmark {
+	private static final int OBJECTS = 10000;
+	private static final int ROUNDS = 200;
+	private static final int PASSES = 5;
+
+	private static long sink;
+
+	public static void main(String[] args) {
+		Random random = new Random(1);
+		int[] ids = new int[OBJECTS];
+
+		for (int i = 0; i < OBJECTS; i++) {
+			ids[i] = 0x40000000 | random.nextInt(0x3fffffff);
+		}
+
+		System.out.println(OBJECTS + " objects, " + ROUNDS + " rounds per phase (ms)");
+
+		// the first passes are warm-up; watch the numbers settle
+		for (int pass = 1; pass <= PASSES; pass++) {
+			long[] hashMap = runHashMap(ids);
+			long[] intMap = runIntMap(ids);
+			System.out.println(
+					"pass " + pass +
+					"  put: " + hashMap[0] / 1000000 + " vs " + intMap[0] / 1000000 +
+					"  get: " + hashMap[1] / 1000000 + " vs " + intMap[1] / 1000000 +
+					"  iterate: " + hashMap[2] / 1000000 + " vs " + intMap[2] / 1000000 +
+					"  (HashMap vs IntMap)"
+			);
+		}
+
+		if (sink == 42) {
+			System.out.print("");
+		}
+	}
+
+	private static long[] runHashMap(int[] ids) {
+		long[] times = new long[3];
+		HashMap<Integer, Object> map = null;
+		long start = System.nanoTime();
+
+		for (int round = 0; round < ROUNDS; round++) {
+			map = new HashMap<Integer, Object>();
+
+			for (int id : ids) {
+				map.put(id, ids);
+			}
+		}
+
+		times[0] = System.nanoTime() - start;
+		start = System.nanoTime();
+
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int id : ids) {
+				if (map.get(id) != null) {
+					sink++;
+				}
+			}
+		}
+
+		times[1] = System.nanoTime() - start;
+		start = System.nanoTime();
+
+		for (int round = 0; round < ROUNDS; round++) {
+			for (Object value : map.values()) {
+				sink += value.hashCode() & 1;
+			}
+		}
+
+		times[2] = System.nanoTime() - start;
+		return times;
+	}
+
+	private static long[] runIntMap(int[] ids) {
+		long[] times = new long[3];
+		IntMap<Object> map = null;
+		long start = System.nanoTime();
+
+		for (int round = 0; round < ROUNDS; round++) {
+			map = new IntMap<Object>();
+
+			for (int id : ids) {
+				map.put(id, ids);
+			}
+		}
+
+		times[0] = System.nanoTime() - start;
+		start = System.nanoTime();
+
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int id : ids) {
+				if (map.get(id) != null) {
+					sink++;
+				}
+			}
+		}
+
+		times[1] = System.nanoTime() - start;
+		start = System.nanoTime();
+
+		for (int round = 0; round < ROUNDS; round++) {
+			for (Object value : map.values()) {
+				sink += value.hashCode() & 1;
+			}
+		}
+
+		times[2] = System.nanoTime() - start;
+		return times;
+	}
+}
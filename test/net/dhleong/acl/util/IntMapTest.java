@@ -0,0 +1,108 @@
+package net.dhleong.acl.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class IntMapTest {
+	@Test
+	public void testMatchesHashMap() {
+		Random random = new Random(42);
+		IntMap<Integer> map = new IntMap<Integer>();
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+		for (int i = 0; i < 20000; i++) {
+			int key = random.nextInt(500) * 0x10001;
+
+			if (random.nextInt(3) == 0) {
+				Assert.assertEquals(expected.remove(key), map.remove(key));
+			} else {
+				Assert.assertEquals(expected.put(key, i), map.put(key, i));
+			}
+
+			Assert.assertEquals(expected.size(), map.size());
+		}
+
+		for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+			Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+		}
+
+		int count = 0;
+
+		for (Integer value : map.values()) {
+			Assert.assertNotNull(value);
+			count++;
+		}
+
+		Assert.assertEquals(expected.size(), count);
+		int[] keys = new int[map.size()];
+		Assert.assertEquals(keys.length, map.keys(keys));
+
+		for (int key : keys) {
+			Assert.assertTrue(expected.containsKey(key));
+		}
+	}
+
+	@Test
+	public void testIterateWhileModifying() {
+		IntMap<String> map = new IntMap<String>();
+
+		for (int i = 0; i < 100; i++) {
+			map.put(i, "obj" + i);
+		}
+
+		Iterator<String> iter = map.values().iterator();
+
+		for (int i = 0; i < 1000; i++) {
+			map.remove(i % 100);
+			map.put(1000 + i, "new" + i);
+		}
+
+		while (iter.hasNext()) {
+			Assert.assertNotNull(iter.next());
+		}
+
+		map.clear();
+		Assert.assertTrue(map.isEmpty());
+		Assert.assertNull(map.get(1500));
+	}
+
+	@Test
+	public void testConcurrentReader() throws InterruptedException {
+		final IntMap<Integer> map = new IntMap<Integer>();
+		final AtomicInteger mismatches = new AtomicInteger();
+		final int keys = 200000;
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int pass = 0; pass < 20; pass++) {
+					for (int key = 1; key < keys; key++) {
+						Integer value = map.get(key);
+
+						if (value != null && value.intValue() != key) {
+							mismatches.incrementAndGet();
+						}
+					}
+				}
+			}
+		});
+		reader.start();
+
+		for (int key = 1; key < keys; key++) {
+			map.put(key, Integer.valueOf(key));
+
+			if (key % 3 == 0) {
+				map.remove(key - 1);
+			}
+		}
+
+		reader.join();
+		Assert.assertEquals(0, mismatches.get());
+	}
+}
@@ -0,0 +1,66 @@
+package net.dhleong.acl.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class PersistentIntMapTest {
+	@Test
+	public void testMatchesHashMap() {
+		Random random = new Random(42);
+		PersistentIntMap<Integer> map = PersistentIntMap.empty();
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+		for (int i = 0; i < 20000; i++) {
+			// spread keys over the whole int range, including negatives
+			int key = random.nextInt(500) * 0x800001;
+
+			if (random.nextInt(3) == 0) {
+				expected.remove(key);
+				map = map.without(key);
+			} else {
+				expected.put(key, i);
+				map = map.with(key, i);
+			}
+
+			Assert.assertEquals(expected.size(), map.size());
+		}
+
+		for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+			Assert.assertEquals(entry.getValue(), map.get(entry.getKey()));
+		}
+
+		int count = 0;
+
+		for (Integer value : map.values()) {
+			Assert.assertNotNull(value);
+			count++;
+		}
+
+		Assert.assertEquals(expected.size(), count);
+	}
+
+	@Test
+	public void testOldVersionsUnchanged() {
+		PersistentIntMap<String> v1 = PersistentIntMap.<String>empty()
+				.with(1, "one").with(33, "thirty-three");
+		PersistentIntMap<String> v2 = v1.with(1, "uno").without(33).with(65, "x");
+
+		Assert.assertEquals(2, v1.size());
+		Assert.assertEquals("one", v1.get(1));
+		Assert.assertEquals("thirty-three", v1.get(33));
+		Assert.assertNull(v1.get(65));
+
+		Assert.assertEquals(2, v2.size());
+		Assert.assertEquals("uno", v2.get(1));
+		Assert.assertNull(v2.get(33));
+		Assert.assertEquals("x", v2.get(65));
+
+		Assert.assertSame(v2, v2.without(12345));
+		Assert.assertTrue(v2.without(1).without(65).isEmpty());
+	}
+}
@@ -0,0 +1,130 @@
+package net.dhleong.acl.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collection;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ShipSystem;
+
+import org.junit.Test;
+
+public class SntLoaderTest {
+	/**
+	 * A corridor of hallway along z at x=2, y=2, with two beam nodes at
+	 * either end and a sensor node beside the middle.
+	 */
+	private static ByteBuffer buildSnt() {
+		ByteBuffer buf = ByteBuffer.allocate(SntLoader.FILE_BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+
+		for (int x = 0; x < GridCoord.MAX_X; x++) {
+			for (int y = 0; y < GridCoord.MAX_Y; y++) {
+				for (int z = 0; z < GridCoord.MAX_Z; z++) {
+					int type = SntLoader.TYPE_EMPTY;
+
+					if (x == 2 && y == 2) {
+						if (z == 0 || z == 9) {
+							type = ShipSystem.BEAMS.ordinal();
+						} else {
+							type = SntLoader.TYPE_HALLWAY;
+						}
+					} else if (x == 3 && y == 2 && z == 5) {
+						type = ShipSystem.SENSORS.ordinal();
+					}
+
+					buf.putFloat(x).putFloat(y).putFloat(z).putInt(type);
+					buf.position(buf.position() + 16);
+				}
+			}
+		}
+
+		buf.flip();
+		return buf;
+	}
+
+	@Test
+	public void testParse() throws IOException {
+		ShipSystemGrid grid = SntLoader.parse(buildSnt());
+
+		Assert.assertEquals(2, grid.getSystemCount(ShipSystem.BEAMS));
+		Assert.assertEquals(1, grid.getSystemCount(ShipSystem.SENSORS));
+		Assert.assertEquals(0, grid.getSystemCount(ShipSystem.IMPULSE));
+		Assert.assertEquals(11, grid.getCoords().size());
+
+		Collection<GridCoord> beams = grid.getCoordsFor(ShipSystem.BEAMS);
+		Assert.assertEquals(2, beams.size());
+		Assert.assertTrue(beams.contains(GridCoord.getInstance(2, 2, 0)));
+		Assert.assertTrue(beams.contains(GridCoord.getInstance(2, 2, 9)));
+		Assert.assertTrue(grid.getCoordsFor(ShipSystem.IMPULSE).isEmpty());
+
+		Assert.assertEquals(0, grid.getGridAt(GridCoord.getInstance(2, 2, 0)).getIndex());
+		Assert.assertEquals(1, grid.getGridAt(GridCoord.getInstance(2, 2, 9)).getIndex());
+		Assert.assertNull(grid.getSystemTypeAt(GridCoord.getInstance(2, 2, 4)));
+		Assert.assertNull(grid.getGridAt(GridCoord.getInstance(0, 0, 0)));
+	}
+
+	@Test
+	public void testNeighbors() throws IOException {
+		ShipSystemGrid grid = SntLoader.parse(buildSnt());
+
+		// the middle of the corridor connects to both sides and the sensors
+		int middle = GridCoord.getIndex(2, 2, 5);
+		Assert.assertEquals(3, grid.getNeighborCount(middle));
+		boolean sawSensors = false;
+
+		for (int n = 0; n < grid.getNeighborCount(middle); n++) {
+			sawSensors |= grid.getNeighbor(middle, n) == GridCoord.getIndex(3, 2, 5);
+		}
+
+		Assert.assertTrue(sawSensors);
+
+		int end = GridCoord.getIndex(2, 2, 0);
+		Assert.assertEquals(1, grid.getNeighborCount(end));
+		Assert.assertEquals(GridCoord.getIndex(2, 2, 1), grid.getNeighbor(end, 0));
+		Assert.assertEquals(0, grid.getNeighborCount(GridCoord.getIndex(0, 0, 0)));
+	}
+
+	@Test
+	public void testDistances() throws IOException {
+		ShipSystemGrid grid = SntLoader.parse(buildSnt());
+		int end = GridCoord.getIndex(2, 2, 0);
+		Assert.assertEquals(0, grid.getDistance(end, end));
+		Assert.assertEquals(9, grid.getDistance(end, GridCoord.getIndex(2, 2, 9)));
+		Assert.assertEquals(6, grid.getDistance(GridCoord.getIndex(3, 2, 5), end));
+		Assert.assertEquals(-1, grid.getDistance(end, GridCoord.getIndex(0, 0, 0)));
+	}
+
+	@Test
+	public void testLoadFile() throws IOException {
+		File file = File.createTempFile("artemis", ".snt");
+
+		try {
+			ByteBuffer buf = buildSnt();
+			FileOutputStream out = new FileOutputStream(file);
+
+			try {
+				out.write(buf.array(), 0, buf.limit());
+			} finally {
+				out.close();
+			}
+
+			ShipSystemGrid grid = SntLoader.load(file);
+			Assert.assertEquals(2, grid.getSystemCount(ShipSystem.BEAMS));
+			Assert.assertEquals(ShipSystem.SENSORS,
+					grid.getSystemTypeAt(GridCoord.getInstance(3, 2, 5)));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncated() throws IOException {
+		ByteBuffer buf = buildSnt();
+		buf.limit(SntLoader.FILE_BYTES - 1);
+		SntLoader.parse(buf);
+	}
+}
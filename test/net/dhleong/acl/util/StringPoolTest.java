@@ -0,0 +1,36 @@
+package net.dhleong.acl.util;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import net.dhleong.acl.protocol.ArtemisPacket;
+
+public class StringPoolTest {
+	@Test
+	public void testDecode() {
+		byte[] bytes = "K-312\0".getBytes(ArtemisPacket.CHARSET);
+		Assert.assertEquals(5, StringPool.length(bytes, 0, 6));
+		Assert.assertEquals("K-312", StringPool.decode(bytes, 0, 5));
+	}
+
+	@Test
+	public void testIntern() {
+		StringPool pool = new StringPool();
+		byte[] bytes = "xxArtemis".getBytes(ArtemisPacket.CHARSET);
+		String first = pool.get(bytes, 4, 7);
+		String second = pool.get(bytes.clone(), 4, 7);
+		Assert.assertEquals("Artemis", first);
+		Assert.assertSame(first, second);
+		Assert.assertEquals("", pool.get(bytes, 0, 0));
+	}
+
+	@Test
+	public void testMaxLength() {
+		StringPool pool = new StringPool(16, 3);
+		byte[] bytes = "DS12".getBytes(ArtemisPacket.CHARSET);
+		String first = pool.get(bytes, 0, 4);
+		Assert.assertEquals("DS12", first);
+		Assert.assertNotSame(first, pool.get(bytes, 0, 4));
+	}
+}
@@ -0,0 +1,106 @@
+package net.dhleong.acl.vesseldata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compares loading vessel data by parsing vesselData.xml against loading the
+ * compiled image, both for the very first load in the JVM (what a client pays
+ * at startup or on its first vessel lookup) and once warmed up. Pass the path
+ * to a vesselData.xml to measure a modded install; the bundled file is used
+ * otherwise. Run it as a plain Java program from the project directory; it is
+ * not part of the unit test suite.
+ */
+public class VesselDataBenchmark {
+	private static final int ITERATIONS = 200;
+
+	public static void main(String[] args) throws Exception {
+		File source = new File(args.length > 0 ? args[0] :
+				"src/net/dhleong/acl/vesseldata/vesselData.xml");
+		File install = File.createTempFile("artemis", "");
+		install.delete();
+		File xml = new File(install, "dat" + File.separatorChar + "vesselData.xml");
+		xml.getParentFile().mkdirs();
+		copy(source, xml);
+		File cache = new File(install, "cache");
+		File image = new File(cache, VesselDataCompiler.IMAGE_NAME);
+
+		try {
+			System.out.println(xml.length() + " bytes of XML");
+
+			// the first use of each path pays for class loading and JIT too
+			long start = System.nanoTime();
+			VesselData.load(install);
+			VesselData.get().getVessel(0);
+			report("first XML load + lookup", System.nanoTime() - start);
+
+			start = System.nanoTime();
+			VesselDataCompiler.compile(xml, image);
+			report("compile", System.nanoTime() - start);
+			System.out.println(image.length() + " bytes of image");
+
+			start = System.nanoTime();
+			VesselData.load(install, cache);
+			VesselData.get().getVessel(0);
+			report("first image load + lookup", System.nanoTime() - start);
+
+			start = System.nanoTime();
+
+			for (int i = 0; i < ITERATIONS; i++) {
+				VesselData.parse(xml.toURI());
+			}
+
+			report("warm XML parse", (System.nanoTime() - start) / ITERATIONS);
+			start = System.nanoTime();
+
+			for (int i = 0; i < ITERATIONS; i++) {
+				VesselDataCompiler.read(image, xml);
+			}
+
+			report("warm image read", (System.nanoTime() - start) / ITERATIONS);
+			xml.setLastModified(xml.lastModified() - 60000);
+			start = System.nanoTime();
+
+			for (int i = 0; i < ITERATIONS; i++) {
+				VesselDataCompiler.read(image, xml);
+			}
+
+			report("warm image read, touched XML", (System.nanoTime() - start) / ITERATIONS);
+		} finally {
+			image.delete();
+			cache.delete();
+			xml.delete();
+			xml.getParentFile().delete();
+			install.delete();
+		}
+	}
+
+	private static void report(String what, long nanos) {
+		System.out.println(what + ": " + (nanos / 1000) + " us");
+	}
+
+	private static void copy(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+
+		try {
+			OutputStream out = new FileOutputStream(to);
+
+			try {
+				byte[] buf = new byte[8192];
+				int read;
+
+				while ((read = in.read(buf)) != -1) {
+					out.write(buf, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package net.dhleong.acl.vesseldata;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.FactionAttribute;
+import net.dhleong.acl.enums.OrdnanceType;
+import net.dhleong.acl.enums.VesselAttribute;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VesselDataCompilerTest {
+	private static final String XML =
+			"<vessel_data version=\"2.1\">\n" +
+			"<hullRace ID=\"0\" name=\"TSN\" keys=\"player\">\n" +
+			"<taunt immunity=\"is humble\" text=\"Caf\u00e9 taunt\"/>\n" +
+			"</hullRace>\n" +
+			"<hullRace ID=\"2\" name=\"Kralien\" keys=\"enemy standard\"/>\n" +
+			"<vessel uniqueID=\"7\" side=\"0\" classname=\"Light Cruiser\" broadType=\"player\">\n" +
+			"<internal_data file=\"dat/artemis.snt\"/>\n" +
+			"<shields front=\"80\" back=\"60\"/>\n" +
+			"<performance turnrate=\"0.005\" topspeed=\"0.8\" efficiency=\"1\"/>\n" +
+			"<beam_port x=\"1\" y=\"2\" z=\"3\" damage=\"12\" cycletime=\"6\" range=\"1000\" arcwidth=\"0.4\"/>\n" +
+			"<torpedo_tube x=\"4\" y=\"5\" z=\"6\"/>\n" +
+			"<torpedo_storage type=\"1\" amount=\"4\"/>\n" +
+			"</vessel>\n" +
+			"</vessel_data>\n";
+
+	private File dir;
+	private File xml;
+	private File image;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("artemis", "");
+		dir.delete();
+		xml = new File(dir, "dat" + File.separatorChar + "vesselData.xml");
+		xml.getParentFile().mkdirs();
+		image = new File(new File(dir, "cache"), VesselDataCompiler.IMAGE_NAME);
+		writeXml(XML);
+	}
+
+	@After
+	public void tearDown() {
+		image.delete();
+		image.getParentFile().delete();
+		xml.delete();
+		xml.getParentFile().delete();
+		dir.delete();
+	}
+
+	private void writeXml(String content) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(xml), "UTF-8");
+
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws VesselDataException {
+		VesselDataCompiler.compile(xml, image);
+		VesselData data = VesselDataCompiler.read(image, xml);
+		Assert.assertNotNull(data);
+		Assert.assertEquals(VesselData.parse(xml.toURI()).getVersion(), data.getVersion());
+
+		Faction tsn = data.getFaction(0);
+		Assert.assertEquals("TSN", tsn.getName());
+		Assert.assertTrue(tsn.is(FactionAttribute.PLAYER));
+		Assert.assertEquals("Caf\u00e9 taunt", tsn.taunts.get(0).getText());
+		Assert.assertNull(data.getFaction(1));
+		Assert.assertTrue(data.getFaction(2).is(FactionAttribute.STANDARD));
+
+		Vessel vessel = data.getVessel(7);
+		Assert.assertEquals("Light Cruiser", vessel.getName());
+		Assert.assertTrue(vessel.is(VesselAttribute.PLAYER));
+		Assert.assertEquals("dat/artemis.snt", vessel.getInternalDataFile());
+		Assert.assertNull(vessel.getDescription());
+		Assert.assertEquals(80, vessel.getForeShields());
+		Assert.assertEquals(0.8f, vessel.getTopSpeed(), 0.0001f);
+		Assert.assertEquals(1000, vessel.getBeamPorts()[0].getRange());
+		Assert.assertEquals(0.4f, vessel.getBeamPorts()[0].getArcWidth(), 0.0001f);
+		Assert.assertEquals(5f, vessel.getTorepedoTubes()[0].getY(), 0.0001f);
+		Assert.assertEquals(4, vessel.getTorpedoStorage(OrdnanceType.values()[1]));
+	}
+
+	@Test
+	public void testLoadWritesImage() throws VesselDataException {
+		VesselData.load(dir, image.getParentFile());
+		Assert.assertTrue(image.isFile());
+		Assert.assertEquals("Light Cruiser", VesselData.get().getVessel(7).getName());
+
+		VesselData.load(dir, image.getParentFile());
+		Assert.assertEquals("Light Cruiser", VesselData.get().getVessel(7).getName());
+	}
+
+	@Test
+	public void testStaleImage() throws IOException, VesselDataException {
+		VesselDataCompiler.compile(xml, image);
+		writeXml(XML.replace("Light Cruiser", "Scout"));
+		Assert.assertNull(VesselDataCompiler.read(image, xml));
+	}
+
+	@Test
+	public void testTouchedXml() throws VesselDataException {
+		VesselDataCompiler.compile(xml, image);
+		xml.setLastModified(xml.lastModified() - 60000);
+		Assert.assertNotNull(VesselDataCompiler.read(image, xml));
+	}
+
+	@Test
+	public void testCorruptImage() throws IOException, VesselDataException {
+		VesselDataCompiler.compile(xml, image);
+		RandomAccessFile file = new RandomAccessFile(image, "rw");
+
+		try {
+			file.setLength(file.length() - 10);
+		} finally {
+			file.close();
+		}
+
+		Assert.assertNull(VesselDataCompiler.read(image, xml));
+	}
+
+	@Test
+	public void testBadStringLength() throws IOException, VesselDataException {
+		VesselDataCompiler.compile(xml, image);
+		RandomAccessFile file = new RandomAccessFile(image, "rw");
+
+		try {
+			// the length of the version string, just after the header
+			file.seek(32);
+			file.writeInt(Integer.MAX_VALUE);
+		} finally {
+			file.close();
+		}
+
+		Assert.assertNull(VesselDataCompiler.read(image, xml));
+	}
+
+	@Test
+	public void testEditKeepingSizeAndTime() throws IOException, VesselDataException {
+		VesselDataCompiler.compile(xml, image);
+		final long modified = xml.lastModified();
+		writeXml(XML.replace("Light Cruiser", "Heavy Cruiser"));
+		xml.setLastModified(modified);
+		Assert.assertNull(VesselDataCompiler.read(image, xml));
+	}
+
+	@Test
+	public void testChangedWhileCompiling() throws IOException, VesselDataException {
+		VesselDataCompiler.Stamp stamp = VesselDataCompiler.Stamp.of(xml);
+		VesselData data = VesselData.parse(xml.toURI());
+		writeXml(XML.replace("Light Cruiser", "Scout"));
+
+		try {
+			VesselDataCompiler.write(data, stamp, xml, image);
+			Assert.fail("Wrote an image of out of date data");
+		} catch (IOException ex) {
+			// expected
+		}
+
+		Assert.assertFalse(image.exists());
+	}
+}
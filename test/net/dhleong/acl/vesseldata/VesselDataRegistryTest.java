@@ -0,0 +1,197 @@
+package net.dhleong.acl.vesseldata;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ConnectionType;
+import net.dhleong.acl.iface.ArtemisNetworkInterface;
+import net.dhleong.acl.iface.Debugger;
+import net.dhleong.acl.protocol.ArtemisPacket;
+import net.dhleong.acl.protocol.Protocol;
+import net.dhleong.acl.protocol.Version;
+import net.dhleong.acl.world.ArtemisNpc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VesselDataRegistryTest {
+	private File root;
+	private File modA;
+	private File modB;
+
+	@Before
+	public void setUp() throws IOException {
+		root = File.createTempFile("artemis", "");
+		root.delete();
+		modA = new File(root, "a");
+		modB = new File(root, "b");
+		writeXml(modA, "2.1", "Light Cruiser");
+		writeXml(modB, "2.3", "Battleship");
+	}
+
+	@After
+	public void tearDown() {
+		delete(root);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+
+		file.delete();
+	}
+
+	private static void writeXml(File install, String version, String className)
+			throws IOException {
+		File xml = VesselData.getXmlFile(install);
+		xml.getParentFile().mkdirs();
+		Writer out = new OutputStreamWriter(new FileOutputStream(xml), "UTF-8");
+
+		try {
+			out.write("<vessel_data version=\"" + version + "\">\n" +
+					"<hullRace ID=\"0\" name=\"TSN " + className + "\" keys=\"player\"/>\n" +
+					"<vessel uniqueID=\"0\" side=\"0\" classname=\"" + className +
+					"\" broadType=\"player\"/>\n" +
+					"</vessel_data>\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void testSeparateInstalls() throws VesselDataException {
+		VesselDataRegistry registry = new VesselDataRegistry(new File(root, "cache"));
+		VesselData a = registry.get(modA);
+		VesselData b = registry.get(modB);
+
+		Assert.assertSame(a, registry.get(modA));
+		Assert.assertEquals("Light Cruiser", a.getVessel(0).getName());
+		Assert.assertEquals("Battleship", b.getVessel(0).getName());
+
+		// each vessel resolves its faction through its own data
+		Assert.assertEquals("TSN Battleship", b.getVessel(0).getFaction().getName());
+		Assert.assertSame(b, b.getVessel(0).getVesselData());
+
+		Assert.assertSame(a, registry.get(new Version("2.1.1")));
+		Assert.assertSame(b, registry.get(new Version("2.3")));
+		Assert.assertNull(registry.get(new Version("2.0")));
+	}
+
+	@Test
+	public void testReload() throws IOException, VesselDataException {
+		VesselDataRegistry registry = new VesselDataRegistry();
+		StubInterface iface = new StubInterface();
+		registry.bind(iface, modA);
+		VesselData old = registry.get(modA);
+		Assert.assertSame(old, iface.getVesselData());
+
+		// an object received before the reload
+		ArtemisNpc npc = new ArtemisNpc(1, "A1", 0);
+		npc.setVesselDataHolder(iface.vesselData);
+		Assert.assertEquals("Light Cruiser", npc.getVessel().getName());
+
+		final VesselData[] reloaded = new VesselData[1];
+		registry.addOnReloadListener(new VesselDataRegistry.OnReloadListener() {
+			@Override
+			public void onReload(File installPath, VesselData vesselData) {
+				reloaded[0] = vesselData;
+			}
+		});
+
+		Assert.assertEquals(0, registry.checkForChanges());
+		writeXml(modA, "2.1", "Heavy Cruiser II");
+		Assert.assertEquals(1, registry.checkForChanges());
+
+		VesselData current = registry.get(modA);
+		Assert.assertNotSame(old, current);
+		Assert.assertEquals("Heavy Cruiser II", current.getVessel(0).getName());
+		Assert.assertEquals("Light Cruiser", old.getVessel(0).getName());
+		Assert.assertSame(current, iface.getVesselData());
+		Assert.assertSame(current, reloaded[0]);
+		Assert.assertEquals("Heavy Cruiser II", npc.getVessel().getName());
+
+		registry.unbind(iface);
+		registry.reload(modA);
+		Assert.assertSame(current, iface.getVesselData());
+	}
+
+	@Test
+	public void testBrokenReloadKeepsOldData() throws IOException, VesselDataException {
+		VesselDataRegistry registry = new VesselDataRegistry();
+		VesselData old = registry.get(modA);
+		Writer out = new OutputStreamWriter(
+				new FileOutputStream(VesselData.getXmlFile(modA)), "UTF-8");
+
+		try {
+			out.write("<vessel_data version=\"2.1\">");
+		} finally {
+			out.close();
+		}
+
+		Assert.assertEquals(0, registry.checkForChanges());
+		Assert.assertSame(old, registry.get(modA));
+	}
+
+	private static class StubInterface implements ArtemisNetworkInterface {
+		private final VesselDataHolder vesselData = new VesselDataHolder();
+
+		@Override
+		public ConnectionType getRecvType() {
+			return ConnectionType.SERVER;
+		}
+
+		@Override
+		public ConnectionType getSendType() {
+			return ConnectionType.CLIENT;
+		}
+
+		@Override
+		public void registerProtocol(Protocol protocol) {
+		}
+
+		@Override
+		public void addListener(Object listener) {
+		}
+
+		@Override
+		public void start() {
+		}
+
+		@Override
+		public boolean isConnected() {
+			return false;
+		}
+
+		@Override
+		public void send(ArtemisPacket pkt) {
+		}
+
+		@Override
+		public void stop() {
+		}
+
+		@Override
+		public void attachDebugger(Debugger debugger) {
+		}
+
+		@Override
+		public void setVesselData(VesselData vesselData) {
+			this.vesselData.set(vesselData);
+		}
+
+		@Override
+		public VesselData getVesselData() {
+			return vesselData.get();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package net.dhleong.acl.vesseldata;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.VesselAttribute;
+
+import org.junit.Test;
+
+public class VesselDataTest {
+	private static final String XML =
+			"<vessel_data version=\"2.1\">\n" +
+			"<hullRace ID=\"0\" name=\"TSN\" keys=\"player\"/>\n" +
+			"<hullRace ID=\"1\" name=\"Arvonian\" keys=\"enemy standard\"/>\n" +
+			"<vessel uniqueID=\"0\" side=\"0\" classname=\"Light Cruiser\" broadType=\"player\">\n" +
+			"<performance turnrate=\"0.005\" topspeed=\"0.8\" efficiency=\"1\"/>\n" +
+			"</vessel>\n" +
+			"<vessel uniqueID=\"1000\" side=\"0\" classname=\"Base\" broadType=\"base\"/>\n" +
+			"<vessel uniqueID=\"3000\" side=\"1\" classname=\"Light Carrier\" broadType=\"medium carrier\">\n" +
+			"<performance turnrate=\"0.003\" topspeed=\"0.4\" efficiency=\"1\"/>\n" +
+			"</vessel>\n" +
+			"<vessel uniqueID=\"3001\" side=\"1\" classname=\"Carrier\" broadType=\"large carrier\">\n" +
+			"<performance turnrate=\"0.002\" topspeed=\"0.3\" efficiency=\"1\"/>\n" +
+			"</vessel>\n" +
+			"<vessel uniqueID=\"3002\" side=\"1\" classname=\"Base\" broadType=\"base\"/>\n" +
+			"<vessel uniqueID=\"100000\" side=\"1\" classname=\"Modded\" broadType=\"small\"/>\n" +
+			"</vessel_data>\n";
+
+	private static VesselData parse() throws IOException, VesselDataException {
+		File xml = File.createTempFile("vesselData", ".xml");
+
+		try {
+			Writer out = new OutputStreamWriter(new FileOutputStream(xml), "UTF-8");
+
+			try {
+				out.write(XML);
+			} finally {
+				out.close();
+			}
+
+			return VesselData.parse(xml.toURI());
+		} finally {
+			xml.delete();
+		}
+	}
+
+	@Test
+	public void testById() throws IOException, VesselDataException {
+		VesselData data = parse();
+		Assert.assertEquals("Light Carrier", data.getVessel(3000).getName());
+		Assert.assertEquals("Modded", data.getVessel(100000).getName());
+		Assert.assertNull(data.getVessel(2999));
+		Assert.assertNull(data.getVessel(-1));
+		Assert.assertNull(data.getVessel(200000));
+		Assert.assertEquals(6, data.getVessels().size());
+	}
+
+	@Test
+	public void testByName() throws IOException, VesselDataException {
+		VesselData data = parse();
+		Faction arvonian = data.getFaction(1);
+		Assert.assertEquals(2, data.getVessels("Base").size());
+		Assert.assertEquals(3002, data.getVessel(arvonian, "Base").getId());
+		Assert.assertTrue(data.getVessels("Nope").isEmpty());
+		Assert.assertNull(data.getVessel(arvonian, "Light Cruiser"));
+	}
+
+	@Test
+	public void testByFactionAndAttribute() throws IOException, VesselDataException {
+		VesselData data = parse();
+		Faction tsn = data.getFaction(0);
+		Faction arvonian = data.getFaction(1);
+
+		Assert.assertEquals(2, data.getVessels(VesselAttribute.CARRIER).size());
+		Assert.assertEquals(4, data.getVessels(arvonian).size());
+
+		List<Vessel> carriers = data.getVessels(arvonian, VesselAttribute.CARRIER);
+		Assert.assertEquals(2, carriers.size());
+		Assert.assertEquals("Light Carrier", carriers.get(0).getName());
+		Assert.assertTrue(data.getVessels(tsn, VesselAttribute.CARRIER).isEmpty());
+
+		Assert.assertEquals("Light Carrier", data.getFastestVessel(arvonian).getName());
+		Assert.assertEquals("Light Cruiser", data.getFastestVessel(tsn).getName());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutable() throws IOException, VesselDataException {
+		parse().getVessels(VesselAttribute.BASE).clear();
+	}
+}
@@ -0,0 +1,102 @@
+package net.dhleong.acl.vesseldata;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.OrdnanceType;
+
+import org.junit.Test;
+
+public class VesselTacticsTest {
+	private static final String XML =
+			"<vessel_data version=\"2.1\">\n" +
+			"<hullRace ID=\"0\" name=\"TSN\" keys=\"player\"/>\n" +
+			"<vessel uniqueID=\"0\" side=\"0\" classname=\"Light Cruiser\" broadType=\"player\">\n" +
+			"<beam_port x=\"102\" y=\"0\" z=\"258\" damage=\"12\" arcwidth=\"0.2\" cycletime=\"6\" range=\"1000\"/>\n" +
+			"<beam_port x=\"-102\" y=\"0\" z=\"258\" damage=\"12\" arcwidth=\"0.2\" cycletime=\"6\" range=\"1000\"/>\n" +
+			"<beam_port x=\"0\" y=\"0\" z=\"-200\" damage=\"6\" arcwidth=\"0.1\" cycletime=\"3\" range=\"500\"/>\n" +
+			"<torpedo_tube x=\"0\" y=\"0\" z=\"100\"/>\n" +
+			"<torpedo_tube x=\"0\" y=\"0\" z=\"100\"/>\n" +
+			"<torpedo_storage type=\"0\" amount=\"8\"/>\n" +
+			"<torpedo_storage type=\"1\" amount=\"2\"/>\n" +
+			"</vessel>\n" +
+			"<vessel uniqueID=\"1000\" side=\"0\" classname=\"Base\" broadType=\"base\"/>\n" +
+			"</vessel_data>\n";
+
+	private static VesselData parse() throws IOException, VesselDataException {
+		File xml = File.createTempFile("vesselData", ".xml");
+
+		try {
+			Writer out = new OutputStreamWriter(new FileOutputStream(xml), "UTF-8");
+
+			try {
+				out.write(XML);
+			} finally {
+				out.close();
+			}
+
+			return VesselData.parse(xml.toURI());
+		} finally {
+			xml.delete();
+		}
+	}
+
+	private static float radians(float degrees) {
+		return (float) Math.toRadians(degrees);
+	}
+
+	@Test
+	public void testBeams() throws IOException, VesselDataException {
+		VesselTactics tactics = parse().getVessel(0).getTactics();
+		Assert.assertEquals(6f, tactics.getBeamDps(), 0.0001f);
+		Assert.assertEquals(1000, tactics.getBeamRange());
+		Assert.assertEquals(1000, tactics.getMaxRange());
+
+		// dead ahead, both forward beams reach
+		Assert.assertEquals(4f, tactics.getBeamDps(0f), 0.0001f);
+		Assert.assertEquals(4f, tactics.getBeamDps(radians(-10)), 0.0001f);
+		// only the starboard one reaches this far round
+		Assert.assertEquals(2f, tactics.getBeamDps(radians(50)), 0.0001f);
+		Assert.assertEquals(2f, tactics.getBeamDps(radians(-50)), 0.0001f);
+		Assert.assertEquals(1000, tactics.getBeamRange(radians(50)));
+		// abeam, nothing
+		Assert.assertFalse(tactics.isCovered(radians(90)));
+		Assert.assertEquals(0f, tactics.getBeamDps(radians(90)), 0f);
+		// astern, the aft beam
+		Assert.assertEquals(2f, tactics.getBeamDps(radians(180)), 0.0001f);
+		Assert.assertEquals(500, tactics.getBeamRange(radians(-175)));
+		// bearings wrap
+		Assert.assertEquals(tactics.getBeamDps(radians(10)),
+				tactics.getBeamDps(radians(370)), 0f);
+	}
+
+	@Test
+	public void testBeamDpsInRange() throws IOException, VesselDataException {
+		VesselTactics tactics = parse().getVessel(0).getTactics();
+		Assert.assertEquals(4f, tactics.getBeamDps(0f, 999), 0.0001f);
+		Assert.assertEquals(0f, tactics.getBeamDps(0f, 1001), 0f);
+		Assert.assertEquals(0f, tactics.getBeamDps(radians(180), 600), 0f);
+	}
+
+	@Test
+	public void testTorpedoes() throws IOException, VesselDataException {
+		VesselTactics tactics = parse().getVessel(0).getTactics();
+		Assert.assertEquals(2, tactics.getTorpedoTubeCount());
+		Assert.assertEquals(10, tactics.getTorpedoCapacity());
+		Assert.assertEquals(2, tactics.getTorpedoCapacity(OrdnanceType.NUKE));
+		Assert.assertEquals(0, tactics.getTorpedoCapacity(OrdnanceType.EMP));
+	}
+
+	@Test
+	public void testUnarmed() throws IOException, VesselDataException {
+		VesselTactics tactics = parse().getVessel(1000).getTactics();
+		Assert.assertEquals(0f, tactics.getBeamDps(), 0f);
+		Assert.assertEquals(0, tactics.getMaxRange());
+		Assert.assertFalse(tactics.isCovered(0f));
+		Assert.assertEquals(0, tactics.getTorpedoCapacity());
+	}
+}
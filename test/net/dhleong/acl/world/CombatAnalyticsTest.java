@@ -0,0 +1,100 @@
+package net.dhleong.acl.world;
+
+import java.io.IOException;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ShipSystem;
+import net.dhleong.acl.protocol.core.PlayerShipDamagePacket;
+import net.dhleong.acl.protocol.core.world.BeamFiredPacket;
+import net.dhleong.acl.util.BoolState;
+import net.dhleong.acl.vesseldata.VesselDataException;
+import net.dhleong.acl.world.CombatAnalytics.Stat;
+
+import org.junit.Test;
+
+public class CombatAnalyticsTest {
+	private static final long SECOND = 1000000000L;
+
+	private static BeamFiredPacket beam(int origin, int target) {
+		BeamFiredPacket pkt = new BeamFiredPacket(1);
+		pkt.setOriginId(origin);
+		pkt.setTargetId(target);
+		pkt.setBeamPortIndex(0);
+		return pkt;
+	}
+
+	private static SystemManager buildWorld() throws IOException, VesselDataException {
+		SystemManager mgr = new SystemManager();
+		ArtemisNpc npc = new ArtemisNpc(10, "K1", 1);
+		npc.setVesselData(TestVesselData.read());
+		mgr.addObject(npc);
+		mgr.addObject(new ArtemisPlayer(1, "Artemis", 0, 1, BoolState.FALSE, BoolState.TRUE));
+		return mgr;
+	}
+
+	@Test
+	public void testSlidingWindow() throws IOException, VesselDataException {
+		CombatAnalytics analytics = new CombatAnalytics(buildWorld());
+		analytics.recordBeam(beam(10, 1), 0);
+		analytics.recordBeam(beam(10, 1), SECOND / 2);
+		analytics.recordBeam(beam(10, 1), SECOND * 3 / 2);
+
+		Assert.assertEquals(3.0, analytics.getTotal(10, Stat.BEAMS_FIRED), 0.001);
+		Assert.assertEquals(30.0, analytics.getTotal(10, Stat.DAMAGE_DEALT), 0.001);
+		Assert.assertEquals(3.0, analytics.getTotal(1, Stat.BEAM_HITS), 0.001);
+		Assert.assertEquals(30f, analytics.getWindowTotal(1, Stat.DAMAGE_TAKEN, SECOND * 2), 0.001f);
+		Assert.assertEquals(3f, analytics.getRate(10, Stat.DAMAGE_DEALT, SECOND * 2), 0.001f);
+
+		// the first second has slid out of the window
+		Assert.assertEquals(10f, analytics.getWindowTotal(1, Stat.DAMAGE_TAKEN, SECOND * 10), 0.001f);
+		Assert.assertEquals(0f, analytics.getWindowTotal(1, Stat.DAMAGE_TAKEN, SECOND * 12), 0.001f);
+
+		// and its bucket is recycled
+		analytics.recordBeam(beam(10, 1), SECOND * 20);
+		Assert.assertEquals(10f, analytics.getWindowTotal(1, Stat.DAMAGE_TAKEN, SECOND * 20), 0.001f);
+		Assert.assertEquals(40.0, analytics.getTotal(1, Stat.DAMAGE_TAKEN), 0.001);
+	}
+
+	@Test
+	public void testLateEvent() throws IOException, VesselDataException {
+		CombatAnalytics analytics = new CombatAnalytics(buildWorld());
+		analytics.recordBeam(beam(10, 1), SECOND * 20);
+
+		// this one's column now holds a newer bucket, which must survive
+		analytics.recordBeam(beam(10, 1), 0);
+		Assert.assertEquals(10f, analytics.getWindowTotal(1, Stat.DAMAGE_TAKEN, SECOND * 20), 0.001f);
+		Assert.assertEquals(20.0, analytics.getTotal(1, Stat.DAMAGE_TAKEN), 0.001);
+	}
+
+	@Test
+	public void testShieldsAndHull() throws IOException, VesselDataException {
+		SystemManager mgr = buildWorld();
+		CombatAnalytics analytics = new CombatAnalytics(mgr);
+		mgr.addOnObjectChangeListener(analytics);
+
+		ArtemisPlayer player = mgr.getPlayerShip(0);
+		player.setShieldsFront(100);
+		player.setShieldsRear(100);
+		mgr.addObject(player);
+		player.setShieldsFront(80);
+		mgr.addObject(player);
+		player.setShieldsFront(90); // recharging isn't damage
+		mgr.addObject(player);
+		Assert.assertEquals(20.0, analytics.getTotal(1, Stat.SHIELD_DAMAGE), 0.001);
+
+		analytics.onPacket(new PlayerShipDamagePacket());
+		Assert.assertEquals(1.0, analytics.getTotal(1, Stat.HULL_HITS), 0.001);
+
+		ArtemisNpc npc = (ArtemisNpc) mgr.getObject(10);
+		npc.setSystemDamage(ShipSystem.BEAMS, 0);
+		mgr.addObject(npc);
+		npc.setSystemDamage(ShipSystem.BEAMS, 0.25f);
+		mgr.addObject(npc);
+		Assert.assertEquals(1.0, analytics.getTotal(10, Stat.HULL_HITS), 0.001);
+
+		int[] ids = new int[4];
+		Assert.assertEquals(2, analytics.getObjectIds(ids));
+		analytics.reset();
+		Assert.assertEquals(0.0, analytics.getTotal(1, Stat.SHIELD_DAMAGE), 0.001);
+	}
+}
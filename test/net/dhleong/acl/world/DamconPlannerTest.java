@@ -0,0 +1,139 @@
+package net.dhleong.acl.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ShipSystem;
+import net.dhleong.acl.protocol.core.eng.EngGridUpdatePacket;
+import net.dhleong.acl.protocol.core.eng.EngSendDamconPacket;
+import net.dhleong.acl.util.GridCoord;
+import net.dhleong.acl.util.SntLoader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DamconPlannerTest {
+	private SystemManager mgr;
+	private DamconPlanner planner;
+
+	/**
+	 * A corridor along z at x=2, y=2, with beams at z=0 and sensors at z=9.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(SntLoader.FILE_BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+
+		for (int x = 0; x < GridCoord.MAX_X; x++) {
+			for (int y = 0; y < GridCoord.MAX_Y; y++) {
+				for (int z = 0; z < GridCoord.MAX_Z; z++) {
+					int type = SntLoader.TYPE_EMPTY;
+
+					if (x == 2 && y == 2) {
+						if (z == 0) {
+							type = ShipSystem.BEAMS.ordinal();
+						} else if (z == 9) {
+							type = ShipSystem.SENSORS.ordinal();
+						} else {
+							type = SntLoader.TYPE_HALLWAY;
+						}
+					}
+
+					buf.position(buf.position() + 12);
+					buf.putInt(type);
+					buf.position(buf.position() + 16);
+				}
+			}
+		}
+
+		buf.flip();
+		mgr = new SystemManager();
+		mgr.setSystemGrid(SntLoader.parse(buf));
+		planner = new DamconPlanner(mgr.getEngineering());
+	}
+
+	private void update(float beams, float sensors, int... teams) {
+		EngGridUpdatePacket pkt = new EngGridUpdatePacket();
+		pkt.addDamageUpdate(2, 2, 0, beams);
+		pkt.addDamageUpdate(2, 2, 9, sensors);
+
+		// each team is given as its number followed by its z position
+		for (int i = 0; i < teams.length; i += 2) {
+			int z = teams[i + 1];
+			pkt.addDamconUpdate(teams[i], 6, 2, 2, z, 2, 2, z, 0);
+		}
+
+		mgr.onPacket(pkt);
+	}
+
+	@Test
+	public void testNearestTeamGoes() {
+		update(0.5f, 0, 0, 1, 1, 8);
+		List<EngSendDamconPacket> orders = planner.plan();
+		Assert.assertEquals(1, orders.size());
+		Assert.assertEquals(0, orders.get(0).getTeamNumber());
+		Assert.assertEquals(0, orders.get(0).getZ());
+	}
+
+	@Test
+	public void testOneTeamPerNode() {
+		update(0.5f, 0.5f, 0, 1, 1, 8);
+		List<EngSendDamconPacket> orders = planner.plan();
+		Assert.assertEquals(2, orders.size());
+
+		for (EngSendDamconPacket order : orders) {
+			Assert.assertEquals(order.getTeamNumber() == 0 ? 0 : 9, order.getZ());
+		}
+	}
+
+	@Test
+	public void testWeights() {
+		update(0.5f, 0.5f, 0, 8);
+		Assert.assertEquals(9, planner.plan().get(0).getZ());
+
+		planner.setWeight(ShipSystem.BEAMS, 10);
+		Assert.assertEquals(0, planner.plan().get(0).getZ());
+
+		planner.setWeight(ShipSystem.BEAMS, 1);
+		planner.setWeight(ShipSystem.SENSORS, 0);
+		Assert.assertEquals(0, planner.plan().get(0).getZ());
+	}
+
+	@Test
+	public void testRoute() {
+		update(0.5f, 0.5f, 0, 5);
+		List<EngSendDamconPacket> orders = planner.plan();
+		Assert.assertEquals(1, orders.size());
+		Assert.assertEquals(9, orders.get(0).getZ());
+
+		// the nearer node first, then the other one
+		List<GridCoord> route = planner.getRoute(0);
+		Assert.assertEquals(2, route.size());
+		Assert.assertEquals(9, route.get(0).getZ());
+		Assert.assertEquals(0, route.get(1).getZ());
+		Assert.assertTrue(planner.getRoute(1).isEmpty());
+
+		// a second team takes over the far node
+		update(0.5f, 0.5f, 0, 5, 1, 1);
+		planner.plan();
+		Assert.assertEquals(1, planner.getRoute(0).size());
+		Assert.assertEquals(9, planner.getRoute(0).get(0).getZ());
+		Assert.assertEquals(1, planner.getRoute(1).size());
+		Assert.assertEquals(0, planner.getRoute(1).get(0).getZ());
+	}
+
+	@Test
+	public void testNoOrderForCurrentGoal() {
+		update(0, 0.5f, 0, 9);
+		Assert.assertTrue(planner.plan().isEmpty());
+	}
+
+	@Test
+	public void testNoGrid() {
+		SystemManager empty = new SystemManager();
+		Assert.assertTrue(new DamconPlanner(empty.getEngineering(3)).plan().isEmpty());
+	}
+}
@@ -0,0 +1,192 @@
+package net.dhleong.acl.world;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ObjectType;
+
+import org.junit.Test;
+
+public class DeadReckonerTest {
+	private static final long SECOND = 1000000000L;
+	private static final float EPSILON = 0.01f;
+
+	@Test
+	public void testStraightLine() {
+		DeadReckoner reckoner = new DeadReckoner();
+		reckoner.observe(mine(1, 0, 500), 0);
+		reckoner.observe(mine(1, 100, 500), SECOND);
+
+		float[] out = new float[4];
+		Assert.assertTrue(reckoner.predict(1, SECOND * 3 / 2, out));
+		Assert.assertEquals(150f, out[0], EPSILON);
+		Assert.assertEquals(500f, out[2], EPSILON);
+
+		// spot on, then 50 units short
+		reckoner.observe(mine(1, 200, 500), 2 * SECOND);
+		Assert.assertEquals(0f, reckoner.getLastError(1), EPSILON);
+		reckoner.observe(mine(1, 250, 500), 3 * SECOND);
+		Assert.assertEquals(50f, reckoner.getLastError(1), EPSILON);
+
+		Assert.assertEquals(3, reckoner.getErrorSampleCount());
+		// the first move was a 100 unit surprise
+		Assert.assertEquals(100f, reckoner.getMaxError(), EPSILON);
+		Assert.assertEquals(50f, reckoner.getMeanError(), EPSILON);
+	}
+
+	@Test
+	public void testPredictAllAfterRemove() {
+		DeadReckoner reckoner = new DeadReckoner();
+
+		for (int i = 0; i < 40; i++) {
+			reckoner.observe(mine(i, i, 0), 0);
+			reckoner.observe(mine(i, i + 10, 0), SECOND);
+		}
+
+		reckoner.remove(0);
+		Assert.assertEquals(39, reckoner.size());
+
+		int[] ids = new int[64];
+		float[] x = new float[64], y = new float[64], z = new float[64], h = new float[64];
+		Assert.assertEquals(39, reckoner.predictAll(2 * SECOND, ids, x, y, z, h));
+
+		for (int i = 0; i < 39; i++) {
+			Assert.assertTrue(ids[i] != 0);
+			Assert.assertEquals(ids[i] + 20f, x[i], EPSILON);
+			Assert.assertEquals(Float.MIN_VALUE, h[i]);
+		}
+	}
+
+	@Test
+	public void testCloseUpdates() {
+		DeadReckoner reckoner = new DeadReckoner();
+		reckoner.observe(mine(1, 0, 0), 0);
+		reckoner.observe(mine(1, 100, 0), SECOND);
+
+		// a microsecond later: too soon to say it's going any faster
+		reckoner.observe(mine(1, 101, 0), SECOND + 1000);
+		float[] out = new float[4];
+		Assert.assertTrue(reckoner.predict(1, 2 * SECOND, out));
+		Assert.assertEquals(201f, out[0], 1f);
+	}
+
+	@Test
+	public void testCloseUpdatesKeepSpeed() {
+		DeadReckoner reckoner = new DeadReckoner();
+		reckoner.observe(mine(1, 0, 0), 0);
+		reckoner.observe(mine(1, 100, 0), SECOND);
+		reckoner.observe(mine(1, 100.4f, 0), SECOND + 4000000);
+		reckoner.observe(mine(1, 200, 0), 2 * SECOND);
+
+		// measured from the close update, at its own time
+		float[] out = new float[4];
+		Assert.assertTrue(reckoner.predict(1, 3 * SECOND, out));
+		Assert.assertEquals(300f, out[0], EPSILON);
+	}
+
+	@Test
+	public void testReportedVelocity() {
+		DeadReckoner reckoner = new DeadReckoner();
+		reckoner.setSpeedScale(10);
+
+		// moving from the first update, along its heading
+		ArtemisNpc npc = ship(1, 0, 0, 0, 5);
+		reckoner.observe(npc, 0);
+		float[] out = new float[4];
+		Assert.assertTrue(reckoner.predict(1, SECOND, out));
+		Assert.assertEquals(0f, out[0], EPSILON);
+		Assert.assertEquals(50f, out[2], EPSILON);
+
+		// a partial update turns it without moving it
+		ArtemisNpc turn = new ArtemisNpc(1, null, -1);
+		turn.setHeading((float) (Math.PI / 2));
+		reckoner.observe(turn, 0);
+		Assert.assertTrue(reckoner.predict(1, SECOND, out));
+		Assert.assertEquals(50f, out[0], EPSILON);
+		Assert.assertEquals(0f, out[2], EPSILON);
+	}
+
+	@Test
+	public void testLearnedSpeedScale() {
+		DeadReckoner reckoner = new DeadReckoner();
+
+		// without a scale, the first ship has to be measured
+		reckoner.observe(ship(1, 0, 0, 0, 5), 0);
+		float[] out = new float[4];
+		Assert.assertTrue(reckoner.predict(1, SECOND, out));
+		Assert.assertEquals(0f, out[2], EPSILON);
+		reckoner.observe(ship(1, 0, 50, 0, 5), SECOND);
+		Assert.assertTrue(reckoner.predict(1, 2 * SECOND, out));
+		Assert.assertEquals(100f, out[2], EPSILON);
+
+		// but that teaches it the scale for the next
+		reckoner.observe(ship(2, 0, 0, 0, 2), 0);
+		Assert.assertTrue(reckoner.predict(2, SECOND, out));
+		Assert.assertEquals(20f, out[2], EPSILON);
+	}
+
+	@Test(timeout = 1000)
+	public void testBadHeading() {
+		DeadReckoner reckoner = new DeadReckoner();
+		ArtemisWhale whale = new ArtemisWhale(1, null);
+		whale.setX(0);
+		whale.setY(0);
+		whale.setZ(0);
+		whale.setHeading(0);
+		reckoner.observe(whale, 0);
+
+		// far too large to wrap by subtracting 2 pi
+		whale.setX(10);
+		whale.setHeading(1e30f);
+		reckoner.observe(whale, SECOND);
+		float[] out = new float[4];
+		Assert.assertTrue(reckoner.predict(1, 2 * SECOND, out));
+		Assert.assertTrue(out[3] >= -Math.PI && out[3] <= Math.PI);
+
+		// must not hang
+		whale.setX(20);
+		whale.setHeading(Float.POSITIVE_INFINITY);
+		reckoner.observe(whale, 2 * SECOND);
+		Assert.assertTrue(reckoner.predict(1, 3 * SECOND, out));
+	}
+
+	@Test
+	public void testManyObjects() {
+		DeadReckoner reckoner = new DeadReckoner();
+
+		for (int i = 0; i < 1000; i++) {
+			reckoner.observe(mine(i * 7919, i, 0), 0);
+		}
+
+		for (int i = 0; i < 1000; i += 2) {
+			reckoner.remove(i * 7919);
+		}
+
+		Assert.assertEquals(500, reckoner.size());
+		float[] out = new float[4];
+
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertEquals(i % 2 == 1, reckoner.predict(i * 7919, 0, out));
+
+			if (i % 2 == 1) {
+				Assert.assertEquals((float) i, out[0], EPSILON);
+			}
+		}
+	}
+
+	private static ArtemisNpc ship(int id, float x, float z, float heading, float velocity) {
+		ArtemisNpc npc = new ArtemisNpc(id, null, -1);
+		npc.setX(x);
+		npc.setY(0);
+		npc.setZ(z);
+		npc.setHeading(heading);
+		npc.setVelocity(velocity);
+		return npc;
+	}
+
+	private static ArtemisObject mine(int id, float x, float z) {
+		ArtemisGenericObject obj = new ArtemisGenericObject(id, null, ObjectType.MINE);
+		obj.setX(x);
+		obj.setY(0);
+		obj.setZ(z);
+		return obj;
+	}
+}
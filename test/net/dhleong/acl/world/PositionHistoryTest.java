@@ -0,0 +1,55 @@
+package net.dhleong.acl.world;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ObjectType;
+
+import org.junit.Test;
+
+public class PositionHistoryTest {
+	private static final float EPSILON = 0.0001f;
+
+	@Test
+	public void testInterpolate() {
+		PositionHistory history = new PositionHistory(4);
+		ArtemisGenericObject obj = new ArtemisGenericObject(1, null, ObjectType.MINE);
+		float[] out = new float[PositionHistory.STRIDE];
+		Assert.assertFalse(history.interpolate(1, 0, out, 0));
+
+		for (int i = 0; i < 6; i++) {
+			obj.setX(i * 100);
+			obj.setY(0);
+			obj.setZ(1000);
+			history.record(obj, i * 1000L);
+		}
+
+		Assert.assertEquals(4, history.getSampleCount(1));
+		Assert.assertTrue(history.interpolate(1, 4500L, out, 0));
+		Assert.assertEquals(450f, out[PositionHistory.X], EPSILON);
+		Assert.assertEquals(1000f, out[PositionHistory.Z], EPSILON);
+		Assert.assertEquals(Float.MIN_VALUE, out[PositionHistory.HEADING]);
+
+		// outside the kept samples, the nearest sample is used
+		history.interpolate(1, 99999L, out, 0);
+		Assert.assertEquals(500f, out[PositionHistory.X], EPSILON);
+		history.interpolate(1, 0L, out, 0);
+		Assert.assertEquals(200f, out[PositionHistory.X], EPSILON);
+
+		int[] ids = new int[4];
+		float[] all = new float[4 * PositionHistory.STRIDE];
+		Assert.assertEquals(1, history.interpolateAll(3500L, ids, all));
+		Assert.assertEquals(1, ids[0]);
+		Assert.assertEquals(350f, all[PositionHistory.X], EPSILON);
+
+		history.remove(1);
+		Assert.assertFalse(history.interpolate(1, 0, out, 0));
+	}
+
+	@Test
+	public void testHeadingWraps() {
+		float a = (float) Math.PI - 0.1f;
+		float b = (float) -Math.PI + 0.1f;
+		float mid = PositionHistory.lerpHeading(a, b, 0.5f);
+		Assert.assertEquals(Math.PI, Math.abs(mid), EPSILON);
+		Assert.assertEquals(a, PositionHistory.lerpHeading(a, Float.MIN_VALUE, 0.5f));
+	}
+}
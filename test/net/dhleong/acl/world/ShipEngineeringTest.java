@@ -0,0 +1,105 @@
+package net.dhleong.acl.world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ObjectType;
+import net.dhleong.acl.enums.ShipSystem;
+import net.dhleong.acl.protocol.core.GameOverPacket;
+import net.dhleong.acl.protocol.core.eng.EngGridUpdatePacket;
+import net.dhleong.acl.protocol.core.world.DestroyObjectPacket;
+import net.dhleong.acl.util.BoolState;
+import net.dhleong.acl.util.GridCoord;
+import net.dhleong.acl.util.ShipSystemGrid;
+import net.dhleong.acl.util.SntLoader;
+
+import org.junit.Test;
+
+public class ShipEngineeringTest {
+	/**
+	 * A grid with two beam nodes, at (0,0,0) and (0,0,1).
+	 */
+	private static ShipSystemGrid buildGrid() throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(SntLoader.FILE_BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+
+		for (int i = 0; i < GridCoord.GRID_SIZE; i++) {
+			buf.putInt(i * SntLoader.NODE_BYTES + 12,
+					i < 2 ? ShipSystem.BEAMS.ordinal() : SntLoader.TYPE_EMPTY);
+		}
+
+		return SntLoader.parse(buf);
+	}
+
+	private static EngGridUpdatePacket damage(int z, float amount) {
+		EngGridUpdatePacket pkt = new EngGridUpdatePacket();
+		pkt.addDamageUpdate(0, 0, z, amount);
+		pkt.addDamconUpdate(0, 6, 0, 0, z, 0, 0, z, 0);
+		return pkt;
+	}
+
+	@Test
+	public void testShipsAreIndependent() throws IOException {
+		SystemManager mgr = new SystemManager();
+		ShipSystemGrid grid = buildGrid();
+		ShipEngineering first = mgr.getEngineering(0);
+		ShipEngineering second = mgr.getEngineering(1);
+		first.setSystemGrid(grid);
+		second.setSystemGrid(grid);
+
+		first.onPacket(damage(0, 1));
+		second.onPacket(damage(1, 0.5f));
+
+		Assert.assertEquals(0.5f, first.getHealthOfSystem(ShipSystem.BEAMS), 0.001f);
+		Assert.assertEquals(0.75f, second.getHealthOfSystem(ShipSystem.BEAMS), 0.001f);
+		Assert.assertEquals(0f, second.getGridDamageAt(0, 0, 0), 0.001f);
+		Assert.assertEquals(1, second.getDamcon(0).getZ());
+		Assert.assertFalse(mgr.getEngineering(2).hasSystemGrid());
+	}
+
+	@Test
+	public void testDefaultShip() throws IOException {
+		SystemManager mgr = new SystemManager();
+		mgr.getEngineering(3).setSystemGrid(buildGrid());
+		Assert.assertFalse(mgr.hasSystemGrid());
+
+		mgr.setDefaultShipIndex(3);
+		mgr.onPacket(damage(0, 1));
+		Assert.assertTrue(mgr.hasSystemGrid());
+		Assert.assertEquals(0.5f, mgr.getHealthOfSystem(ShipSystem.BEAMS), 0.001f);
+		Assert.assertSame(mgr.getEngineering(3).getDamcon(0), mgr.getDamcon(0));
+
+		mgr.clear();
+		Assert.assertFalse(mgr.getEngineering(3).hasSystemGrid());
+		Assert.assertNull(mgr.getDamcon(0));
+	}
+
+	@Test
+	public void testEndOfGameLeavesEngineeringToItsConnection() throws IOException {
+		SystemManager mgr = new SystemManager();
+		ShipEngineering eng = mgr.getEngineering(1);
+		eng.setSystemGrid(buildGrid());
+		mgr.setSystemGrid(buildGrid());
+		mgr.addObject(new ArtemisPlayer(1, "Artemis", 0, 2, BoolState.FALSE, BoolState.TRUE));
+		mgr.addObject(new ArtemisGenericObject(2, null, ObjectType.MINE));
+
+		// the world connection sees the end of the game first
+		mgr.onPacket(new DestroyObjectPacket(ObjectType.MINE, 2));
+		Assert.assertEquals(0, mgr.getObjectCount(ObjectType.PLAYER_SHIP));
+		Assert.assertTrue(eng.hasSystemGrid());
+
+		// except for the default ship's, which it writes itself
+		Assert.assertFalse(mgr.hasSystemGrid());
+
+		// then the ship's own connection
+		eng.onPacket(new GameOverPacket());
+		Assert.assertFalse(eng.hasSystemGrid());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidShip() {
+		new SystemManager().getEngineering(Artemis.SHIP_COUNT);
+	}
+}
@@ -0,0 +1,57 @@
+package net.dhleong.acl.world;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import net.dhleong.acl.enums.ObjectType;
+
+public class SpatialIndexTest {
+	private static ArtemisObject obj(int id, ObjectType type, float x, float z) {
+		ArtemisObject obj = new ArtemisGenericObject(id, null, type);
+		obj.setX(x);
+		obj.setY(0);
+		obj.setZ(z);
+		return obj;
+	}
+
+	@Test
+	public void testQueries() {
+		SpatialIndex index = new SpatialIndex();
+		index.update(obj(1, ObjectType.MINE, 1000, 1000));
+		index.update(obj(2, ObjectType.MINE, 9000, 1000));
+		index.update(obj(3, ObjectType.ASTEROID, 1500, 1200));
+		index.update(obj(4, ObjectType.MINE, -2000, 50000));
+		List<ArtemisObject> dest = new ArrayList<ArtemisObject>();
+		Assert.assertEquals(2, index.getWithin(1000, 0, 1000, 1000, null, dest));
+		dest.clear();
+		Assert.assertEquals(1, index.getWithin(1000, 0, 1000, 1000, ObjectType.MINE, dest));
+		dest.clear();
+		Assert.assertEquals(1, index.getInBox(-5000, -500, 40000, 0, 500, 60000, null, dest));
+		Assert.assertEquals(4, dest.get(0).getId());
+
+		ArtemisObject[] nearest = new ArtemisObject[2];
+		Assert.assertEquals(2, index.getNearest(8000, 0, 1000, ObjectType.MINE, nearest));
+		Assert.assertEquals(2, nearest[0].getId());
+		Assert.assertEquals(1, nearest[1].getId());
+	}
+
+	@Test
+	public void testMoveAndRemove() {
+		SpatialIndex index = new SpatialIndex();
+		ArtemisObject mine = obj(1, ObjectType.MINE, 1000, 1000);
+		index.update(mine);
+		mine.setX(90000);
+		index.update(mine);
+		List<ArtemisObject> dest = new ArrayList<ArtemisObject>();
+		Assert.assertEquals(0, index.getWithin(1000, 0, 1000, 500, null, dest));
+		Assert.assertEquals(1, index.getWithin(90000, 0, 1000, 500, null, dest));
+		index.remove(1);
+		Assert.assertEquals(0, index.size());
+		ArtemisObject[] nearest = new ArtemisObject[1];
+		Assert.assertEquals(0, index.getNearest(0, 0, 0, null, nearest));
+	}
+}
@@ -0,0 +1,109 @@
+package net.dhleong.acl.world;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ObjectType;
+import net.dhleong.acl.protocol.core.world.DestroyObjectPacket;
+import net.dhleong.acl.protocol.core.world.GenericUpdatePacket;
+
+import org.junit.Test;
+
+public class SystemManagerTest {
+	@Test
+	public void testSnapshotsAgree() throws InterruptedException {
+		final SystemManager mgr = new SystemManager();
+		final AtomicInteger mismatches = new AtomicInteger();
+		final Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 20000; i++) {
+					mgr.addObject(mine(1));
+					mgr.onPacket(new DestroyObjectPacket(ObjectType.MINE, 1));
+				}
+			}
+		});
+		mgr.setSnapshotsEnabled(true);
+		mgr.addObject(mine(2));
+		writer.start();
+
+		do {
+			final WorldSnapshot snapshot = mgr.getSnapshot();
+			final boolean present = snapshot.getObject(1) != null;
+			final int count = snapshot.getObjectCount(ObjectType.MINE);
+
+			if (count != (present ? 2 : 1)) {
+				mismatches.incrementAndGet();
+			}
+		} while (writer.isAlive());
+
+		writer.join();
+		Assert.assertEquals(0, mismatches.get());
+	}
+
+	@Test
+	public void testBuckets() {
+		SystemManager mgr = new SystemManager();
+		mgr.addObject(mine(1));
+		mgr.addObject(mine(2));
+		mgr.addObject(new ArtemisGenericObject(3, null, ObjectType.ASTEROID));
+		assertBuckets(mgr, 3);
+		Assert.assertEquals(2, mgr.getObjectCount(ObjectType.MINE));
+		Assert.assertEquals(1, mgr.getObjectCount(ObjectType.ASTEROID));
+
+		// an update changes the stored object, not the buckets
+		GenericUpdatePacket pkt = new GenericUpdatePacket();
+		ArtemisObject update = new ArtemisGenericObject(1, null, ObjectType.MINE);
+		update.setX(100);
+		pkt.getObjects().add(update);
+		mgr.onPacket(pkt);
+		assertBuckets(mgr, 3);
+		Assert.assertEquals(2, mgr.getObjectCount(ObjectType.MINE));
+		Assert.assertEquals(100f, mgr.getObject(1).getX());
+		Assert.assertTrue(mgr.getObjectsView(ObjectType.MINE).contains(mgr.getObject(1)));
+
+		// replacing an object with one of another type moves it
+		mgr.addObject(new ArtemisGenericObject(2, null, ObjectType.ASTEROID));
+		assertBuckets(mgr, 3);
+		Assert.assertEquals(1, mgr.getObjectCount(ObjectType.MINE));
+		Assert.assertEquals(2, mgr.getObjectCount(ObjectType.ASTEROID));
+
+		mgr.onPacket(new DestroyObjectPacket(ObjectType.MINE, 1));
+		assertBuckets(mgr, 2);
+		Assert.assertEquals(0, mgr.getObjectCount(ObjectType.MINE));
+		Assert.assertTrue(mgr.getObjectsView(ObjectType.MINE).isEmpty());
+
+		mgr.clear();
+		assertBuckets(mgr, 0);
+	}
+
+	/**
+	 * Checks that every bucket's count matches its view, that each view
+	 *  holds only stored objects of its type, and that the buckets hold the
+	 *  given number of objects in all.
+	 */
+	private static void assertBuckets(SystemManager mgr, int total) {
+		int sum = 0;
+
+		for (ObjectType type : ObjectType.values()) {
+			final int count = mgr.getObjectCount(type);
+			int viewed = 0;
+
+			for (ArtemisObject obj : mgr.getObjectsView(type)) {
+				Assert.assertEquals(type, obj.getType());
+				Assert.assertSame(obj, mgr.getObject(obj.getId()));
+				viewed++;
+			}
+
+			Assert.assertEquals(count, viewed);
+			Assert.assertEquals(count, mgr.getObjectsView(type).size());
+			sum += count;
+		}
+
+		Assert.assertEquals(total, sum);
+	}
+
+	private static ArtemisObject mine(int id) {
+		return new ArtemisGenericObject(id, null, ObjectType.MINE);
+	}
+}
@@ -0,0 +1,52 @@
+package net.dhleong.acl.world;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import net.dhleong.acl.vesseldata.VesselData;
+import net.dhleong.acl.vesseldata.VesselDataException;
+
+/**
+ * Vessel data for the world tests: a single enemy cruiser, vessel 1, with
+ * one forward beam doing 10 damage every 5 seconds out to a range of 1000.
+ */
+class TestVesselData {
+	private static final String XML =
+			"<vessel_data version=\"2.1\">\n" +
+			"<hullRace ID=\"0\" name=\"Kralien\" keys=\"enemy standard\"/>\n" +
+			"<vessel uniqueID=\"1\" side=\"0\" classname=\"Cruiser\" broadType=\"small\">\n" +
+			"<beam_port x=\"0\" y=\"0\" z=\"100\" damage=\"10\" arcwidth=\"0.2\" cycletime=\"5\" range=\"1000\"/>\n" +
+			"</vessel>\n" +
+			"</vessel_data>\n";
+
+	/**
+	 * Writes the XML into a temporary install directory, reads it back, and
+	 * deletes the directory.
+	 */
+	static VesselData read() throws IOException, VesselDataException {
+		File install = File.createTempFile("artemis", "");
+		install.delete();
+		File dat = new File(install, "dat");
+		dat.mkdirs();
+		File xml = new File(dat, "vesselData.xml");
+
+		try {
+			Writer out = new OutputStreamWriter(new FileOutputStream(xml), "UTF-8");
+
+			try {
+				out.write(XML);
+			} finally {
+				out.close();
+			}
+
+			return VesselData.read(install, null);
+		} finally {
+			xml.delete();
+			dat.delete();
+			install.delete();
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package net.dhleong.acl.world;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ShipSystem;
+import net.dhleong.acl.protocol.core.world.DestroyObjectPacket;
+import net.dhleong.acl.util.BoolState;
+import net.dhleong.acl.vesseldata.VesselData;
+import net.dhleong.acl.vesseldata.VesselDataException;
+import net.dhleong.acl.world.ThreatEngine.Threat;
+
+import org.junit.Test;
+
+public class ThreatEngineTest {
+	private static ArtemisNpc npc(VesselData data, int id, float z, float heading) {
+		ArtemisNpc npc = new ArtemisNpc(id, "N" + id, 1);
+		npc.setVesselData(data);
+		npc.setX(0);
+		npc.setY(0);
+		npc.setZ(z);
+		npc.setHeading(heading);
+		return npc;
+	}
+
+	private static List<Threat> top(ThreatEngine engine, int n) {
+		List<Threat> threats = new ArrayList<Threat>();
+		engine.getTopThreats(0, n, threats);
+		return threats;
+	}
+
+	@Test
+	public void testRanking() throws IOException, VesselDataException {
+		VesselData data = TestVesselData.read();
+		SystemManager mgr = new SystemManager();
+		ThreatEngine engine = new ThreatEngine();
+		mgr.addOnObjectChangeListener(engine);
+
+		ArtemisPlayer player = new ArtemisPlayer(1, "Artemis", 0, 1,
+				BoolState.FALSE, BoolState.FALSE);
+		player.setX(0);
+		player.setY(0);
+		player.setZ(0);
+		mgr.addObject(player);
+
+		// facing the player, in range
+		mgr.addObject(npc(data, 10, 500, (float) Math.PI));
+		// in range, facing away
+		mgr.addObject(npc(data, 11, 500, 0));
+		// facing the player, but far away
+		mgr.addObject(npc(data, 12, 5000, (float) Math.PI));
+
+		ArtemisNpc friend = npc(data, 13, 500, (float) Math.PI);
+		friend.setEnemy(BoolState.FALSE);
+		mgr.addObject(friend);
+
+		Assert.assertEquals(3, engine.getThreatCount(0));
+		List<Threat> threats = top(engine, 2);
+		Assert.assertEquals(2, threats.size());
+		Assert.assertEquals(10, threats.get(0).getNpc().getId());
+		Assert.assertEquals(11, threats.get(1).getNpc().getId());
+		Assert.assertEquals(4f, threats.get(0).getScore(), 0.001f);
+		Assert.assertEquals(2f, threats.get(1).getScore(), 0.001f);
+		Assert.assertEquals(0.4f, engine.getThreat(0, 12).getScore(), 0.001f);
+		Assert.assertNull(engine.getThreat(0, 13));
+		Assert.assertEquals(0, engine.getThreatCount(1));
+	}
+
+	@Test
+	public void testIncrementalUpdates() throws IOException, VesselDataException {
+		VesselData data = TestVesselData.read();
+		SystemManager mgr = new SystemManager();
+		ThreatEngine engine = new ThreatEngine();
+		mgr.addOnObjectChangeListener(engine);
+
+		ArtemisPlayer player = new ArtemisPlayer(1, "Artemis", 0, 1,
+				BoolState.FALSE, BoolState.FALSE);
+		player.setX(0);
+		player.setY(0);
+		player.setZ(0);
+		mgr.addObject(player);
+		ArtemisNpc first = npc(data, 10, 500, (float) Math.PI);
+		ArtemisNpc second = npc(data, 11, 500, 0);
+		mgr.addObject(first);
+		mgr.addObject(second);
+		Assert.assertEquals(10, top(engine, 1).get(0).getNpc().getId());
+
+		// the second turns to face the player, and the first loses its beams
+		second.setHeading((float) Math.PI);
+		mgr.addObject(second);
+		first.setSystemDamage(ShipSystem.BEAMS, 0.5f);
+		mgr.addObject(first);
+		Assert.assertEquals(11, top(engine, 1).get(0).getNpc().getId());
+
+		// the player moves out of range of both
+		player.setZ(-10000);
+		mgr.addObject(player);
+		Assert.assertTrue(engine.getThreat(0, 11).getScore() < 1);
+
+		// surrender, destruction and the end of the game
+		second.setSurrendered(BoolState.TRUE);
+		mgr.addObject(second);
+		Assert.assertNull(engine.getThreat(0, 11));
+		mgr.onPacket(new DestroyObjectPacket(first));
+		Assert.assertEquals(0, engine.getThreatCount(0));
+		mgr.addObject(npc(data, 12, 500, (float) Math.PI));
+		Assert.assertEquals(1, engine.getThreatCount(0));
+		mgr.clear();
+		Assert.assertEquals(0, engine.getThreatCount(0));
+	}
+
+	@Test
+	public void testPlayerMoves() throws IOException, VesselDataException {
+		VesselData data = TestVesselData.read();
+		SystemManager mgr = new SystemManager();
+		ThreatEngine engine = new ThreatEngine();
+		mgr.addOnObjectChangeListener(engine);
+
+		ArtemisPlayer player = new ArtemisPlayer(1, "Artemis", 0, 1,
+				BoolState.FALSE, BoolState.FALSE);
+		player.setX(0);
+		player.setY(0);
+		player.setZ(0);
+		mgr.addObject(player);
+		ArtemisNpc npc = npc(data, 10, 500, (float) Math.PI);
+		mgr.addObject(npc);
+		Assert.assertEquals(500f, engine.getThreat(0, 10).getDistance(), 0.001f);
+
+		// too small a move to rescore for
+		player.setZ(ThreatEngine.RESCORE_DISTANCE / 2);
+		mgr.addObject(player);
+		Assert.assertEquals(500f, engine.getThreat(0, 10).getDistance(), 0.001f);
+
+		// still in range, so the score is the same, but the distance isn't
+		player.setZ(100);
+		mgr.addObject(player);
+		Threat threat = engine.getThreat(0, 10);
+		Assert.assertEquals(4f, threat.getScore(), 0.001f);
+		Assert.assertEquals(400f, threat.getDistance(), 0.001f);
+	}
+
+	@Test
+	public void testTieBreak() throws IOException, VesselDataException {
+		VesselData data = TestVesselData.read();
+		SystemManager mgr = new SystemManager();
+		ThreatEngine engine = new ThreatEngine();
+		mgr.addOnObjectChangeListener(engine);
+
+		ArtemisPlayer player = new ArtemisPlayer(1, "Artemis", 0, 1,
+				BoolState.FALSE, BoolState.FALSE);
+		player.setX(0);
+		player.setY(0);
+		player.setZ(0);
+		mgr.addObject(player);
+
+		// equal scores; subtracting these IDs would overflow
+		mgr.addObject(npc(data, 2000000000, 500, (float) Math.PI));
+		mgr.addObject(npc(data, -2000000000, 500, (float) Math.PI));
+		List<Threat> threats = top(engine, 2);
+		Assert.assertEquals(2, threats.size());
+		Assert.assertEquals(-2000000000, threats.get(0).getNpc().getId());
+		Assert.assertEquals(2000000000, threats.get(1).getNpc().getId());
+	}
+}
@@ -0,0 +1,63 @@
+package net.dhleong.acl.world;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ObjectType;
+import net.dhleong.acl.protocol.core.world.BeamFiredPacket;
+import net.dhleong.acl.protocol.core.world.DestroyObjectPacket;
+import net.dhleong.acl.protocol.core.world.GenericUpdatePacket;
+
+import org.junit.Test;
+
+public class TickAssemblerTest {
+	@Test
+	public void testRepeatedObjectStartsNewTick() {
+		final List<TickFrame> frames = new ArrayList<TickFrame>();
+		TickAssembler assembler = new TickAssembler(new TickAssembler.OnTickListener() {
+			@Override
+			public void onTick(TickFrame frame) {
+				frames.add(frame);
+			}
+		}, 60000);
+
+		assembler.onPacket(update(1, 2));
+		assembler.onPacket(update(3));
+		assembler.onPacket(new BeamFiredPacket(100));
+		assembler.onPacket(new DestroyObjectPacket(ObjectType.MINE, 4));
+		Assert.assertTrue(frames.isEmpty());
+		Assert.assertFalse(assembler.flushIfIdle());
+
+		// object 2 again means the server has started the next tick
+		assembler.onPacket(update(2));
+		Assert.assertEquals(1, frames.size());
+
+		TickFrame first = frames.get(0);
+		Assert.assertEquals(3, first.getUpdates().size());
+		Assert.assertNotNull(first.getUpdate(3));
+		Assert.assertEquals(1, first.getBeams().size());
+		Assert.assertEquals(1, first.getDestroyedCount());
+		Assert.assertEquals(4, first.getDestroyedId(0));
+
+		assembler.flush();
+		Assert.assertEquals(2, frames.size());
+		TickFrame second = frames.get(1);
+		Assert.assertEquals(first.getNumber() + 1, second.getNumber());
+		Assert.assertEquals(1, second.getUpdates().size());
+		Assert.assertNull(second.getUpdate(3));
+
+		assembler.flush();
+		Assert.assertEquals(2, frames.size());
+	}
+
+	private static GenericUpdatePacket update(int... ids) {
+		GenericUpdatePacket pkt = new GenericUpdatePacket();
+
+		for (int id : ids) {
+			pkt.getObjects().add(new ArtemisGenericObject(id, null, ObjectType.MINE));
+		}
+
+		return pkt;
+	}
+}
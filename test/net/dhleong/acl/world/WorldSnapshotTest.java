@@ -0,0 +1,40 @@
+package net.dhleong.acl.world;
+
+import junit.framework.Assert;
+import net.dhleong.acl.enums.ObjectType;
+import net.dhleong.acl.protocol.core.world.DestroyObjectPacket;
+
+import org.junit.Test;
+
+public class WorldSnapshotTest {
+	@Test
+	public void testSnapshotsAreIndependentOfLiveObjects() {
+		SystemManager mgr = new SystemManager();
+		Assert.assertNull(mgr.getSnapshot());
+
+		ArtemisBase base = new ArtemisBase(1, "DS1", 2);
+		base.setX(100);
+		mgr.addObject(base);
+		mgr.addObject(new ArtemisGenericObject(2, null, ObjectType.MINE));
+		mgr.setSnapshotsEnabled(true);
+
+		WorldSnapshot first = mgr.getSnapshot();
+		Assert.assertEquals(2, first.size());
+		Assert.assertEquals(1, first.getObjectCount(ObjectType.MINE));
+		Assert.assertNotSame(base, first.getObject(1));
+		Assert.assertEquals("DS1", first.getObject(1).getName());
+
+		ArtemisBase update = new ArtemisBase(1, "DS1", 2);
+		update.setX(200);
+		mgr.addObject(update);
+		mgr.onPacket(new DestroyObjectPacket(ObjectType.MINE, 2));
+
+		WorldSnapshot second = mgr.getSnapshot();
+		Assert.assertTrue(second.getVersion() > first.getVersion());
+		Assert.assertEquals(100f, first.getObject(1).getX());
+		Assert.assertEquals(200f, second.getObject(1).getX());
+		Assert.assertNotNull(first.getObject(2));
+		Assert.assertNull(second.getObject(2));
+		Assert.assertEquals(0, second.getObjectCount(ObjectType.MINE));
+	}
+}